@@ -0,0 +1,121 @@
+package com.platzi.market;
+
+import com.platzi.market.domain.Category;
+import com.platzi.market.domain.Product;
+import com.platzi.market.domain.Purchase;
+import com.platzi.market.domain.PurchaseItem;
+import com.platzi.market.persistence.entity.Categoria;
+import com.platzi.market.persistence.entity.Compra;
+import com.platzi.market.persistence.entity.ComprasProducto;
+import com.platzi.market.persistence.entity.ComprasProductoPK;
+import com.platzi.market.persistence.entity.Producto;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+* Datos de prueba con tamaños realistas para los benchmarks.
+* */
+public final class BenchmarkData {
+
+    private static final int CATEGORIES = 20;
+
+    private BenchmarkData() {
+    }
+
+    public static List<Producto> productos(int size) {
+        List<Categoria> categorias = new ArrayList<>(CATEGORIES);
+        for (int i = 1; i <= CATEGORIES; i++) {
+            Categoria categoria = new Categoria();
+            categoria.setIdCategoria(i);
+            categoria.setDescripcion("Categoria " + i);
+            categoria.setEstado(true);
+            categorias.add(categoria);
+        }
+
+        List<Producto> productos = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            Categoria categoria = categorias.get(i % CATEGORIES);
+            Producto producto = new Producto();
+            producto.setIdProducto(i);
+            producto.setNombre("Producto de prueba " + i);
+            producto.setIdCategoria(categoria.getIdCategoria());
+            producto.setCodigoBarras(String.format("%013d", i));
+            producto.setPrecioVenta(1000.0 + i);
+            producto.setCantidadStock(i % 500);
+            producto.setEstado(true);
+            producto.setCategoria(categoria);
+            productos.add(producto);
+        }
+        return productos;
+    }
+
+    public static List<Product> products(int size) {
+        List<Product> products = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            Category category = new Category();
+            category.setCategoryId(i % CATEGORIES + 1);
+            category.setCategory("Categoria " + category.getCategoryId());
+            category.setActive(true);
+
+            Product product = new Product();
+            product.setProductId(i);
+            product.setName("Producto de prueba " + i);
+            product.setCategoryId(category.getCategoryId());
+            product.setPrice(1000.0 + i);
+            product.setStock(i % 500);
+            product.setActive(true);
+            product.setCategory(category);
+            products.add(product);
+        }
+        return products;
+    }
+
+    public static Compra compra(int items) {
+        Compra compra = new Compra();
+        compra.setIdCompra(1);
+        compra.setIdCliente("4546221");
+        compra.setFecha(LocalDateTime.now());
+        compra.setMedioPago("T");
+        compra.setComentario("");
+        compra.setEstado("P");
+        compra.setProductos(new ArrayList<>(items));
+
+        for (int i = 1; i <= items; i++) {
+            ComprasProductoPK id = new ComprasProductoPK();
+            id.setIdCompra(1);
+            id.setIdProducto(i);
+
+            ComprasProducto item = new ComprasProducto();
+            item.setId(id);
+            item.setCantidad(i % 5 + 1);
+            item.setTotal(2500.0 * item.getCantidad());
+            item.setEstado(true);
+            item.setCompra(compra);
+            compra.getProductos().add(item);
+        }
+        return compra;
+    }
+
+    public static Purchase purchase(int items) {
+        Purchase purchase = new Purchase();
+        purchase.setPurchaseId(1);
+        purchase.setClientId("4546221");
+        purchase.setDate(LocalDateTime.now());
+        purchase.setPaymentMethod("T");
+        purchase.setComment("");
+        purchase.setState("P");
+        purchase.setItems(new ArrayList<>(items));
+
+        for (int i = 1; i <= items; i++) {
+            PurchaseItem item = new PurchaseItem();
+            item.setProductId(i);
+            item.setQuantity(i % 5 + 1);
+            item.setTotal(2500.0 * item.getQuantity());
+            item.setActive(true);
+            purchase.getItems().add(item);
+        }
+        return purchase;
+    }
+}
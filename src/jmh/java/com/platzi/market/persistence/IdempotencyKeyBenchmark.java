@@ -0,0 +1,105 @@
+package com.platzi.market.persistence;
+
+import com.platzi.market.domain.dto.IdempotencyRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+* Costo que agrega el encabezado Idempotency-Key a POST /purchases, sobre H2 en memoria.
+*
+* newKeyInMemory       registrar una clave nueva en memoria y completarla
+* newKeyWithDatabase   camino completo de una clave nueva: memoria, buscarla en la tabla (no esta) e
+*                      insertarla; en la aplicacion el insert va en la transaccion de la compra
+* replayInMemory       reintento que encuentra la compra en memoria
+* replayFromDatabase   reintento que llega a otro nodo o despues de un reinicio
+*
+* Los tiempos de la BD son de H2 sin red, en PostgreSQL se suma la latencia de dos sentencias.
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IdempotencyKeyBenchmark {
+
+    private static final String CLIENT_ID = "cliente-1";
+    private static final String REPLAYED_KEY = "terminal-1-ticket-replayed";
+    private static final IdempotencyRecord SAVED = new IdempotencyRecord(1, "huella");
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private CompraIdempotenciaRepository repository;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:idempotency;MODE=PostgreSQL", "sa", "", true);
+        new ResourceDatabasePopulator(new ClassPathResource("db/compras_idempotencia.sql")).execute(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        repository = new CompraIdempotenciaRepository(TimeUnit.DAYS.toMillis(1), 100_000);
+        ReflectionTestUtils.setField(repository, "jdbcTemplate", jdbcTemplate);
+
+        repository.putIfAbsent(CLIENT_ID, REPLAYED_KEY, CompletableFuture.completedFuture(SAVED));
+        repository.save(CLIENT_ID, REPLAYED_KEY, SAVED);
+    }
+
+    /*
+    * La tabla y la memoria no crecen de una iteracion a otra.
+    * */
+    @Setup(Level.Iteration)
+    public void clear() {
+        jdbcTemplate.update("DELETE FROM compras_idempotencia WHERE clave <> ?", REPLAYED_KEY);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public IdempotencyRecord newKeyInMemory() {
+        String key = "terminal-1-ticket-" + next++;
+        CompletableFuture<IdempotencyRecord> intento = new CompletableFuture<>();
+        repository.putIfAbsent(CLIENT_ID, key, intento);
+        intento.complete(SAVED);
+        repository.remove(CLIENT_ID, key, intento);
+        return intento.join();
+    }
+
+    @Benchmark
+    public IdempotencyRecord newKeyWithDatabase() {
+        String key = "terminal-1-ticket-" + next++;
+        CompletableFuture<IdempotencyRecord> intento = new CompletableFuture<>();
+        repository.putIfAbsent(CLIENT_ID, key, intento);
+        IdempotencyRecord guardada = repository.find(CLIENT_ID, key).orElse(SAVED);
+        repository.save(CLIENT_ID, key, guardada);
+        intento.complete(guardada);
+        repository.remove(CLIENT_ID, key, intento);
+        return intento.join();
+    }
+
+    @Benchmark
+    public IdempotencyRecord replayInMemory() {
+        return repository.putIfAbsent(CLIENT_ID, REPLAYED_KEY, new CompletableFuture<>()).join();
+    }
+
+    @Benchmark
+    public Optional<IdempotencyRecord> replayFromDatabase() {
+        return repository.find(CLIENT_ID, REPLAYED_KEY);
+    }
+}
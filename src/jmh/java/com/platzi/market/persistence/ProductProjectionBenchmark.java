@@ -0,0 +1,145 @@
+package com.platzi.market.persistence;
+
+import com.platzi.market.domain.Product;
+import com.platzi.market.persistence.crud.ProductoCrudRepository;
+import com.platzi.market.persistence.entity.Producto;
+import com.platzi.market.persistence.mapper.CategoryMapperImpl;
+import com.platzi.market.persistence.mapper.ProductMapper;
+import com.platzi.market.persistence.mapper.ProductMapperImpl;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.boot.orm.jpa.hibernate.SpringPhysicalNamingStrategy;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+* Listar los productos de una categoria sobre H2 en memoria, como lo hace GET /products/category/{id}
+* sin la cache: dentro de una transaccion de solo lectura y con los repositorios reales de Spring Data.
+*
+* entities     ENTITIES_BY_CATEGORY + ProductMapper: entidades Producto en el contexto de persistencia,
+*              su Categoria con un select adicional y la copia a Product. Es la consulta que
+*              getByCategory hacia antes de la proyeccion
+* projection   findProductsByIdCategoria: SELECT new Product(...) con la categoria en el JOIN
+*
+* Con el profiler gc (configurado en build.gradle) gc.alloc.rate.norm son los bytes asignados por
+* consulta, la diferencia de memoria entre ambas formas.
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProductProjectionBenchmark {
+
+    private static final int CATEGORY = 1;
+
+    private static final String ENTITIES_BY_CATEGORY = "SELECT p FROM Producto p WHERE p.idCategoria = :idCategoria "
+            + "ORDER BY p.nombre ASC";
+
+    @Param({"100", "10000"})
+    int products;
+
+    private AnnotationConfigApplicationContext context;
+    private ProductoCrudRepository productoCrudRepository;
+    private EntityManager entityManager;
+    private ProductMapper mapper;
+    private TransactionTemplate transactionTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext(JpaConfig.class, CategoryMapperImpl.class, ProductMapperImpl.class);
+        productoCrudRepository = context.getBean(ProductoCrudRepository.class);
+        // Se une al EntityManager de la transaccion en curso, como el de los repositorios
+        entityManager = SharedEntityManagerCreator.createSharedEntityManager(context.getBean(EntityManagerFactory.class));
+        mapper = context.getBean(ProductMapper.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(JpaTransactionManager.class));
+        transactionTemplate.setReadOnly(true);
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(context.getBean(DataSource.class));
+        jdbcTemplate.update("INSERT INTO categorias (id_categoria, descripcion, estado) VALUES (?, 'Lacteos', true)", CATEGORY);
+        List<Object[]> filas = new ArrayList<>(products);
+        for (int i = 1; i <= products; i++) {
+            filas.add(new Object[]{i, "Producto de prueba " + i, CATEGORY, String.format("%013d", i), 1000.0 + i, i % 500});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO productos (id_producto, nombre, id_categoria, codigo_barras, precio_venta, "
+                + "cantidad_stock, estado) VALUES (?, ?, ?, ?, ?, ?, true)", filas);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Product> entities() {
+        return transactionTemplate.execute(status -> mapper.toProducts(entityManager
+                .createQuery(ENTITIES_BY_CATEGORY, Producto.class)
+                .setParameter("idCategoria", CATEGORY)
+                .getResultList()));
+    }
+
+    @Benchmark
+    public List<Product> projection() {
+        return transactionTemplate.execute(status -> productoCrudRepository.findProductsByIdCategoria(CATEGORY));
+    }
+
+    /*
+    * Lo minimo de la configuracion de JPA de Spring Boot, con los mismos nombres de tablas y columnas.
+    * Sin cache de segundo nivel, se mide la consulta y no la cache.
+    * */
+    @Configuration
+    @EnableJpaRepositories(basePackageClasses = ProductoCrudRepository.class)
+    static class JpaConfig {
+
+        @Bean(destroyMethod = "destroy")
+        public SingleConnectionDataSource dataSource() {
+            return new SingleConnectionDataSource("jdbc:h2:mem:projection;MODE=PostgreSQL", "sa", "", true);
+        }
+
+        @Bean
+        public LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
+            LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+            factory.setDataSource(dataSource);
+            factory.setPackagesToScan(Producto.class.getPackageName());
+            factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            factory.setJpaPropertyMap(Map.of(
+                    AvailableSettings.DIALECT, H2Dialect.class.getName(),
+                    AvailableSettings.HBM2DDL_AUTO, "create",
+                    AvailableSettings.USE_SECOND_LEVEL_CACHE, "false",
+                    AvailableSettings.PHYSICAL_NAMING_STRATEGY, SpringPhysicalNamingStrategy.class.getName(),
+                    AvailableSettings.IMPLICIT_NAMING_STRATEGY, SpringImplicitNamingStrategy.class.getName()));
+            return factory;
+        }
+
+        @Bean
+        public JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+            return new JpaTransactionManager(entityManagerFactory);
+        }
+    }
+}
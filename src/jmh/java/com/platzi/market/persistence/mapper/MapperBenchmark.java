@@ -0,0 +1,103 @@
+package com.platzi.market.persistence.mapper;
+
+import com.platzi.market.BenchmarkData;
+import com.platzi.market.domain.Product;
+import com.platzi.market.domain.Purchase;
+import com.platzi.market.persistence.entity.Compra;
+import com.platzi.market.persistence.entity.Producto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+* Costo de las conversiones entidad <=> dominio hechas por MapStruct.
+*
+* Los mappers se obtienen de un contexto de Spring porque las implementaciones generadas
+* inyectan los mappers que usan (uses = ...). Cada benchmark solo recorre los @Param del
+* estado que recibe.
+* */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MapperBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Mappers {
+        AnnotationConfigApplicationContext context;
+        ProductMapper productMapper;
+        PurchaseMapper purchaseMapper;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            context = new AnnotationConfigApplicationContext(CategoryMapperImpl.class, ProductMapperImpl.class,
+                    PurchaseItemMapperImpl.class, PurchaseMapperImpl.class);
+            productMapper = context.getBean(ProductMapper.class);
+            purchaseMapper = context.getBean(PurchaseMapper.class);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Catalog {
+        @Param({"1", "100", "10000"})
+        int products;
+
+        List<Producto> productos;
+        Product product;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            productos = BenchmarkData.productos(products);
+            product = BenchmarkData.products(1).get(0);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Ticket {
+        @Param({"1", "20", "200"})
+        int items;
+
+        Compra compra;
+        Purchase purchase;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            compra = BenchmarkData.compra(items);
+            purchase = BenchmarkData.purchase(items);
+        }
+    }
+
+    @Benchmark
+    public List<Product> toProducts(Mappers mappers, Catalog catalog) {
+        return mappers.productMapper.toProducts(catalog.productos);
+    }
+
+    @Benchmark
+    public Producto toProducto(Mappers mappers, Catalog catalog) {
+        return mappers.productMapper.toProducto(catalog.product);
+    }
+
+    @Benchmark
+    public Purchase toPurchase(Mappers mappers, Ticket ticket) {
+        return mappers.purchaseMapper.toPurchase(ticket.compra);
+    }
+
+    @Benchmark
+    public Compra toCompra(Mappers mappers, Ticket ticket) {
+        return mappers.purchaseMapper.toCompra(ticket.purchase);
+    }
+}
@@ -0,0 +1,94 @@
+package com.platzi.market.persistence.search;
+
+import com.platzi.market.domain.Product;
+import com.platzi.market.domain.event.ProductChangedEvent;
+import com.platzi.market.domain.repository.ProductBarcodeRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+* GET /products/search sobre el indice en memoria con un catalogo grande.
+*
+* Los nombres son un tipo de producto, un descriptor y una marca, por ejemplo "Arroz integral
+* kolmera". Las marcas son palabras aleatorias, asi un prefijo corto abarca muchas palabras
+* distintas y no solo unas pocas listas largas.
+*
+* query recorre un prefijo de una letra hasta la palabra completa y una consulta de dos palabras.
+* Necesita un heap de ~2 GB con 1M de productos (-jvmArgs -Xmx3g).
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProductSearchIndexBenchmark {
+
+    private static final String[] TYPES = {"Arroz", "Aceite", "Azucar", "Atun", "Agua", "Avena", "Arepa", "Almendra",
+            "Arveja", "Ajo", "Leche", "Lenteja", "Frijol", "Harina", "Pan", "Queso", "Cafe", "Chocolate", "Galleta",
+            "Pasta", "Sal", "Jabon", "Detergente", "Papel", "Yogurt", "Mantequilla", "Huevo", "Pollo", "Carne", "Salsa"};
+    private static final String[] DESCRIPTORS = {"integral", "blanco", "entero", "light", "premium", "familiar",
+            "economico", "organico", "tradicional", "extra", "suave", "fuerte", "natural", "clasico", "dietetico"};
+    private static final int BRANDS = 20_000;
+    private static final int LIMIT = 20;
+
+    @Param({"1000000"})
+    int products;
+
+    @Param({"a", "ar", "arr", "arroz", "arroz int"})
+    String query;
+
+    private ProductSearchIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = new ProductSearchIndex();
+        ReflectionTestUtils.setField(index, "productBarcodeRepository", new ProductBarcodeRepository() {
+            @Override
+            public Optional<Product> getByBarcode(String barcode) {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<Product> getIndexedByBarcode(String barcode) {
+                return Optional.empty();
+            }
+        });
+
+        Random random = new Random(42);
+        String[] brands = new String[BRANDS];
+        for (int i = 0; i < BRANDS; i++) {
+            char[] letters = new char[4 + random.nextInt(5)];
+            for (int j = 0; j < letters.length; j++) {
+                letters[j] = (char) ('a' + random.nextInt(26));
+            }
+            brands[i] = new String(letters);
+        }
+        for (int i = 1; i <= products; i++) {
+            Product product = new Product();
+            product.setProductId(i);
+            product.setName(TYPES[random.nextInt(TYPES.length)] + " " + DESCRIPTORS[random.nextInt(DESCRIPTORS.length)]
+                    + " " + brands[random.nextInt(BRANDS)]);
+            product.setCategoryId(1);
+            product.setPrice(1000);
+            product.setStock(100);
+            product.setActive(true);
+            index.onProductChanged(ProductChangedEvent.created(product, 1));
+        }
+    }
+
+    @Benchmark
+    public List<Product> search() {
+        return index.search(query, LIMIT);
+    }
+}
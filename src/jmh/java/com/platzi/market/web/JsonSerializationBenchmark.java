@@ -0,0 +1,75 @@
+package com.platzi.market.web;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.platzi.market.BenchmarkData;
+import com.platzi.market.domain.Product;
+import com.platzi.market.domain.Purchase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+* Costo de serializar las respuestas de /products y /purchases con la misma configuracion
+* de Jackson que usa Spring MVC.
+* */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonSerializationBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Json {
+        ObjectMapper objectMapper;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Catalog {
+        @Param({"1", "100", "10000"})
+        int products;
+
+        List<Product> productList;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            productList = BenchmarkData.products(products);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Ticket {
+        @Param({"1", "20", "200"})
+        int items;
+
+        Purchase purchase;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            purchase = BenchmarkData.purchase(items);
+        }
+    }
+
+    @Benchmark
+    public byte[] products(Json json, Catalog catalog) throws JsonProcessingException {
+        return json.objectMapper.writeValueAsBytes(catalog.productList);
+    }
+
+    @Benchmark
+    public byte[] purchase(Json json, Ticket ticket) throws JsonProcessingException {
+        return json.objectMapper.writeValueAsBytes(ticket.purchase);
+    }
+}
@@ -0,0 +1,52 @@
+package com.platzi.market.web.security;
+
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/*
+* Costo de generar y validar tokens. verifyUncached mide la verificacion HMAC y lectura del JSON
+* que antes se hacia tres veces por peticion, validateCached el camino actual del filtro.
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JWTUtilBenchmark {
+
+    private JWTUtil jwtUtil;
+    private UserDetails userDetails;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        jwtUtil = new JWTUtil();
+        userDetails = new User("alejandro", "{noop}platzi", new ArrayList<>());
+        token = jwtUtil.generateToken(userDetails);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtUtil.generateToken(userDetails);
+    }
+
+    @Benchmark
+    public Claims verifyUncached() {
+        return jwtUtil.getClaims(token);
+    }
+
+    @Benchmark
+    public boolean validateCached() {
+        return jwtUtil.validateToken(jwtUtil.getVerifiedClaims(token), userDetails);
+    }
+}
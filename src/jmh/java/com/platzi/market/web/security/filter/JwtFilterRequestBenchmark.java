@@ -0,0 +1,87 @@
+package com.platzi.market.web.security.filter;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.platzi.market.domain.service.PlatziUserDetailsService;
+import com.platzi.market.web.security.JWTUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.CachingUserDetailsService;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.cache.NullUserCache;
+import org.springframework.security.core.userdetails.cache.SpringCacheBasedUserCache;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/*
+* Costo del filtro JWT por peticion con la cache de UserDetails encendida y apagada
+* (platzi.security.user-cache.enabled).
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JwtFilterRequestBenchmark {
+
+    @Param({"true", "false"})
+    private boolean userCache;
+
+    private AnnotationConfigApplicationContext context;
+    private JwtFilterRequest filter;
+    private String authorization;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.registerBean(UserCache.class, () -> userCache
+                ? new SpringCacheBasedUserCache(new CaffeineCache("users", Caffeine.newBuilder().maximumSize(10_000).build()))
+                : new NullUserCache());
+        context.register(JWTUtil.class, PlatziUserDetailsService.class, JwtFilterRequest.class);
+        context.registerBean(CachingUserDetailsService.class, () -> {
+            CachingUserDetailsService service = new CachingUserDetailsService(context.getBean(PlatziUserDetailsService.class));
+            service.setUserCache(context.getBean(UserCache.class));
+            return service;
+        });
+        context.refresh();
+
+        filter = context.getBean(JwtFilterRequest.class);
+        String token = context.getBean(JWTUtil.class)
+                .generateToken(new User("alejandro", "{noop}platzi", new ArrayList<>()));
+        authorization = "Bearer " + token;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public MockHttpServletResponse doFilter() throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/products/");
+        request.addHeader("Authorization", authorization);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain());
+        SecurityContextHolder.clearContext();
+        return response;
+    }
+}
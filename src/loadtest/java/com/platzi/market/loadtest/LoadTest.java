@@ -0,0 +1,91 @@
+package com.platzi.market.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.platzi.market.PlatziMarketApplication;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.File;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+* Prueba de carga reproducible: levanta la aplicacion con el perfil loadtest (H2 en modo PostgreSQL),
+* siembra los datos, ejecuta las etapas de concurrencia y escribe los percentiles de latencia y el
+* throughput de cada endpoint en loadtest.output (JSON) para compararlos entre versiones.
+* */
+public class LoadTest {
+
+    private static final String[] ENDPOINTS = {"products", "products-by-category", "product-by-id",
+            "purchases", "purchases-by-client", "save-purchase", "save-purchase-batch", "authenticate"};
+
+    public static void main(String[] args) throws Exception {
+        // Un argumento de linea de comandos tiene prioridad sobre spring.profiles.active=dev
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(PlatziMarketApplication.class)
+                .run("--spring.profiles.active=loadtest");
+
+        try {
+            Environment environment = context.getEnvironment();
+            ObjectMapper objectMapper = context.getBean(ObjectMapper.class);
+
+            LoadTestSeeder seeder = new LoadTestSeeder(context.getBean(JdbcTemplate.class), environment);
+            seeder.seed();
+
+            String baseUrl = "http://localhost:" + environment.getRequiredProperty("local.server.port")
+                    + environment.getProperty("server.servlet.context-path", "");
+            // Hikari registra cada conexion que entrega el pool en hikaricp.connections.acquire
+            MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+            LoadTestDriver driver = new LoadTestDriver(baseUrl, objectMapper, seeder, mix(environment),
+                    environment.getRequiredProperty("loadtest.batch-size", Integer.class),
+                    () -> meterRegistry.find("hikaricp.connections.acquire").timers().stream().mapToLong(Timer::count).sum());
+            driver.authenticate();
+
+            for (LoadTestStage warmup : LoadTestStage.parse(environment.getRequiredProperty("loadtest.warmup"))) {
+                driver.run(warmup);
+            }
+
+            List<Map<String, Object>> stages = new ArrayList<>();
+            for (LoadTestStage stage : LoadTestStage.parse(environment.getRequiredProperty("loadtest.stages"))) {
+                stages.add(driver.run(stage));
+            }
+
+            Map<String, Object> seed = new LinkedHashMap<>();
+            seed.put("categories", seeder.categories);
+            seed.put("products", seeder.products);
+            seed.put("clients", seeder.clients);
+            seed.put("purchases", seeder.purchases);
+            seed.put("maxItems", seeder.maxItems);
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("timestamp", OffsetDateTime.now().toString());
+            result.put("seed", seed);
+            result.put("mix", mix(environment));
+            result.put("batchSize", environment.getRequiredProperty("loadtest.batch-size", Integer.class));
+            result.put("stages", stages);
+
+            File output = new File(environment.getRequiredProperty("loadtest.output"));
+            output.getAbsoluteFile().getParentFile().mkdirs();
+            objectMapper.writer().with(SerializationFeature.INDENT_OUTPUT).writeValue(output, result);
+            System.out.println(objectMapper.writer().with(SerializationFeature.INDENT_OUTPUT).writeValueAsString(stages));
+            System.out.println("Results written to " + output.getAbsolutePath());
+        } finally {
+            context.close();
+        }
+    }
+
+    private static Map<String, Integer> mix(Environment environment) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String endpoint : ENDPOINTS) {
+            mix.put(endpoint, environment.getProperty("loadtest.mix." + endpoint, Integer.class, 0));
+        }
+        return mix;
+    }
+}
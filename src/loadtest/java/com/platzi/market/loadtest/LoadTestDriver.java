@@ -0,0 +1,266 @@
+package com.platzi.market.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.platzi.market.domain.Purchase;
+import com.platzi.market.domain.PurchaseItem;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/*
+* Ejecuta las etapas de la prueba: cada usuario virtual envia peticiones una tras otra (lazo cerrado)
+* eligiendo el endpoint segun los pesos de loadtest.mix.*. La latencia de cada respuesta completa
+* se registra en un histograma HdrHistogram por endpoint.
+*
+* connectionAcquisitionsPerRequest son las conexiones que se pidieron a los pools durante la etapa
+* entre las peticiones enviadas. Incluye las tareas de fondo; para medir un solo endpoint se deja
+* solo su peso en loadtest.mix.*.
+*
+* save-purchase-batch envia loadtest.batch-size compras por peticion a /purchases/batch. Los
+* endpoints que guardan compras reportan purchasesPerSecond, que es lo que se compara con
+* save-purchase (una compra por peticion).
+* */
+class LoadTestDriver {
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final String baseUrl;
+    private final ObjectMapper objectMapper;
+    private final LoadTestSeeder data;
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final int totalWeight;
+    private final LongSupplier connectionAcquisitions;
+    private String token;
+
+    LoadTestDriver(String baseUrl, ObjectMapper objectMapper, LoadTestSeeder data, Map<String, Integer> mix,
+                   int batchSize, LongSupplier connectionAcquisitions) {
+        this.baseUrl = baseUrl;
+        this.connectionAcquisitions = connectionAcquisitions;
+        this.objectMapper = objectMapper;
+        this.data = data;
+
+        addEndpoint(mix, "products", random -> get("/products/"));
+        addEndpoint(mix, "products-by-category", random -> get("/products/category/" + (random.nextInt(data.categories) + 1)));
+        addEndpoint(mix, "product-by-id", random -> get("/products/" + (random.nextInt(data.products) + 1)));
+        addEndpoint(mix, "purchases", random -> get("/purchases/"));
+        addEndpoint(mix, "purchases-by-client", random -> get("/purchases/client/" + LoadTestSeeder.clientId(random.nextInt(data.clients) + 1)));
+        addEndpoint(mix, "save-purchase", 1, random -> post("/purchases/", json(purchase(random)), true));
+        addEndpoint(mix, "save-purchase-batch", batchSize, random -> post("/purchases/batch", json(purchases(random, batchSize)), true));
+        addEndpoint(mix, "authenticate", random -> post("/auth/authenticate", "{\"username\":\"alejandro\",\"password\":\"platzi\"}", false));
+        this.totalWeight = endpoints.stream().mapToInt(endpoint -> endpoint.weight).sum();
+    }
+
+    void authenticate() throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(
+                post("/auth/authenticate", "{\"username\":\"alejandro\",\"password\":\"platzi\"}", false),
+                HttpResponse.BodyHandlers.ofString());
+        token = objectMapper.readTree(response.body()).get("jwt").asText();
+    }
+
+    /*
+    * Ejecuta una etapa y retorna las estadisticas de cada endpoint.
+    * */
+    Map<String, Object> run(LoadTestStage stage) throws InterruptedException {
+        Map<Endpoint, Stats> stats = new LinkedHashMap<>();
+        endpoints.forEach(endpoint -> stats.put(endpoint, new Stats()));
+
+        ExecutorService users = Executors.newFixedThreadPool(stage.users);
+        long conexionesInicio = connectionAcquisitions.getAsLong();
+        long inicio = System.nanoTime();
+        long fin = inicio + TimeUnit.SECONDS.toNanos(stage.seconds);
+
+        for (int i = 0; i < stage.users; i++) {
+            users.execute(() -> {
+                Random random = ThreadLocalRandom.current();
+                while (System.nanoTime() < fin) {
+                    Endpoint endpoint = pick(random);
+                    stats.get(endpoint).record(() -> client.send(endpoint.request.apply(random), HttpResponse.BodyHandlers.discarding()));
+                }
+            });
+        }
+        users.shutdown();
+        users.awaitTermination(stage.seconds + 120L, TimeUnit.SECONDS);
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        long conexiones = connectionAcquisitions.getAsLong() - conexionesInicio;
+        long peticiones = stats.values().stream().mapToLong(endpointStats -> endpointStats.latencies.getTotalCount()).sum();
+
+        Map<String, Object> endpointsResult = new LinkedHashMap<>();
+        stats.forEach((endpoint, endpointStats) -> {
+            Map<String, Object> endpointResult = endpointStats.toMap(segundos);
+            if (endpoint.purchases > 0) {
+                endpointResult.put("purchasesPerSecond",
+                        Math.round(endpointStats.latencies.getTotalCount() * endpoint.purchases / segundos * 10) / 10.0);
+            }
+            endpointsResult.put(endpoint.name, endpointResult);
+        });
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("users", stage.users);
+        result.put("seconds", stage.seconds);
+        result.put("connectionAcquisitions", conexiones);
+        result.put("connectionAcquisitionsPerRequest", peticiones > 0 ? Math.round(conexiones * 100.0 / peticiones) / 100.0 : 0.0);
+        result.put("endpoints", endpointsResult);
+        return result;
+    }
+
+    private void addEndpoint(Map<String, Integer> mix, String name, Function<Random, HttpRequest> request) {
+        addEndpoint(mix, name, 0, request);
+    }
+
+    private void addEndpoint(Map<String, Integer> mix, String name, int purchases, Function<Random, HttpRequest> request) {
+        int weight = mix.getOrDefault(name, 0);
+        if (weight > 0) {
+            endpoints.add(new Endpoint(name, weight, purchases, request));
+        }
+    }
+
+    private Endpoint pick(Random random) {
+        int valor = random.nextInt(totalWeight);
+        for (Endpoint endpoint : endpoints) {
+            valor -= endpoint.weight;
+            if (valor < 0) {
+                return endpoint;
+            }
+        }
+        return endpoints.get(endpoints.size() - 1);
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Authorization", "Bearer " + token)
+                .GET().build();
+    }
+
+    private HttpRequest post(String path, String body, boolean authenticated) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (authenticated) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder.build();
+    }
+
+    private Purchase purchase(Random random) {
+        Purchase purchase = new Purchase();
+        purchase.setClientId(LoadTestSeeder.clientId(random.nextInt(data.clients) + 1));
+        purchase.setDate(LocalDateTime.now());
+        purchase.setPaymentMethod(random.nextBoolean() ? "E" : "T");
+        purchase.setComment("");
+        purchase.setState("P");
+        purchase.setItems(new ArrayList<>());
+
+        int items = random.nextInt(data.maxItems) + 1;
+        int primerProducto = random.nextInt(data.products - items) + 1;
+        for (int i = 0; i < items; i++) {
+            PurchaseItem item = new PurchaseItem();
+            item.setProductId(primerProducto + i);
+            item.setQuantity(1);
+            item.setTotal(2500.0);
+            item.setActive(true);
+            purchase.getItems().add(item);
+        }
+        return purchase;
+    }
+
+    private List<Purchase> purchases(Random random, int count) {
+        List<Purchase> purchases = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            purchases.add(purchase(random));
+        }
+        return purchases;
+    }
+
+    private String json(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static class Endpoint {
+        final String name;
+        final int weight;
+        // Compras que guarda cada peticion, 0 en las consultas
+        final int purchases;
+        final Function<Random, HttpRequest> request;
+
+        Endpoint(String name, int weight, int purchases, Function<Random, HttpRequest> request) {
+            this.name = name;
+            this.weight = weight;
+            this.purchases = purchases;
+            this.request = request;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Call {
+        HttpResponse<?> send() throws IOException, InterruptedException;
+    }
+
+    private static class Stats {
+        final Histogram latencies = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+        final LongAdder errors = new LongAdder();
+
+        void record(Call call) {
+            long inicio = System.nanoTime();
+            try {
+                int status = call.send().statusCode();
+                if (status >= 400) {
+                    errors.increment();
+                }
+            } catch (IOException e) {
+                errors.increment();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - inicio);
+            latencies.recordValue(Math.min(micros, MAX_LATENCY_MICROS));
+        }
+
+        Map<String, Object> toMap(double seconds) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("requests", latencies.getTotalCount());
+            result.put("errors", errors.sum());
+            result.put("throughput", Math.round(latencies.getTotalCount() / seconds * 10) / 10.0);
+            result.put("meanMs", millis(Math.round(latencies.getMean())));
+            result.put("p50Ms", millis(latencies.getValueAtPercentile(50)));
+            result.put("p90Ms", millis(latencies.getValueAtPercentile(90)));
+            result.put("p99Ms", millis(latencies.getValueAtPercentile(99)));
+            result.put("p999Ms", millis(latencies.getValueAtPercentile(99.9)));
+            result.put("maxMs", millis(latencies.getMaxValue()));
+            return result;
+        }
+
+        private static double millis(long micros) {
+            return micros / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.platzi.market.loadtest;
+
+import com.platzi.market.persistence.entity.Compra;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+* Siembra el catalogo y el historial de compras con JDBC batch, los tamaños se configuran con
+* las propiedades loadtest.* y la semilla fija hace que cada ejecucion tenga los mismos datos.
+* */
+class LoadTestSeeder {
+
+    private static final int BATCH = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Random random = new Random(42);
+
+    final int categories;
+    final int products;
+    final int clients;
+    final int purchases;
+    final int maxItems;
+
+    LoadTestSeeder(JdbcTemplate jdbcTemplate, Environment environment) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.categories = environment.getRequiredProperty("loadtest.categories", Integer.class);
+        this.products = environment.getRequiredProperty("loadtest.products", Integer.class);
+        this.clients = environment.getRequiredProperty("loadtest.clients", Integer.class);
+        this.purchases = environment.getRequiredProperty("loadtest.purchases", Integer.class);
+        this.maxItems = environment.getRequiredProperty("loadtest.max-items", Integer.class);
+    }
+
+    void seed() {
+        List<Object[]> filas = new ArrayList<>();
+        for (int i = 1; i <= categories; i++) {
+            filas.add(new Object[]{i, "Categoria " + i, true});
+        }
+        insert("INSERT INTO categorias (id_categoria, descripcion, estado) VALUES (?, ?, ?)", filas);
+
+        for (int i = 1; i <= products; i++) {
+            // Stock suficiente para que las compras de la prueba no se queden sin existencias
+            filas.add(new Object[]{i, "Producto " + i, i % categories + 1, String.format("%013d", i),
+                    1000.0 + random.nextInt(50_000), 1_000_000, i % 10 != 0});
+            flushIfFull("INSERT INTO productos (id_producto, nombre, id_categoria, codigo_barras, precio_venta, cantidad_stock, estado) VALUES (?, ?, ?, ?, ?, ?, ?)", filas);
+        }
+        insert("INSERT INTO productos (id_producto, nombre, id_categoria, codigo_barras, precio_venta, cantidad_stock, estado) VALUES (?, ?, ?, ?, ?, ?, ?)", filas);
+
+        for (int i = 1; i <= clients; i++) {
+            filas.add(new Object[]{clientId(i), "Cliente " + i, "Apellido " + i});
+            flushIfFull("INSERT INTO clientes (id, nombre, apellidos) VALUES (?, ?, ?)", filas);
+        }
+        insert("INSERT INTO clientes (id, nombre, apellidos) VALUES (?, ?, ?)", filas);
+
+        List<Object[]> items = new ArrayList<>();
+        LocalDateTime inicio = LocalDateTime.now().minusYears(2);
+        for (int i = 1; i <= purchases; i++) {
+            filas.add(new Object[]{i, clientId(random.nextInt(clients) + 1),
+                    Timestamp.valueOf(inicio.plusMinutes(random.nextInt(2 * 365 * 24 * 60))),
+                    random.nextBoolean() ? "E" : "T", "", "P"});
+
+            int numeroItems = random.nextInt(maxItems) + 1;
+            int primerProducto = random.nextInt(products - numeroItems) + 1;
+            for (int j = 0; j < numeroItems; j++) {
+                int cantidad = random.nextInt(5) + 1;
+                items.add(new Object[]{i, primerProducto + j, cantidad, 2500.0 * cantidad, true});
+            }
+            // Los items se insertan despues de sus compras por la llave foranea
+            if (filas.size() >= BATCH) {
+                insertCompras(filas, items);
+            }
+        }
+        insertCompras(filas, items);
+
+        // Las compras nuevas de la prueba continuan despues de las sembradas. El optimizador pooled toma
+        // el valor de la secuencia como el ultimo id del bloque (valor - 49 .. valor), empezar en
+        // purchases + 1 repetiria los ultimos 49 ids sembrados
+        jdbcTemplate.execute("ALTER SEQUENCE compras_id_compra_seq RESTART WITH " + (purchases + Compra.ID_ALLOCATION_SIZE));
+    }
+
+    static String clientId(int i) {
+        return String.valueOf(1_000_000 + i);
+    }
+
+    private void insertCompras(List<Object[]> compras, List<Object[]> items) {
+        insert("INSERT INTO compras (id_compra, id_cliente, fecha, medio_pago, comentario, estado) VALUES (?, ?, ?, ?, ?, ?)", compras);
+        insert("INSERT INTO compras_productos (id_compra, id_producto, cantidad, total, estado) VALUES (?, ?, ?, ?, ?)", items);
+    }
+
+    private void flushIfFull(String sql, List<Object[]> filas) {
+        if (filas.size() >= BATCH) {
+            insert(sql, filas);
+        }
+    }
+
+    private void insert(String sql, List<Object[]> filas) {
+        if (!filas.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, filas);
+            filas.clear();
+        }
+    }
+}
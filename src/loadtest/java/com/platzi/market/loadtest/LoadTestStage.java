@@ -0,0 +1,27 @@
+package com.platzi.market.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+* Etapa de la prueba: numero de usuarios concurrentes y duracion, se escribe como <usuarios>x<segundos>.
+* */
+class LoadTestStage {
+
+    final int users;
+    final int seconds;
+
+    LoadTestStage(int users, int seconds) {
+        this.users = users;
+        this.seconds = seconds;
+    }
+
+    static List<LoadTestStage> parse(String value) {
+        List<LoadTestStage> stages = new ArrayList<>();
+        for (String stage : value.split(",")) {
+            String[] partes = stage.trim().split("x");
+            stages.add(new LoadTestStage(Integer.parseInt(partes[0]), Integer.parseInt(partes[1])));
+        }
+        return stages;
+    }
+}
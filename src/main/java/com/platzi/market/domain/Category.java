@@ -9,6 +9,18 @@ public class Category {
     private String category;
     private boolean active;
 
+    public Category() {
+    }
+
+    public Category(Integer categoryId, String category, Boolean active) {
+        if (categoryId != null) {
+            this.categoryId = categoryId;
+        }
+        this.category = category;
+        if (active != null) {
+            this.active = active;
+        }
+    }
 
     public int getCategoryId() {
         return categoryId;
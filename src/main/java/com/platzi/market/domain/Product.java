@@ -19,8 +19,54 @@ public class Product {
     private double price;
     private int stock;
     private boolean active;
+    private String barcode;
     private Category category;
 
+    public Product() {
+    }
+
+    /*
+    * Copia superficial, la usan los indices en memoria para no compartir la instancia con las caches.
+    * */
+    public Product(Product source) {
+        this.productId = source.productId;
+        this.name = source.name;
+        this.categoryId = source.categoryId;
+        this.price = source.price;
+        this.stock = source.stock;
+        this.active = source.active;
+        this.barcode = source.barcode;
+        this.category = source.category;
+    }
+
+    /*
+    * Para las consultas de solo lectura con constructor (SELECT new ...) de ProductoCrudRepository,
+    * que no crean entidades. Las columnas pueden ser null, igual que en ProductMapper se dejan los
+    * valores por defecto; sin categoria (categoryRefId null) category queda en null.
+    * */
+    public Product(Integer productId, String name, Integer categoryId, Double price, Integer stock, Boolean active,
+                   String barcode, Integer categoryRefId, String categoryName, Boolean categoryActive) {
+        if (productId != null) {
+            this.productId = productId;
+        }
+        this.name = name;
+        if (categoryId != null) {
+            this.categoryId = categoryId;
+        }
+        if (price != null) {
+            this.price = price;
+        }
+        if (stock != null) {
+            this.stock = stock;
+        }
+        if (active != null) {
+            this.active = active;
+        }
+        this.barcode = barcode;
+        if (categoryRefId != null) {
+            this.category = new Category(categoryRefId, categoryName, categoryActive);
+        }
+    }
 
     public int getProductId() {
         return productId;
@@ -70,6 +116,14 @@ public class Product {
         this.active = active;
     }
 
+    public String getBarcode() {
+        return barcode;
+    }
+
+    public void setBarcode(String barcode) {
+        this.barcode = barcode;
+    }
+
     public Category getCategory() {
         return category;
     }
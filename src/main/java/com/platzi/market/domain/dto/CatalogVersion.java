@@ -0,0 +1,24 @@
+package com.platzi.market.domain.dto;
+
+/*
+* Version de una parte del catalogo (todo, una categoria o un producto) para las peticiones
+* condicionales: eTag cambia con cada modificacion y lastModified es la hora de la ultima, en
+* milisegundos.
+* */
+public class CatalogVersion {
+    private final String eTag;
+    private final long lastModified;
+
+    public CatalogVersion(String eTag, long lastModified) {
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+}
@@ -0,0 +1,28 @@
+package com.platzi.market.domain.dto;
+
+/*
+* Ventas de una categoria en un rango de fechas, segun la categoria del producto al venderse.
+* */
+public class CategorySales {
+    private final int categoryId;
+    private final long quantity;
+    private final double total;
+
+    public CategorySales(int categoryId, long quantity, double total) {
+        this.categoryId = categoryId;
+        this.quantity = quantity;
+        this.total = total;
+    }
+
+    public int getCategoryId() {
+        return categoryId;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public double getTotal() {
+        return total;
+    }
+}
@@ -0,0 +1,43 @@
+package com.platzi.market.domain.dto;
+
+/*
+* Categoria con el numero de productos que tiene y cuantos de ellos estan activos.
+*
+* El constructor con tipos envoltorio lo usa la consulta agregada de CategoriaCrudRepository
+* (SELECT new ...), los conteos llegan en null si la categoria no tiene productos.
+* */
+public class CategorySummary {
+    private final int categoryId;
+    private final String category;
+    private final boolean active;
+    private final long products;
+    private final long activeProducts;
+
+    public CategorySummary(Integer categoryId, String category, Boolean active, Long products, Long activeProducts) {
+        this.categoryId = categoryId;
+        this.category = category;
+        this.active = active != null && active;
+        this.products = products != null ? products : 0;
+        this.activeProducts = activeProducts != null ? activeProducts : 0;
+    }
+
+    public int getCategoryId() {
+        return categoryId;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public long getProducts() {
+        return products;
+    }
+
+    public long getActiveProducts() {
+        return activeProducts;
+    }
+}
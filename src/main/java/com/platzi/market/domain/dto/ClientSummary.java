@@ -0,0 +1,54 @@
+package com.platzi.market.domain.dto;
+
+import java.time.LocalDateTime;
+
+/*
+* Lo gastado por un cliente en todas sus compras; items es el numero de unidades compradas.
+* */
+public class ClientSummary {
+    private String clientId;
+    private double total;
+    private int purchases;
+    private int items;
+    private LocalDateTime lastPurchase;
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
+    public double getTotal() {
+        return total;
+    }
+
+    public void setTotal(double total) {
+        this.total = total;
+    }
+
+    public int getPurchases() {
+        return purchases;
+    }
+
+    public void setPurchases(int purchases) {
+        this.purchases = purchases;
+    }
+
+    public int getItems() {
+        return items;
+    }
+
+    public void setItems(int items) {
+        this.items = items;
+    }
+
+    public LocalDateTime getLastPurchase() {
+        return lastPurchase;
+    }
+
+    public void setLastPurchase(LocalDateTime lastPurchase) {
+        this.lastPurchase = lastPurchase;
+    }
+}
@@ -0,0 +1,45 @@
+package com.platzi.market.domain.dto;
+
+import java.time.LocalDate;
+
+/*
+* Ventas de un dia; items es el numero de unidades vendidas.
+* */
+public class DailySales {
+    private LocalDate date;
+    private double total;
+    private int purchases;
+    private int items;
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
+    public double getTotal() {
+        return total;
+    }
+
+    public void setTotal(double total) {
+        this.total = total;
+    }
+
+    public int getPurchases() {
+        return purchases;
+    }
+
+    public void setPurchases(int purchases) {
+        this.purchases = purchases;
+    }
+
+    public int getItems() {
+        return items;
+    }
+
+    public void setItems(int items) {
+        this.items = items;
+    }
+}
@@ -0,0 +1,30 @@
+package com.platzi.market.domain.dto;
+
+/*
+* Compra creada con una clave de idempotencia y la huella (hash) de la compra que se pidio. Un
+* reintento con la misma clave solo recibe la compra si su huella es la misma.
+*
+* fingerprint es null en las claves guardadas antes de que se guardara la huella, esas se aceptan
+* hasta que expiran.
+* */
+public class IdempotencyRecord {
+    private final int purchaseId;
+    private final String fingerprint;
+
+    public IdempotencyRecord(int purchaseId, String fingerprint) {
+        this.purchaseId = purchaseId;
+        this.fingerprint = fingerprint;
+    }
+
+    public int getPurchaseId() {
+        return purchaseId;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public boolean matches(String fingerprint) {
+        return this.fingerprint == null || this.fingerprint.equals(fingerprint);
+    }
+}
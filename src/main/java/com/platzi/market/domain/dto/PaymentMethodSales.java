@@ -0,0 +1,35 @@
+package com.platzi.market.domain.dto;
+
+/*
+* Compras pagadas con un medio de pago en un rango de fechas; share es la fraccion (0 a 1) del
+* total vendido en el rango.
+* */
+public class PaymentMethodSales {
+    private final String paymentMethod;
+    private final long purchases;
+    private final double total;
+    private final double share;
+
+    public PaymentMethodSales(String paymentMethod, long purchases, double total, double share) {
+        this.paymentMethod = paymentMethod;
+        this.purchases = purchases;
+        this.total = total;
+        this.share = share;
+    }
+
+    public String getPaymentMethod() {
+        return paymentMethod;
+    }
+
+    public long getPurchases() {
+        return purchases;
+    }
+
+    public double getTotal() {
+        return total;
+    }
+
+    public double getShare() {
+        return share;
+    }
+}
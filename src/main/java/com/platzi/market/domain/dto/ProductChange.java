@@ -0,0 +1,99 @@
+package com.platzi.market.domain.dto;
+
+import com.platzi.market.domain.Product;
+import com.platzi.market.domain.event.ProductChangedEvent;
+
+import java.time.Instant;
+
+/*
+* Un cambio del feed de productos. sequence es creciente y sin huecos, el cliente la usa para
+* retomar el feed despues de una desconexion.
+*
+* product solo viene en CREATED y UPDATED, previousCategoryId solo en UPDATED; en STOCK_CHANGED
+* basta con stock.
+* */
+public class ProductChange {
+    private long sequence;
+    private ProductChangedEvent.Type type;
+    private int productId;
+    private int categoryId;
+    private Integer previousCategoryId;
+    private int stock;
+    private Product product;
+    private Instant timestamp;
+
+    public ProductChange(long sequence, ProductChangedEvent event, Instant timestamp) {
+        this.sequence = sequence;
+        this.type = event.getType();
+        this.productId = event.getProductId();
+        this.categoryId = event.getCategoryId();
+        this.previousCategoryId = event.getPreviousCategoryId();
+        this.stock = event.getStock();
+        this.product = event.getProduct() != null ? new Product(event.getProduct()) : null;
+        this.timestamp = timestamp;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public ProductChangedEvent.Type getType() {
+        return type;
+    }
+
+    public void setType(ProductChangedEvent.Type type) {
+        this.type = type;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public void setProductId(int productId) {
+        this.productId = productId;
+    }
+
+    public int getCategoryId() {
+        return categoryId;
+    }
+
+    public void setCategoryId(int categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    public Integer getPreviousCategoryId() {
+        return previousCategoryId;
+    }
+
+    public void setPreviousCategoryId(Integer previousCategoryId) {
+        this.previousCategoryId = previousCategoryId;
+    }
+
+    public int getStock() {
+        return stock;
+    }
+
+    public void setStock(int stock) {
+        this.stock = stock;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public void setProduct(Product product) {
+        this.product = product;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(Instant timestamp) {
+        this.timestamp = timestamp;
+    }
+}
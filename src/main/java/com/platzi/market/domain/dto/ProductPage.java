@@ -0,0 +1,37 @@
+package com.platzi.market.domain.dto;
+
+import com.platzi.market.domain.Product;
+
+import java.util.List;
+
+/*
+* Pagina de productos obtenida por keyset (cursor).
+*
+* nextPageToken contiene el productId del ultimo producto de la pagina, el cliente lo envia
+* como parametro "after" para pedir la siguiente pagina. Es nulo cuando ya no hay mas productos.
+* */
+public class ProductPage {
+    private List<Product> products;
+    private Integer nextPageToken;
+
+    public ProductPage(List<Product> products, Integer nextPageToken) {
+        this.products = products;
+        this.nextPageToken = nextPageToken;
+    }
+
+    public List<Product> getProducts() {
+        return products;
+    }
+
+    public void setProducts(List<Product> products) {
+        this.products = products;
+    }
+
+    public Integer getNextPageToken() {
+        return nextPageToken;
+    }
+
+    public void setNextPageToken(Integer nextPageToken) {
+        this.nextPageToken = nextPageToken;
+    }
+}
@@ -0,0 +1,34 @@
+package com.platzi.market.domain.dto;
+
+/*
+* Ventas de un producto en un rango de fechas; quantity es el numero de unidades vendidas.
+* */
+public class ProductSales {
+    private final int productId;
+    private final String name;
+    private final long quantity;
+    private final double total;
+
+    public ProductSales(int productId, String name, long quantity, double total) {
+        this.productId = productId;
+        this.name = name;
+        this.quantity = quantity;
+        this.total = total;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public double getTotal() {
+        return total;
+    }
+}
@@ -0,0 +1,39 @@
+package com.platzi.market.domain.dto;
+
+import java.util.List;
+
+public class PurchaseBatchResult {
+    private int saved;
+    private int failed;
+    private List<PurchaseResult> results;
+
+    public PurchaseBatchResult(List<PurchaseResult> results) {
+        this.results = results;
+        this.saved = (int) results.stream().filter(PurchaseResult::isSuccess).count();
+        this.failed = results.size() - saved;
+    }
+
+    public int getSaved() {
+        return saved;
+    }
+
+    public void setSaved(int saved) {
+        this.saved = saved;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+
+    public List<PurchaseResult> getResults() {
+        return results;
+    }
+
+    public void setResults(List<PurchaseResult> results) {
+        this.results = results;
+    }
+}
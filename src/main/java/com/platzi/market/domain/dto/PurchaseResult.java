@@ -0,0 +1,58 @@
+package com.platzi.market.domain.dto;
+
+/*
+* Resultado de guardar un ticket dentro de un lote, index es su posicion en la peticion.
+* */
+public class PurchaseResult {
+    private int index;
+    private boolean success;
+    private Integer purchaseId;
+    private String error;
+
+    public PurchaseResult(int index, boolean success, Integer purchaseId, String error) {
+        this.index = index;
+        this.success = success;
+        this.purchaseId = purchaseId;
+        this.error = error;
+    }
+
+    public static PurchaseResult saved(int index, int purchaseId) {
+        return new PurchaseResult(index, true, purchaseId, null);
+    }
+
+    public static PurchaseResult failed(int index, String error) {
+        return new PurchaseResult(index, false, null, error);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public Integer getPurchaseId() {
+        return purchaseId;
+    }
+
+    public void setPurchaseId(Integer purchaseId) {
+        this.purchaseId = purchaseId;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
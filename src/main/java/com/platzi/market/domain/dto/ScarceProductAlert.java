@@ -0,0 +1,52 @@
+package com.platzi.market.domain.dto;
+
+import com.platzi.market.domain.Product;
+
+/*
+* Aviso que recibe un suscriptor cuando un producto cruza su umbral de stock bajo.
+* */
+public class ScarceProductAlert {
+    private int threshold;
+    private int previousStock;
+    private int stock;
+    private Product product;
+
+    public ScarceProductAlert(int threshold, int previousStock, int stock, Product product) {
+        this.threshold = threshold;
+        this.previousStock = previousStock;
+        this.stock = stock;
+        this.product = product;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public int getPreviousStock() {
+        return previousStock;
+    }
+
+    public void setPreviousStock(int previousStock) {
+        this.previousStock = previousStock;
+    }
+
+    public int getStock() {
+        return stock;
+    }
+
+    public void setStock(int stock) {
+        this.stock = stock;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public void setProduct(Product product) {
+        this.product = product;
+    }
+}
@@ -0,0 +1,91 @@
+package com.platzi.market.domain.event;
+
+import com.platzi.market.domain.Product;
+
+/*
+* Evento que se publica cada vez que un producto se crea, actualiza, elimina o cambia su stock.
+*
+* Los componentes que mantienen informacion derivada de los productos (caches, indices, etc.)
+* lo escuchan para actualizarse sin que el repositorio tenga que conocerlos.
+*
+* product solo esta presente en CREATED y UPDATED, previousCategoryId solo en UPDATED.
+* previouslyActive es el estado antes del cambio (en UPDATED y DELETED), con el se ajustan conteos
+* de productos activos sin volver a consultarlos.
+*
+* version crece con cada cambio de un mismo producto en el orden en que se confirman. Los eventos se
+* entregan despues del commit en el hilo de cada transaccion y pueden llegar en otro orden; quien
+* guarda el stock descarta un evento con version menor a la que ya aplico.
+* */
+public class ProductChangedEvent {
+
+    public enum Type { CREATED, UPDATED, DELETED, STOCK_CHANGED }
+
+    private final Type type;
+    private final int productId;
+    private final int categoryId;
+    private final Integer previousCategoryId;
+    private final boolean previouslyActive;
+    private final int stock;
+    private final Product product;
+    private final long version;
+
+    private ProductChangedEvent(Type type, int productId, int categoryId, Integer previousCategoryId,
+                                boolean previouslyActive, int stock, Product product, long version) {
+        this.type = type;
+        this.productId = productId;
+        this.categoryId = categoryId;
+        this.previousCategoryId = previousCategoryId;
+        this.previouslyActive = previouslyActive;
+        this.stock = stock;
+        this.product = product;
+        this.version = version;
+    }
+
+    public static ProductChangedEvent created(Product product, long version) {
+        return new ProductChangedEvent(Type.CREATED, product.getProductId(), product.getCategoryId(), null, false, product.getStock(), product, version);
+    }
+
+    public static ProductChangedEvent updated(Product product, int previousCategoryId, boolean previouslyActive, long version) {
+        return new ProductChangedEvent(Type.UPDATED, product.getProductId(), product.getCategoryId(), previousCategoryId, previouslyActive, product.getStock(), product, version);
+    }
+
+    public static ProductChangedEvent deleted(int productId, int categoryId, boolean previouslyActive, long version) {
+        return new ProductChangedEvent(Type.DELETED, productId, categoryId, null, previouslyActive, 0, null, version);
+    }
+
+    public static ProductChangedEvent stockChanged(int productId, int categoryId, int stock, long version) {
+        return new ProductChangedEvent(Type.STOCK_CHANGED, productId, categoryId, null, false, stock, null, version);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public int getCategoryId() {
+        return categoryId;
+    }
+
+    public Integer getPreviousCategoryId() {
+        return previousCategoryId;
+    }
+
+    public boolean isPreviouslyActive() {
+        return previouslyActive;
+    }
+
+    public int getStock() {
+        return stock;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,24 @@
+package com.platzi.market.domain.event;
+
+import com.platzi.market.domain.Purchase;
+
+import java.util.List;
+
+/*
+* Evento que se publica al guardar compras, con las compras ya guardadas (con su id).
+*
+* Con @TransactionalEventListener los componentes que mantienen informacion derivada de las
+* compras solo reciben las que se confirmaron; un lote que se revierte no llega a ellos.
+* */
+public class PurchaseSavedEvent {
+
+    private final List<Purchase> purchases;
+
+    public PurchaseSavedEvent(List<Purchase> purchases) {
+        this.purchases = purchases;
+    }
+
+    public List<Purchase> getPurchases() {
+        return purchases;
+    }
+}
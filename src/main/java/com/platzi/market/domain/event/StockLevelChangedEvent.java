@@ -0,0 +1,43 @@
+package com.platzi.market.domain.event;
+
+import com.platzi.market.domain.Product;
+
+/*
+* Evento que se publica cuando cambia el stock de un producto activo que esta o estaba por debajo
+* del limite que sigue el indice de stock bajo.
+*
+* Si antes el producto estaba por encima del limite, previousStock es el limite (el stock real era
+* igual o mayor), suficiente para saber si cruzo cualquier umbral menor o igual al limite.
+* */
+public class StockLevelChangedEvent {
+
+    private final Product product;
+    private final int previousStock;
+    private final int stock;
+
+    public StockLevelChangedEvent(Product product, int previousStock, int stock) {
+        this.product = product;
+        this.previousStock = previousStock;
+        this.stock = stock;
+    }
+
+    public boolean crossedBelow(int threshold) {
+        return previousStock >= threshold && stock < threshold;
+    }
+
+    public boolean crossedAbove(int threshold) {
+        return previousStock < threshold && stock >= threshold;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public int getPreviousStock() {
+        return previousStock;
+    }
+
+    public int getStock() {
+        return stock;
+    }
+}
@@ -0,0 +1,12 @@
+package com.platzi.market.domain.exception;
+
+/*
+* Se lanza cuando una clave de idempotencia ya se uso, para el mismo cliente, con una compra
+* distinta. El reintento no recibe la compra original ni se guarda una nueva.
+* */
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+    public IdempotencyKeyReusedException(String idempotencyKey) {
+        super("Idempotency key " + idempotencyKey + " was already used for a different purchase");
+    }
+}
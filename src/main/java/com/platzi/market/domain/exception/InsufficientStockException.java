@@ -0,0 +1,19 @@
+package com.platzi.market.domain.exception;
+
+/*
+* Se lanza cuando un producto no tiene stock suficiente para una compra, la transaccion que
+* descontaba el stock se revierte completa.
+* */
+public class InsufficientStockException extends RuntimeException {
+
+    private final int productId;
+
+    public InsufficientStockException(int productId) {
+        super("Insufficient stock for product " + productId);
+        this.productId = productId;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+}
@@ -0,0 +1,12 @@
+package com.platzi.market.domain.exception;
+
+/*
+* Se lanza cuando una compra no pasa la validacion (sin cliente, sin productos o con una cantidad
+* que no es positiva), antes de enviar nada a la BD.
+* */
+public class InvalidPurchaseException extends RuntimeException {
+
+    public InvalidPurchaseException(String message) {
+        super(message);
+    }
+}
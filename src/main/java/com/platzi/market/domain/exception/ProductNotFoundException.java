@@ -0,0 +1,19 @@
+package com.platzi.market.domain.exception;
+
+/*
+* Se lanza cuando una compra incluye un producto que no existe, la transaccion que descontaba el
+* stock se revierte completa.
+* */
+public class ProductNotFoundException extends RuntimeException {
+
+    private final int productId;
+
+    public ProductNotFoundException(int productId) {
+        super("Product " + productId + " does not exist");
+        this.productId = productId;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+}
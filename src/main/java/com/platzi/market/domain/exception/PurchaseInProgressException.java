@@ -0,0 +1,12 @@
+package com.platzi.market.domain.exception;
+
+/*
+* Se lanza cuando una compra con la misma clave de idempotencia se sigue procesando despues del
+* tiempo de espera; el cliente puede reintentar con la misma clave.
+* */
+public class PurchaseInProgressException extends RuntimeException {
+
+    public PurchaseInProgressException(String idempotencyKey) {
+        super("A purchase with idempotency key " + idempotencyKey + " is still being processed");
+    }
+}
@@ -0,0 +1,12 @@
+package com.platzi.market.domain.repository;
+
+import com.platzi.market.domain.dto.CatalogVersion;
+
+/*
+* Versiones del catalogo sin leer productos, permiten responder 304 Not Modified sin ir a la BD.
+* */
+public interface CatalogVersionRepository {
+    CatalogVersion getCatalogVersion();
+    CatalogVersion getCategoryVersion(int categoryId);
+    CatalogVersion getProductVersion(int productId);
+}
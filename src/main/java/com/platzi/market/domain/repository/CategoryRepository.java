@@ -0,0 +1,11 @@
+package com.platzi.market.domain.repository;
+
+import com.platzi.market.domain.dto.CategorySummary;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface CategoryRepository {
+    List<CategorySummary> getAll();
+    Optional<CategorySummary> getSummary(int categoryId);
+}
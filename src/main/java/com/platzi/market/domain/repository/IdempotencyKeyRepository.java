@@ -0,0 +1,25 @@
+package com.platzi.market.domain.repository;
+
+import com.platzi.market.domain.dto.IdempotencyRecord;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/*
+* Claves de idempotencia de las compras: (cliente, clave) => compra que se creo con ella y su huella.
+* Las claves son de cada cliente, la misma clave de dos clientes son dos compras distintas.
+*
+* putIfAbsent y remove trabajan sobre las claves en curso o recientes (en memoria): el futuro se
+* completa con la compra guardada, o con null si el intento fallo sin guardar nada.
+*
+* find y save trabajan sobre las claves guardadas, compartidas por todos los nodos. save debe
+* llamarse en la transaccion que guarda la compra y lanza DuplicateKeyException si la clave ya
+* existe. Las claves expiran despues de un tiempo, deleteExpired las elimina.
+* */
+public interface IdempotencyKeyRepository {
+    CompletableFuture<IdempotencyRecord> putIfAbsent(String clientId, String key, CompletableFuture<IdempotencyRecord> attempt);
+    void remove(String clientId, String key, CompletableFuture<IdempotencyRecord> attempt);
+    Optional<IdempotencyRecord> find(String clientId, String key);
+    void save(String clientId, String key, IdempotencyRecord record);
+    int deleteExpired();
+}
@@ -0,0 +1,16 @@
+package com.platzi.market.domain.repository;
+
+import com.platzi.market.domain.Product;
+
+import java.util.Optional;
+
+/*
+* Busqueda exacta de un producto por su codigo de barras, la usan los lectores de las cajas.
+*
+* getIndexedByBarcode solo responde con lo que ya esta en memoria, sin consultar la BD; la usa la
+* busqueda por texto, que prueba cada consulta como codigo de barras.
+* */
+public interface ProductBarcodeRepository {
+    Optional<Product> getByBarcode(String barcode);
+    Optional<Product> getIndexedByBarcode(String barcode);
+}
@@ -1,8 +1,10 @@
 package com.platzi.market.domain.repository;
 
 import com.platzi.market.domain.Product;
+import com.platzi.market.domain.PurchaseItem;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /*
 * Este repositorio indica el nombre de los metodos que cualquier repositorio que
@@ -20,9 +22,12 @@ import java.util.Optional;
 * */
 public interface ProductRepository {
     List<Product> getAll();
+    List<Product> getPage(int afterProductId, int limit);
+    void streamAll(Consumer<Product> consumer);
     Optional<Product> getById(int productId);
     Optional<List<Product>> getByCategory(int categoryId);
     Optional<List<Product>> getScarseProducts(int quantity);
     Product save(Product product);
     void delete(int productId);
+    void decrementStock(List<PurchaseItem> items);
 }
@@ -0,0 +1,15 @@
+package com.platzi.market.domain.repository;
+
+import com.platzi.market.domain.Product;
+
+import java.util.List;
+
+/*
+* Busqueda de productos por nombre (palabras completas o prefijos) y por codigo de barras.
+*
+* A diferencia de ProductRepository no se habla de como se guardan los productos, solo de como
+* se encuentran; la implementacion puede ser un indice en memoria, la BD o un motor externo.
+* */
+public interface ProductSearchRepository {
+    List<Product> search(String query, int limit);
+}
@@ -2,11 +2,16 @@ package com.platzi.market.domain.repository;
 
 import com.platzi.market.domain.Purchase;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface PurchaseRepository {
     List<Purchase> getAll();
+    Optional<Purchase> getById(int purchaseId);
     Optional<List<Purchase>> getByClient(String clientId);
+    void streamByDate(LocalDateTime from, LocalDateTime to, Consumer<Purchase> consumer);
     Purchase save(Purchase purchase);
+    List<Purchase> saveAll(List<Purchase> purchases);
 }
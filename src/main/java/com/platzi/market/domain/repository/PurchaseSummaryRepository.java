@@ -0,0 +1,16 @@
+package com.platzi.market.domain.repository;
+
+import com.platzi.market.domain.dto.ClientSummary;
+import com.platzi.market.domain.dto.DailySales;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+/*
+* Totales precalculados de las compras, se leen sin recorrer las compras ni sus productos.
+* */
+public interface PurchaseSummaryRepository {
+    Optional<ClientSummary> getClientSummary(String clientId);
+    List<DailySales> getDailySales(LocalDate from, LocalDate to);
+}
@@ -0,0 +1,20 @@
+package com.platzi.market.domain.repository;
+
+import com.platzi.market.domain.dto.CategorySales;
+import com.platzi.market.domain.dto.PaymentMethodSales;
+import com.platzi.market.domain.dto.ProductSales;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/*
+* Agregados de ventas sobre un rango de dias [from, to], incluidos ambos extremos.
+*
+* isReady es false mientras la implementacion no puede responder (por ejemplo, mientras se carga).
+* */
+public interface SalesAnalyticsRepository {
+    boolean isReady();
+    List<ProductSales> getTopProducts(LocalDate from, LocalDate to, int limit);
+    List<CategorySales> getSalesByCategory(LocalDate from, LocalDate to);
+    List<PaymentMethodSales> getPaymentMethodMix(LocalDate from, LocalDate to);
+}
@@ -0,0 +1,27 @@
+package com.platzi.market.domain.service;
+
+import com.platzi.market.domain.dto.CategorySummary;
+import com.platzi.market.domain.repository.CategoryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+
+/*
+* Las categorias se responden desde memoria, sin transaccion (ver CategorySnapshot).
+* */
+@Service
+public class CategoryService {
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    public List<CategorySummary> getAll() {
+        return categoryRepository.getAll();
+    }
+
+    public Optional<CategorySummary> getSummary(int categoryId) {
+        return categoryRepository.getSummary(categoryId);
+    }
+}
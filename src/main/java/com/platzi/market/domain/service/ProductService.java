@@ -1,12 +1,19 @@
 package com.platzi.market.domain.service;
 
 import com.platzi.market.domain.Product;
+import com.platzi.market.domain.dto.CatalogVersion;
+import com.platzi.market.domain.dto.ProductPage;
+import com.platzi.market.domain.repository.CatalogVersionRepository;
+import com.platzi.market.domain.repository.ProductBarcodeRepository;
 import com.platzi.market.domain.repository.ProductRepository;
+import com.platzi.market.domain.repository.ProductSearchRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /*
 * Para inidcar que la clase es un servcio de la logica de negocio
@@ -18,6 +25,11 @@ import java.util.Optional;
 @Service
 public class ProductService {
 
+    // Numero maximo de productos que se entregan en una pagina
+    private static final int MAX_PAGE_SIZE = 1000;
+    // Numero maximo de resultados de una busqueda
+    private static final int MAX_SEARCH_RESULTS = 100;
+
     /*
     * Inyectamos ProductRepository e internamente Spring crea un
     * objeto de la clase ProductRepository, esta implementacion
@@ -28,22 +40,101 @@ public class ProductService {
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private ProductSearchRepository productSearchRepository;
+
+    @Autowired
+    private ProductBarcodeRepository productBarcodeRepository;
+
+    @Autowired
+    private CatalogVersionRepository catalogVersionRepository;
+
+    @Transactional(readOnly = true)
     public List<Product> getAll(){
         return productRepository.getAll();
     }
 
+    /*
+    * Versiones para las peticiones condicionales, no consultan la BD ni abren una transaccion.
+    * */
+    public CatalogVersion getCatalogVersion() {
+        return catalogVersionRepository.getCatalogVersion();
+    }
+
+    public CatalogVersion getCategoryVersion(int categoryId) {
+        return catalogVersionRepository.getCategoryVersion(categoryId);
+    }
+
+    public CatalogVersion getProductVersion(int productId) {
+        return catalogVersionRepository.getProductVersion(productId);
+    }
+
+    /*
+    * Se pide un producto mas del limite para saber si existe una pagina siguiente sin tener
+    * que hacer un COUNT sobre la tabla.
+    * */
+    @Transactional(readOnly = true)
+    public ProductPage getPage(int afterProductId, int limit) {
+        int size = Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+        List<Product> products = productRepository.getPage(afterProductId, size + 1);
+
+        if (products.size() > size) {
+            products = products.subList(0, size);
+            return new ProductPage(products, products.get(size - 1).getProductId());
+        }
+        return new ProductPage(products, null);
+    }
+
+    /*
+    * El cursor de la BD solo puede mantenerse abierto dentro de una transaccion.
+    * */
+    @Transactional(readOnly = true)
+    public void streamAll(Consumer<Product> consumer) {
+        productRepository.streamAll(consumer);
+    }
+
+    /*
+    * search y getByBarcode se resuelven con los indices en memoria, sin transaccion.
+    * */
+    public List<Product> search(String query, int limit) {
+        return productSearchRepository.search(query, Math.min(Math.max(limit, 1), MAX_SEARCH_RESULTS));
+    }
+
+    @Transactional(readOnly = true)
     public Optional<Product> getById(int productId) {
         return productRepository.getById(productId);
     }
 
+    public Optional<Product> getByBarcode(String barcode) {
+        return productBarcodeRepository.getByBarcode(barcode);
+    }
+
+    @Transactional(readOnly = true)
     public Optional<List<Product>> getByCategory(int categoryId) {
         return productRepository.getByCategory(categoryId);
     }
 
+    /*
+    * Productos activos con stock menor a quantity.
+    * */
+    @Transactional(readOnly = true)
+    public Optional<List<Product>> getScarseProducts(int quantity) {
+        return productRepository.getScarseProducts(quantity);
+    }
+
+    /*
+    * Leer la categoria anterior y guardar van en la misma transaccion y con una sola conexion.
+    * */
+    @Transactional
     public Product save(Product product) {
         return productRepository.save(product);
     }
 
+    /*
+    * Buscar y eliminar en una sola transaccion: la llamada interna a getById no pasa por el proxy
+    * y usa la transaccion de escritura de este metodo.
+    * */
+    @Transactional
     public boolean delete(int productId) {
         /*
         * El map se ejecuta(lineas 51(despues de .map(..., 52, 53) cuando el producto existe
@@ -1,28 +1,322 @@
 package com.platzi.market.domain.service;
 
 import com.platzi.market.domain.Purchase;
+import com.platzi.market.domain.PurchaseItem;
+import com.platzi.market.domain.dto.ClientSummary;
+import com.platzi.market.domain.dto.DailySales;
+import com.platzi.market.domain.dto.IdempotencyRecord;
+import com.platzi.market.domain.dto.PurchaseBatchResult;
+import com.platzi.market.domain.dto.PurchaseResult;
+import com.platzi.market.domain.exception.IdempotencyKeyReusedException;
+import com.platzi.market.domain.exception.InsufficientStockException;
+import com.platzi.market.domain.exception.InvalidPurchaseException;
+import com.platzi.market.domain.exception.ProductNotFoundException;
+import com.platzi.market.domain.exception.PurchaseInProgressException;
+import com.platzi.market.domain.repository.IdempotencyKeyRepository;
+import com.platzi.market.domain.repository.ProductRepository;
 import com.platzi.market.domain.repository.PurchaseRepository;
+import com.platzi.market.domain.repository.PurchaseSummaryRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
 public class PurchaseService {
 
+    // Limites usados cuando no se indica el rango de fechas
+    private static final LocalDateTime MIN_DATE = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime MAX_DATE = LocalDateTime.of(9999, 12, 31, 0, 0);
+
+    // Dias que se entregan en las ventas diarias cuando no se indica el rango
+    private static final int DEFAULT_DAILY_SALES_DAYS = 30;
+
+    // Largo de la columna compras_idempotencia.clave
+    public static final int MAX_IDEMPOTENCY_KEY_LENGTH = 100;
+
     @Autowired
     private PurchaseRepository purchaseRepository;
 
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PurchaseSummaryRepository purchaseSummaryRepository;
+
+    @Autowired
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Tiempo que un reintento espera a que termine la compra en curso con su misma clave
+    @Value("${platzi.purchases.idempotency.wait-ms}")
+    private long idempotencyWait;
+
+    @Transactional(readOnly = true)
     public List<Purchase> getAll() {
         return purchaseRepository.getAll();
     }
 
+    @Transactional(readOnly = true)
     public Optional<List<Purchase>> getByClient(String clientId) {
         return purchaseRepository.getByClient(clientId);
     }
 
+    @Transactional(readOnly = true)
+    public Optional<ClientSummary> getClientSummary(String clientId) {
+        return purchaseSummaryRepository.getClientSummary(clientId);
+    }
+
+    /*
+    * Sin rango se entregan los ultimos 30 dias.
+    * */
+    @Transactional(readOnly = true)
+    public List<DailySales> getDailySales(LocalDate from, LocalDate to) {
+        LocalDate hasta = to != null ? to : LocalDate.now();
+        LocalDate desde = from != null ? from : hasta.minusDays(DEFAULT_DAILY_SALES_DAYS - 1);
+        return purchaseSummaryRepository.getDailySales(desde, hasta);
+    }
+
+    /*
+    * El cursor de la BD solo puede mantenerse abierto dentro de una transaccion.
+    * */
+    @Transactional(readOnly = true)
+    public void streamByDate(LocalDateTime from, LocalDateTime to, Consumer<Purchase> consumer) {
+        purchaseRepository.streamByDate(from != null ? from : MIN_DATE, to != null ? to : MAX_DATE, consumer);
+    }
+
+    /*
+    * La compra y el descuento del stock de sus productos se confirman o revierten juntos.
+    * */
+    @Transactional
     public Purchase save(Purchase purchase) {
+        requireValid(purchase);
+        productRepository.decrementStock(purchase.getItems());
         return purchaseRepository.save(purchase);
     }
+
+    /*
+    * Guarda la compra una sola vez por clave de idempotencia; un reintento con la misma clave
+    * devuelve la compra que ya se guardo sin volver a descontar stock ni insertar en compras.
+    *
+    * La clave es de cada cliente (clientId de la compra) y se guarda con la huella de la compra
+    * pedida. Un reintento con otra compra (otra terminal que repite la clave o un cuerpo distinto)
+    * lanza IdempotencyKeyReusedException en lugar de recibir una compra que no pidio.
+    *
+    * Los reintentos que llegan mientras la compra se guarda en este nodo esperan su resultado. Si ese
+    * intento falla sin guardar nada, el reintento lo vuelve a intentar. Entre nodos el duplicado lo
+    * evita la llave primaria (cliente, clave), que se inserta en la misma transaccion que la compra.
+    *
+    * Sin @Transactional: cada intento abre su propia transaccion con transactionTemplate y la espera
+    * de un reintento no retiene una conexion.
+    * */
+    public Purchase save(Purchase purchase, String idempotencyKey) {
+        requireValid(purchase);
+        String clientId = purchase.getClientId();
+        String fingerprint = fingerprint(purchase);
+        while (true) {
+            CompletableFuture<IdempotencyRecord> intento = new CompletableFuture<>();
+            CompletableFuture<IdempotencyRecord> anterior = idempotencyKeyRepository.putIfAbsent(clientId, idempotencyKey, intento);
+            if (anterior == null) {
+                return saveOnce(purchase, idempotencyKey, fingerprint, intento);
+            }
+            IdempotencyRecord guardada = await(anterior, idempotencyKey);
+            if (guardada != null) {
+                return getSaved(guardada, idempotencyKey, fingerprint);
+            }
+        }
+    }
+
+    private Purchase saveOnce(Purchase purchase, String idempotencyKey, String fingerprint,
+                              CompletableFuture<IdempotencyRecord> intento) {
+        String clientId = purchase.getClientId();
+        Optional<IdempotencyRecord> existente;
+        Purchase nueva = null;
+        try {
+            existente = findIdempotencyRecord(clientId, idempotencyKey);
+            if (existente.isEmpty()) {
+                try {
+                    nueva = transactionTemplate.execute(status -> {
+                        productRepository.decrementStock(purchase.getItems());
+                        Purchase guardada = purchaseRepository.save(purchase);
+                        idempotencyKeyRepository.save(clientId, idempotencyKey,
+                                new IdempotencyRecord(guardada.getPurchaseId(), fingerprint));
+                        return guardada;
+                    });
+                } catch (DuplicateKeyException e) {
+                    // Otro nodo guardo la misma clave al mismo tiempo, esta transaccion se revirtio
+                    existente = Optional.of(findIdempotencyRecord(clientId, idempotencyKey).orElseThrow(() -> e));
+                }
+            }
+        } catch (RuntimeException e) {
+            idempotencyKeyRepository.remove(clientId, idempotencyKey, intento);
+            intento.complete(null);
+            throw e;
+        }
+
+        if (nueva != null) {
+            intento.complete(new IdempotencyRecord(nueva.getPurchaseId(), fingerprint));
+            return nueva;
+        }
+        intento.complete(existente.get());
+        return getSaved(existente.get(), idempotencyKey, fingerprint);
+    }
+
+    /*
+    * En una transaccion de escritura para leer de la BD principal, una replica puede no tener
+    * todavia la compra que guardo otro nodo.
+    * */
+    private Optional<IdempotencyRecord> findIdempotencyRecord(String clientId, String idempotencyKey) {
+        return transactionTemplate.execute(status -> idempotencyKeyRepository.find(clientId, idempotencyKey));
+    }
+
+    private Purchase getSaved(IdempotencyRecord guardada, String idempotencyKey, String fingerprint) {
+        if (!guardada.matches(fingerprint)) {
+            throw new IdempotencyKeyReusedException(idempotencyKey);
+        }
+        return transactionTemplate.execute(status -> purchaseRepository.getById(guardada.getPurchaseId())).orElseThrow();
+    }
+
+    /*
+    * Huella de la compra pedida: SHA-256 de sus campos (sin el id, que asigna la BD). Dos reintentos
+    * del mismo ticket tienen la misma huella.
+    * */
+    private static String fingerprint(Purchase purchase) {
+        StringBuilder campos = new StringBuilder()
+                .append(purchase.getClientId()).append('|')
+                .append(purchase.getDate()).append('|')
+                .append(purchase.getPaymentMethod()).append('|')
+                .append(purchase.getComment()).append('|')
+                .append(purchase.getState());
+        for (PurchaseItem item : purchase.getItems()) {
+            campos.append('|').append(item.getProductId())
+                    .append(',').append(item.getQuantity())
+                    .append(',').append(item.getTotal())
+                    .append(',').append(item.isActive());
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(campos.toString().getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // Toda JVM debe incluir SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+    * Devuelve la compra guardada por el otro intento, o null si fallo.
+    * */
+    private IdempotencyRecord await(CompletableFuture<IdempotencyRecord> anterior, String idempotencyKey) {
+        try {
+            return anterior.get(idempotencyWait, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new PurchaseInProgressException(idempotencyKey);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PurchaseInProgressException(idempotencyKey);
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /*
+    * Guarda un lote de tickets en una sola transaccion.
+    *
+    * Los tickets invalidos se reportan sin enviarse a la BD. Si el lote falla en la BD (por ejemplo
+    * un cliente o producto inexistente) se revierte completo y los tickets validos se guardan uno
+    * por uno, asi un solo ticket con error no impide guardar el resto. Por eso las transacciones
+    * se abren con transactionTemplate y no con @Transactional.
+    * */
+    public PurchaseBatchResult saveAll(List<Purchase> purchases) {
+        PurchaseResult[] results = new PurchaseResult[purchases.size()];
+        List<Integer> indices = new ArrayList<>(purchases.size());
+        List<Purchase> validas = new ArrayList<>(purchases.size());
+
+        for (int i = 0; i < purchases.size(); i++) {
+            String error = validate(purchases.get(i));
+            if (error == null) {
+                indices.add(i);
+                validas.add(purchases.get(i));
+            } else {
+                results[i] = PurchaseResult.failed(i, error);
+            }
+        }
+
+        try {
+            List<Purchase> guardadas = transactionTemplate.execute(status -> {
+                productRepository.decrementStock(validas.stream()
+                        .flatMap(purchase -> purchase.getItems().stream())
+                        .collect(Collectors.toList()));
+                return purchaseRepository.saveAll(validas);
+            });
+            for (int j = 0; j < indices.size(); j++) {
+                results[indices.get(j)] = PurchaseResult.saved(indices.get(j), guardadas.get(j).getPurchaseId());
+            }
+        } catch (DataAccessException | InsufficientStockException | ProductNotFoundException e) {
+            for (int j = 0; j < indices.size(); j++) {
+                results[indices.get(j)] = saveOne(indices.get(j), validas.get(j));
+            }
+        }
+        return new PurchaseBatchResult(Arrays.asList(results));
+    }
+
+    private PurchaseResult saveOne(int index, Purchase purchase) {
+        try {
+            Purchase guardada = transactionTemplate.execute(status -> {
+                productRepository.decrementStock(purchase.getItems());
+                return purchaseRepository.save(purchase);
+            });
+            return PurchaseResult.saved(index, guardada.getPurchaseId());
+        } catch (DataAccessException e) {
+            return PurchaseResult.failed(index, e.getMostSpecificCause().getMessage());
+        } catch (InsufficientStockException | ProductNotFoundException e) {
+            return PurchaseResult.failed(index, e.getMessage());
+        }
+    }
+
+    private void requireValid(Purchase purchase) {
+        String error = validate(purchase);
+        if (error != null) {
+            throw new InvalidPurchaseException(error);
+        }
+    }
+
+    private String validate(Purchase purchase) {
+        if (purchase == null) {
+            return "Purchase is required";
+        }
+        if (purchase.getClientId() == null || purchase.getClientId().isEmpty()) {
+            return "clientId is required";
+        }
+        if (purchase.getItems() == null || purchase.getItems().isEmpty()) {
+            return "At least one item is required";
+        }
+        for (PurchaseItem item : purchase.getItems()) {
+            if (item.getProductId() <= 0 || item.getQuantity() <= 0) {
+                return "Every item needs a productId and a positive quantity";
+            }
+        }
+        return null;
+    }
 }
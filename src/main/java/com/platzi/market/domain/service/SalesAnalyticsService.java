@@ -0,0 +1,53 @@
+package com.platzi.market.domain.service;
+
+import com.platzi.market.domain.dto.CategorySales;
+import com.platzi.market.domain.dto.PaymentMethodSales;
+import com.platzi.market.domain.dto.ProductSales;
+import com.platzi.market.domain.repository.SalesAnalyticsRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Service
+public class SalesAnalyticsService {
+
+    // Dias que se consideran cuando no se indica el rango
+    private static final int DEFAULT_DAYS = 30;
+
+    private static final int MAX_TOP_PRODUCTS = 100;
+
+    @Autowired
+    private SalesAnalyticsRepository salesAnalyticsRepository;
+
+    public boolean isReady() {
+        return salesAnalyticsRepository.isReady();
+    }
+
+    public List<ProductSales> getTopProducts(LocalDate from, LocalDate to, int limit) {
+        LocalDate hasta = to(to);
+        return salesAnalyticsRepository.getTopProducts(from(from, hasta), hasta, Math.min(limit, MAX_TOP_PRODUCTS));
+    }
+
+    public List<CategorySales> getSalesByCategory(LocalDate from, LocalDate to) {
+        LocalDate hasta = to(to);
+        return salesAnalyticsRepository.getSalesByCategory(from(from, hasta), hasta);
+    }
+
+    public List<PaymentMethodSales> getPaymentMethodMix(LocalDate from, LocalDate to) {
+        LocalDate hasta = to(to);
+        return salesAnalyticsRepository.getPaymentMethodMix(from(from, hasta), hasta);
+    }
+
+    /*
+    * Sin rango se consideran los ultimos 30 dias.
+    * */
+    private static LocalDate to(LocalDate to) {
+        return to != null ? to : LocalDate.now();
+    }
+
+    private static LocalDate from(LocalDate from, LocalDate to) {
+        return from != null ? from : to.minusDays(DEFAULT_DAYS - 1);
+    }
+}
@@ -0,0 +1,87 @@
+package com.platzi.market.persistence;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.platzi.market.domain.dto.IdempotencyRecord;
+import com.platzi.market.domain.repository.IdempotencyKeyRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/*
+* Claves de idempotencia en dos niveles:
+*
+* inFlight   Caffeine acotada por tamaño con expiracion, (cliente, clave) => futuro con la compra. Los
+*            reintentos que llegan a este nodo mientras la compra se guarda esperan el futuro, y los
+*            que llegan despues lo encuentran completo sin ir a la BD.
+* BD         tabla compras_idempotencia, compartida por los nodos y por reinicios. El insert se hace
+*            con JdbcTemplate para que una clave repetida falle en ese momento (DuplicateKeyException)
+*            y no al confirmar la transaccion. La entidad CompraIdempotencia solo describe la tabla.
+*
+* La llave es el cliente y la clave: la clave de una terminal nunca devuelve la compra de otro cliente.
+*
+* Si una clave sale de la memoria antes de tiempo (por tamaño) la tabla sigue evitando el duplicado.
+* */
+@Repository
+public class CompraIdempotenciaRepository implements IdempotencyKeyRepository {
+
+    private static final String SELECT_SQL =
+            "SELECT id_compra, huella FROM compras_idempotencia WHERE id_cliente = ? AND clave = ?";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO compras_idempotencia (id_cliente, clave, id_compra, huella, fecha) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String DELETE_EXPIRED_SQL = "DELETE FROM compras_idempotencia WHERE fecha < ?";
+
+    private final Cache<List<String>, CompletableFuture<IdempotencyRecord>> inFlight;
+    private final Duration ttl;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public CompraIdempotenciaRepository(@Value("${platzi.purchases.idempotency.ttl-ms}") long ttlMillis,
+                                        @Value("${platzi.purchases.idempotency.memory-size}") long memorySize) {
+        this.ttl = Duration.ofMillis(ttlMillis);
+        this.inFlight = Caffeine.newBuilder()
+                .maximumSize(memorySize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<IdempotencyRecord> putIfAbsent(String clientId, String key, CompletableFuture<IdempotencyRecord> attempt) {
+        return inFlight.asMap().putIfAbsent(List.of(clientId, key), attempt);
+    }
+
+    @Override
+    public void remove(String clientId, String key, CompletableFuture<IdempotencyRecord> attempt) {
+        inFlight.asMap().remove(List.of(clientId, key), attempt);
+    }
+
+    @Override
+    public Optional<IdempotencyRecord> find(String clientId, String key) {
+        return jdbcTemplate.query(SELECT_SQL, (rs, rowNum) -> new IdempotencyRecord(rs.getInt("id_compra"), rs.getString("huella")),
+                clientId, key).stream().findFirst();
+    }
+
+    @Override
+    public void save(String clientId, String key, IdempotencyRecord record) {
+        jdbcTemplate.update(INSERT_SQL, clientId, key, record.getPurchaseId(), record.getFingerprint(),
+                Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${platzi.purchases.idempotency.cleanup-interval-ms}")
+    public int deleteExpired() {
+        return jdbcTemplate.update(DELETE_EXPIRED_SQL, Timestamp.valueOf(LocalDateTime.now().minus(ttl)));
+    }
+}
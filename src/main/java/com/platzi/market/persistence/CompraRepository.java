@@ -1,28 +1,59 @@
 package com.platzi.market.persistence;
 
 import com.platzi.market.domain.Purchase;
+import com.platzi.market.domain.event.PurchaseSavedEvent;
 import com.platzi.market.domain.repository.PurchaseRepository;
 import com.platzi.market.persistence.crud.CompraCrudRepository;
 import com.platzi.market.persistence.entity.Compra;
 import com.platzi.market.persistence.mapper.PurchaseMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Repository
 public class CompraRepository implements PurchaseRepository {
 
+    // Compras que se convierten juntas al recorrer el cursor, coincide con el @BatchSize de Compra.productos
+    private static final int STREAM_CHUNK_SIZE = 100;
+
+    // Compras que se envian a la BD antes de limpiar el contexto de persistencia, coincide con hibernate.jdbc.batch_size
+    private static final int INSERT_CHUNK_SIZE = 50;
+
     @Autowired
     private CompraCrudRepository compraCrudRepository;
 
     @Autowired
     private PurchaseMapper mapper;
 
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /*
+    * Totales por cliente y por dia, se actualizan en la misma transaccion que cada compra.
+    * */
+    @Autowired
+    private CompraResumenRepository compraResumenRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @Override
     public List<Purchase> getAll() {
-        return mapper.toPurchases((List<Compra>) compraCrudRepository.findAll());
+        return mapper.toPurchases(compraCrudRepository.findAllWithProductos());
+    }
+
+    @Override
+    public Optional<Purchase> getById(int purchaseId) {
+        return compraCrudRepository.findWithProductosById(purchaseId).map(compra -> mapper.toPurchase(compra));
     }
 
     @Override
@@ -31,15 +62,91 @@ public class CompraRepository implements PurchaseRepository {
                 .map(compras -> mapper.toPurchases(compras));
     }
 
+    /*
+    * Recorre las compras del rango de fechas con un cursor entregando cada una al consumer.
+    *
+    * Las compras se agrupan en bloques para que al convertir la primera, el @BatchSize de
+    * Compra.productos cargue los items de todo el bloque en una sola consulta. Despues de cada
+    * bloque se limpia el contexto de persistencia, asi la memoria no depende del numero de compras.
+    * Debe llamarse dentro de una transaccion.
+    * */
+    @Override
+    public void streamByDate(LocalDateTime from, LocalDateTime to, Consumer<Purchase> consumer) {
+        List<Compra> bloque = new ArrayList<>(STREAM_CHUNK_SIZE);
+
+        try (Stream<Compra> compras = compraCrudRepository.streamByFecha(from, to)) {
+            compras.forEach(compra -> {
+                bloque.add(compra);
+                if (bloque.size() == STREAM_CHUNK_SIZE) {
+                    writeChunk(bloque, consumer);
+                }
+            });
+        }
+        writeChunk(bloque, consumer);
+    }
+
+    private void writeChunk(List<Compra> bloque, Consumer<Purchase> consumer) {
+        bloque.forEach(compra -> consumer.accept(mapper.toPurchase(compra)));
+        bloque.clear();
+        entityManager.clear();
+    }
+
     @Override
     public Purchase save(Purchase purchase) {
+        Purchase guardada = mapper.toPurchase(compraCrudRepository.save(toNuevaCompra(purchase)));
+        compraResumenRepository.add(List.of(purchase));
+        eventPublisher.publishEvent(new PurchaseSavedEvent(List.of(guardada)));
+        return guardada;
+    }
+
+    /*
+    * Guarda todas las compras en la transaccion actual.
+    *
+    * Los inserts de compras y compras_productos se agrupan en lotes JDBC. Cada INSERT_CHUNK_SIZE
+    * compras se envian a la BD y se limpia el contexto de persistencia para que la memoria no
+    * crezca con el tamaño del lote. Los totales de clientes_resumen y ventas_diarias se suman una vez
+    * por lote. Debe llamarse dentro de una transaccion.
+    * */
+    @Override
+    public List<Purchase> saveAll(List<Purchase> purchases) {
+        List<Purchase> guardadas = new ArrayList<>(purchases.size());
+        List<Compra> bloque = new ArrayList<>(INSERT_CHUNK_SIZE);
+
+        for (Purchase purchase : purchases) {
+            Compra compra = toNuevaCompra(purchase);
+            entityManager.persist(compra);
+            bloque.add(compra);
+
+            if (bloque.size() == INSERT_CHUNK_SIZE) {
+                flushChunk(bloque, guardadas);
+            }
+        }
+        flushChunk(bloque, guardadas);
+        compraResumenRepository.add(purchases);
+        eventPublisher.publishEvent(new PurchaseSavedEvent(guardadas));
+        return guardadas;
+    }
+
+    private void flushChunk(List<Compra> bloque, List<Purchase> guardadas) {
+        entityManager.flush();
+        bloque.forEach(compra -> guardadas.add(mapper.toPurchase(compra)));
+        bloque.clear();
+        entityManager.clear();
+    }
+
+    private Compra toNuevaCompra(Purchase purchase) {
         Compra compra = mapper.toCompra(purchase);
         /*
+        * El id lo asigna la secuencia, un id 0 (valor por defecto de purchaseId) haria que
+        * se busque la compra en la BD antes de insertarla.
+        * */
+        compra.setIdCompra(null);
+        /*
         * Por cada item de la lista de compra, se les va a asignar la compra a la que
         * corresponden. De esta manera al guardar la compra se guardaran tambien los items
         * asociados a esta.
         * */
         compra.getProductos().forEach(producto -> producto.setCompra(compra));
-        return mapper.toPurchase(compraCrudRepository.save(compra));
+        return compra;
     }
 }
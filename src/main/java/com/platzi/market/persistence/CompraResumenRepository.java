@@ -0,0 +1,170 @@
+package com.platzi.market.persistence;
+
+import com.platzi.market.domain.Purchase;
+import com.platzi.market.domain.PurchaseItem;
+import com.platzi.market.domain.dto.ClientSummary;
+import com.platzi.market.domain.dto.DailySales;
+import com.platzi.market.domain.repository.PurchaseSummaryRepository;
+import com.platzi.market.persistence.crud.ClienteResumenCrudRepository;
+import com.platzi.market.persistence.crud.VentaDiariaCrudRepository;
+import com.platzi.market.persistence.mapper.PurchaseSummaryMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+* Mantiene y consulta las tablas clientes_resumen y ventas_diarias (ver db/compras_resumen.sql).
+*
+* Los totales se suman en la BD (total = total + ?), nunca se leen para despues escribirlos, asi dos
+* compras concurrentes del mismo cliente o del mismo dia no se pisan. Como no todas las BD soportan
+* ON CONFLICT ... DO UPDATE (H2 en modo PostgreSQL no), primero se asegura la fila con
+* INSERT ... ON CONFLICT DO NOTHING y despues se actualiza.
+*
+* Las llaves se procesan en orden para que dos lotes que tocan las mismas filas las bloqueen en
+* el mismo orden y no se produzca un deadlock.
+*
+* Todas las compras del dia suman en ventas_diarias y una sola fila por dia haria que esperen unas
+* por otras hasta el commit. Cada dia tiene platzi.purchases.summary.daily-slots filas (particion),
+* cada llamada a add escribe en una al azar y getDailySales suma las del dia. La fila de cada
+* cliente sigue siendo una sola: solo la comparten compras del mismo cliente.
+* */
+@Repository
+public class CompraResumenRepository implements PurchaseSummaryRepository {
+
+    private static final String INSERT_CLIENTE_SQL =
+            "INSERT INTO clientes_resumen (id_cliente, total, cantidad_compras, cantidad_productos, ultima_compra) " +
+            "VALUES (?, 0, 0, 0, ?) ON CONFLICT DO NOTHING";
+
+    private static final String UPDATE_CLIENTE_SQL =
+            "UPDATE clientes_resumen SET total = total + ?, cantidad_compras = cantidad_compras + ?, " +
+            "cantidad_productos = cantidad_productos + ?, ultima_compra = GREATEST(ultima_compra, ?) " +
+            "WHERE id_cliente = ?";
+
+    private static final String INSERT_VENTA_SQL =
+            "INSERT INTO ventas_diarias (fecha, particion, total, cantidad_compras, cantidad_productos) " +
+            "VALUES (?, ?, 0, 0, 0) ON CONFLICT DO NOTHING";
+
+    private static final String UPDATE_VENTA_SQL =
+            "UPDATE ventas_diarias SET total = total + ?, cantidad_compras = cantidad_compras + ?, " +
+            "cantidad_productos = cantidad_productos + ? WHERE fecha = ? AND particion = ?";
+
+    @Autowired
+    private ClienteResumenCrudRepository clienteResumenCrudRepository;
+
+    @Autowired
+    private VentaDiariaCrudRepository ventaDiariaCrudRepository;
+
+    @Autowired
+    private PurchaseSummaryMapper mapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${platzi.purchases.summary.daily-slots}")
+    private int dailySlots;
+
+    @Override
+    public Optional<ClientSummary> getClientSummary(String clientId) {
+        return clienteResumenCrudRepository.findById(clientId).map(resumen -> mapper.toClientSummary(resumen));
+    }
+
+    @Override
+    public List<DailySales> getDailySales(LocalDate from, LocalDate to) {
+        Map<LocalDate, DailySales> porDia = new LinkedHashMap<>();
+        for (DailySales venta : mapper.toDailySales(ventaDiariaCrudRepository.findByIdFechaBetweenOrderByIdFechaAsc(from, to))) {
+            porDia.merge(venta.getDate(), venta, (dia, particion) -> {
+                dia.setTotal(dia.getTotal() + particion.getTotal());
+                dia.setPurchases(dia.getPurchases() + particion.getPurchases());
+                dia.setItems(dia.getItems() + particion.getItems());
+                return dia;
+            });
+        }
+        return new ArrayList<>(porDia.values());
+    }
+
+    /*
+    * Suma las compras a los totales de sus clientes y dias. Las compras de un mismo cliente o dia se
+    * agrupan antes, un lote de N compras hace a lo mucho 4 llamadas (lotes JDBC) a la BD.
+    * Debe llamarse dentro de la transaccion que guarda las compras.
+    * */
+    public void add(List<Purchase> purchases) {
+        Map<String, Totales> porCliente = new TreeMap<>();
+        Map<LocalDate, Totales> porDia = new TreeMap<>();
+
+        for (Purchase purchase : purchases) {
+            Totales compra = Totales.of(purchase);
+            if (purchase.getClientId() != null) {
+                porCliente.computeIfAbsent(purchase.getClientId(), key -> new Totales()).add(compra);
+            }
+            if (purchase.getDate() != null) {
+                porDia.computeIfAbsent(purchase.getDate().toLocalDate(), key -> new Totales()).add(compra);
+            }
+        }
+
+        if (!porCliente.isEmpty()) {
+            List<Object[]> inserts = new ArrayList<>(porCliente.size());
+            List<Object[]> updates = new ArrayList<>(porCliente.size());
+            porCliente.forEach((idCliente, totales) -> {
+                Timestamp ultima = totales.ultima != null ? Timestamp.valueOf(totales.ultima) : null;
+                inserts.add(new Object[]{idCliente, ultima});
+                updates.add(new Object[]{totales.total, totales.compras, totales.productos, ultima, idCliente});
+            });
+            jdbcTemplate.batchUpdate(INSERT_CLIENTE_SQL, inserts);
+            jdbcTemplate.batchUpdate(UPDATE_CLIENTE_SQL, updates);
+        }
+
+        if (!porDia.isEmpty()) {
+            int particion = ThreadLocalRandom.current().nextInt(dailySlots);
+            List<Object[]> inserts = new ArrayList<>(porDia.size());
+            List<Object[]> updates = new ArrayList<>(porDia.size());
+            porDia.forEach((fecha, totales) -> {
+                inserts.add(new Object[]{Date.valueOf(fecha), particion});
+                updates.add(new Object[]{totales.total, totales.compras, totales.productos, Date.valueOf(fecha), particion});
+            });
+            jdbcTemplate.batchUpdate(INSERT_VENTA_SQL, inserts);
+            jdbcTemplate.batchUpdate(UPDATE_VENTA_SQL, updates);
+        }
+    }
+
+    private static final class Totales {
+        private double total;
+        private int compras;
+        private int productos;
+        private LocalDateTime ultima;
+
+        private static Totales of(Purchase purchase) {
+            Totales totales = new Totales();
+            totales.compras = 1;
+            totales.ultima = purchase.getDate();
+            if (purchase.getItems() != null) {
+                for (PurchaseItem item : purchase.getItems()) {
+                    totales.total += item.getTotal();
+                    totales.productos += item.getQuantity();
+                }
+            }
+            return totales;
+        }
+
+        private void add(Totales otro) {
+            total += otro.total;
+            compras += otro.compras;
+            productos += otro.productos;
+            if (ultima == null || (otro.ultima != null && otro.ultima.isAfter(ultima))) {
+                ultima = otro.ultima;
+            }
+        }
+    }
+}
@@ -1,15 +1,41 @@
 package com.platzi.market.persistence;
 
 import com.platzi.market.domain.Product;
+import com.platzi.market.domain.PurchaseItem;
+import com.platzi.market.domain.event.ProductChangedEvent;
+import com.platzi.market.domain.exception.InsufficientStockException;
+import com.platzi.market.domain.exception.ProductNotFoundException;
 import com.platzi.market.domain.repository.ProductRepository;
+import com.platzi.market.persistence.cache.SecondLevelCacheLock;
 import com.platzi.market.persistence.crud.ProductoCrudRepository;
 import com.platzi.market.persistence.entity.Producto;
 import com.platzi.market.persistence.mapper.ProductMapper;
+import com.platzi.market.persistence.routing.PrimaryReads;
+import com.platzi.market.persistence.stock.LowStockIndex;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static com.platzi.market.persistence.cache.ProductCacheListener.PRODUCTS;
+import static com.platzi.market.persistence.cache.ProductCacheListener.PRODUCTS_BY_CATEGORY;
 
 /*
 * @Repository: indica que la clase sera la encarga de interactuar con la base de datos.
@@ -20,6 +46,19 @@ import java.util.Optional;
 @Repository
 public class ProductoRepository implements ProductRepository {
 
+    /*
+    * El descuento se hace en la BD y solo si hay stock suficiente, asi dos compras concurrentes
+    * nunca leen el mismo stock para despues sobreescribirse (lost update).
+    * */
+    private static final String DECREMENT_STOCK_SQL =
+            "UPDATE productos SET cantidad_stock = cantidad_stock - ? WHERE id_producto = ? AND cantidad_stock >= ?";
+
+    private static final String EXISTING_SQL =
+            "SELECT id_producto FROM productos WHERE id_producto IN (:ids)";
+
+    private static final String STOCK_SQL =
+            "SELECT id_producto, id_categoria, cantidad_stock FROM productos WHERE id_producto IN (:ids)";
+
     /*
     * @Autowired indica la inyeccion de dependencias, en este caso el atributo productoCrudRepository
     * y mapper deben tener esta anotacion ya que sin ella, unicamente se estan instanciando y tienen
@@ -37,54 +76,112 @@ public class ProductoRepository implements ProductRepository {
     @Autowired
     private ProductMapper mapper;
 
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /*
+    * Publica un ProductChangedEvent por cada escritura, con el se invalidan las caches.
+    * */
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    /*
+    * Version de los ProductChangedEvent. Se toma con la fila del producto ya bloqueada (despues del
+    * UPDATE o del flush), asi dos cambios del mismo producto reciben versiones en el orden de sus
+    * commits aunque los eventos se entreguen en otro orden.
+    * */
+    private final AtomicLong versions = new AtomicLong();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    /*
+    * Responde getScarseProducts desde memoria cuando el umbral esta dentro de lo que sigue.
+    * */
+    @Autowired
+    private LowStockIndex lowStockIndex;
+
+    /*
+    * El UPDATE de stock no pasa por Hibernate, se bloquean los productos en la cache de segundo nivel.
+    * */
+    @Autowired
+    private SecondLevelCacheLock secondLevelCacheLock;
+
     /*
     * Sobreescribe el metodo de ProductRepository.
     *
     * Obtener todos los productos.
+    *
+    * getAll, getById y getByCategory leen de la BD principal (PrimaryReads): sus resultados se
+    * guardan en cache o se entregan con el ETag de CatalogVersionTracker, que ya cuenta el cambio.
     * */
     @Override
     public List<Product> getAll() {
         /*
-         * Primero recuperamos de la BD para despues convertir los objetos.
-         * Usar el metodo finAll() de CrudRepository mediante ProductoCrudRepository.
-         * */
-        List<Producto> productos = (List<Producto>) productoCrudRepository.findAll();
-        /*
-         * Para retornar una lista de objetos de dominio Product se debe usar mapper para
-         * convertir la lista de entidades tipo Producto a la de objetos de la dominio Product.
-         *
-         * Estos metodos estan definidos en el mapper. Lo que hacen es convertir la lista de
-         * Producto y convertirla en la lista de Product.
+         * La consulta construye directamente los objetos de dominio Product (ver PRODUCT_PROJECTION),
+         * no hace falta recuperar las entidades Producto y convertirlas con el mapper.
          * */
-        return mapper.toProducts(productos);
+        return PrimaryReads.get(productoCrudRepository::findAllProducts);
+    }
+
+    /*
+    * Obtener una pagina de productos cuyo id sea mayor a afterProductId.
+    * */
+    @Override
+    public List<Product> getPage(int afterProductId, int limit) {
+        return productoCrudRepository.findProductPage(afterProductId, PageRequest.of(0, limit));
+    }
+
+    /*
+    * Recorre todos los productos con un cursor entregando cada uno al consumer.
+    *
+    * Cada entidad se separa (detach) del contexto de persistencia despues de convertirla, asi la
+    * memoria usada no crece con el tamaño del catalogo. Debe llamarse dentro de una transaccion.
+    * */
+    @Override
+    public void streamAll(Consumer<Product> consumer) {
+        try (Stream<Producto> productos = productoCrudRepository.streamAll()) {
+            productos.forEach(producto -> {
+                consumer.accept(mapper.toProduct(producto));
+                entityManager.detach(producto);
+            });
+        }
     }
 
     /*
     * Obtener un Producto por su id.
+    *
+    * @Cacheable guarda el resultado en la cache "products" usando el id y su version como llave, las
+    * siguientes llamadas con el mismo id no llegan a la BD hasta que el producto cambia. La version se
+    * lee antes de consultar la BD, un resultado leido antes de un cambio nunca queda con la version
+    * posterior (ver CatalogVersionTracker). Los productos inexistentes no se guardan.
     * */
     @Override
+    @Cacheable(value = PRODUCTS, key = "@catalogVersionTracker.productKey(#productId)", unless = "#result == null")
     public Optional<Product> getById(int productId) {
         /*
          * Usar el metodo finById() de CrudRepository mediante ProductoCrudRepository.
          * */
-        return productoCrudRepository.findById(productId).map(producto -> mapper.toProduct(producto));
+        return PrimaryReads.get(() -> productoCrudRepository.findById(productId)).map(producto -> mapper.toProduct(producto));
     }
 
     /*
-    * Obtener productos por una categoria
+    * Obtener productos por una categoria, la lista se guarda en la cache "productsByCategory" con la
+    * version de la categoria en la llave, igual que getById.
     * */
     @Override
+    @Cacheable(value = PRODUCTS_BY_CATEGORY, key = "@catalogVersionTracker.categoryKey(#categoryId)")
     public Optional<List<Product>> getByCategory(int categoryId) {
-        List<Producto> productos = productoCrudRepository.findByIdCategoriaOrderByNombreAsc(categoryId);
         /*
-         * Para retornar una lista de objetos de tipo dominio Product, se debe usar mapper para
-         * convertir la lista de entidad tipo Producto a una lista de tipo dominio Product,
-         * adicionalmente usar el metodo estatico of de la clase Optional para convertir la lista
-         * normal en una lista tipo Optional.
+         * Usar el metodo estatico of de la clase Optional para convertir la lista normal en una
+         * lista tipo Optional. Los Product llegan ya construidos por la consulta.
          *
          * El metodo of permite convertir cualquier objeto en un Optional.
          * */
-        return Optional.of(mapper.toProducts(productos));
+        return Optional.of(PrimaryReads.get(() -> productoCrudRepository.findProductsByIdCategoria(categoryId)));
     }
 
     /*
@@ -92,6 +189,9 @@ public class ProductoRepository implements ProductRepository {
     * */
     @Override
     public Optional<List<Product>> getScarseProducts(int quantity) {
+        if (lowStockIndex.covers(quantity)) {
+            return Optional.of(lowStockIndex.getBelow(quantity));
+        }
         Optional<List<Producto>> productos = productoCrudRepository.findByCantidadStockLessThanAndEstado(quantity, true);
         /*
         * Como no se tiene un mapeador para convertir la lista Optional, se usa map().
@@ -103,12 +203,27 @@ public class ProductoRepository implements ProductRepository {
 
     /*
     * Guadar un Producto y lo retorna.
+    *
+    * Antes de guardar se obtiene la categoria y el estado actuales del producto (si ya existe) para
+    * que el evento permita invalidar tambien la lista de la categoria anterior y ajustar los conteos.
+    * Se copian antes de save(): la entidad cargada es la misma que save() modifica.
     * */
     @Override
     public Product save(Product product) {
+        Optional<Producto> anterior = productoCrudRepository.findById(product.getProductId());
+        Optional<Integer> categoriaAnterior = anterior.map(Producto::getIdCategoria);
+        boolean activoAnterior = anterior.map(Producto::getEstado).orElse(false);
+
         // Se hace la converion de un Product a un Producto, ya que es lo que espera el metodo save()
         Producto producto = mapper.toProducto(product);
-        return mapper.toProduct(productoCrudRepository.save(producto));
+        Product saved = mapper.toProduct(productoCrudRepository.save(producto));
+        entityManager.flush();
+
+        long version = versions.incrementAndGet();
+        eventPublisher.publishEvent(categoriaAnterior
+                .map(idCategoria -> ProductChangedEvent.updated(saved, idCategoria, activoAnterior, version))
+                .orElseGet(() -> ProductChangedEvent.created(saved, version)));
+        return saved;
     }
 
     /*
@@ -117,7 +232,71 @@ public class ProductoRepository implements ProductRepository {
     * */
     @Override
     public void delete(int idProduct) {
-        productoCrudRepository.deleteById(idProduct);
+        productoCrudRepository.findById(idProduct).ifPresent(producto -> {
+            productoCrudRepository.delete(producto);
+            entityManager.flush();
+            eventPublisher.publishEvent(ProductChangedEvent.deleted(idProduct, producto.getIdCategoria(),
+                    Boolean.TRUE.equals(producto.getEstado()), versions.incrementAndGet()));
+        });
+    }
+
+    /*
+    * Descuenta el stock de los items de una compra, debe llamarse dentro de la transaccion que
+    * guarda la compra.
+    *
+    * Los items del mismo producto se suman y se ordenan por id, asi todas las compras bloquean las
+    * filas de productos en el mismo orden y no se producen deadlocks. Los UPDATE se envian en un solo
+    * lote JDBC. Si algun producto no tiene stock suficiente se lanza InsufficientStockException, o
+    * ProductNotFoundException si no existe, y la transaccion se revierte completa.
+    *
+    * No se carga la entidad Producto: leer, modificar y guardar perderia descuentos concurrentes.
+    * */
+    @Override
+    public void decrementStock(List<PurchaseItem> items) {
+        TreeMap<Integer, Integer> cantidades = new TreeMap<>();
+        items.forEach(item -> cantidades.merge(item.getProductId(), item.getQuantity(), Integer::sum));
+
+        List<Object[]> parametros = new ArrayList<>(cantidades.size());
+        cantidades.forEach((idProducto, cantidad) -> parametros.add(new Object[]{cantidad, idProducto, cantidad}));
+
+        secondLevelCacheLock.lockProducts(cantidades.keySet());
+        int[] actualizados = jdbcTemplate.batchUpdate(DECREMENT_STOCK_SQL, parametros);
+        List<Integer> sinActualizar = new ArrayList<>();
+        for (int i = 0; i < actualizados.length; i++) {
+            if (actualizados[i] == 0) {
+                sinActualizar.add((Integer) parametros.get(i)[1]);
+            }
+        }
+        if (!sinActualizar.isEmpty()) {
+            throw stockFailure(sinActualizar);
+        }
+
+        publishStockChanges(cantidades);
+    }
+
+    /*
+    * Un UPDATE que no actualizo filas puede ser un producto sin stock o uno que no existe; solo en
+    * ese caso se consulta cuales existen.
+    * */
+    private RuntimeException stockFailure(List<Integer> sinActualizar) {
+        Set<Integer> existentes = new HashSet<>(namedParameterJdbcTemplate.queryForList(EXISTING_SQL,
+                new MapSqlParameterSource("ids", sinActualizar), Integer.class));
+        for (Integer idProducto : sinActualizar) {
+            if (!existentes.contains(idProducto)) {
+                return new ProductNotFoundException(idProducto);
+            }
+        }
+        return new InsufficientStockException(sinActualizar.get(0));
+    }
+
+    /*
+    * Publica el stock resultante para que las caches y demas componentes derivados se actualicen.
+    * */
+    private void publishStockChanges(Map<Integer, Integer> cantidades) {
+        namedParameterJdbcTemplate.query(STOCK_SQL, new MapSqlParameterSource("ids", cantidades.keySet()),
+                (rs, rowNum) -> ProductChangedEvent.stockChanged(rs.getInt("id_producto"), rs.getInt("id_categoria"),
+                        rs.getInt("cantidad_stock"), versions.incrementAndGet()))
+                .forEach(eventPublisher::publishEvent);
     }
 
 }
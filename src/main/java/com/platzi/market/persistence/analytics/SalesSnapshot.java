@@ -0,0 +1,623 @@
+package com.platzi.market.persistence.analytics;
+
+import com.platzi.market.domain.Product;
+import com.platzi.market.domain.Purchase;
+import com.platzi.market.domain.PurchaseItem;
+import com.platzi.market.domain.dto.CategorySales;
+import com.platzi.market.domain.dto.PaymentMethodSales;
+import com.platzi.market.domain.dto.ProductSales;
+import com.platzi.market.domain.event.ProductChangedEvent;
+import com.platzi.market.domain.event.PurchaseSavedEvent;
+import com.platzi.market.domain.repository.ProductRepository;
+import com.platzi.market.domain.repository.SalesAnalyticsRepository;
+import com.platzi.market.persistence.crud.CompraCrudRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/*
+* Foto en memoria, por columnas, de todos los items vendidos (compras_productos con su compra).
+*
+* Cada columna es un arreglo primitivo dividido en bloques de CHUNK_SIZE filas:
+*
+* product    idProducto
+* quantity   unidades vendidas
+* cents      total del item en centavos, la suma no acumula errores de redondeo
+* day        dia de la compra (LocalDate.toEpochDay)
+* category   idCategoria del producto al momento de la venta
+* flags      medio de pago (indice en paymentMethods) y FIRST_LINE en el primer item de cada compra,
+*            para contar compras sin guardar el idCompra
+*
+* Son 25 bytes por item, 100M items ocupan ~2.5 GB de heap; con platzi.analytics.enabled=false no
+* se construye.
+*
+* Las consultas agrupan con un arreglo indexado por id (producto, categoria o medio de pago) y se
+* reparten en un ForkJoinPool por rangos de bloques; cada tarea suma en sus propios arreglos y al
+* final se combinan. Los bloques guardan su dia minimo y maximo, los que no tocan el rango de fechas
+* no se recorren.
+*
+* Se construye al arrancar con un cursor y despues se le agregan las compras de cada
+* PurchaseSavedEvent. Un solo hilo escribe a la vez; las filas nuevas se publican al final de cada
+* escritura con rows (volatil), los lectores nunca ven una fila a medio escribir.
+*
+* Las compras que llegan mientras se construye se agregan al terminar si el cursor no las devolvio.
+* Los ids no siguen el orden de los commits (la secuencia reparte bloques por nodo e hilo), asi que
+* no basta con comparar contra el ultimo id leido: el cursor marca cada id que devuelve en loaded
+* (un bit por id, solo durante la construccion). Se guardan a lo mucho maxPending compras: si se llena o la
+* construccion falla se descartan y se vuelve a construir desde cero cada retry-ms, mientras tanto
+* isReady es false.
+*
+* Solo ve las compras guardadas en este nodo despues de construirse: con varios nodos las compras
+* de los demas aparecen hasta que este vuelve a arrancar.
+* */
+@Component
+public class SalesSnapshot implements SalesAnalyticsRepository {
+
+    private static final Logger log = LoggerFactory.getLogger(SalesSnapshot.class);
+
+    private static final int CHUNK_BITS = 16;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int FIRST_LINE = 0x80;
+    private static final int PAYMENT_MASK = 0x7f;
+    // Indices de medio de pago que caben en flags; los demas se cuentan como medio de pago null,
+    // que tiene reservado el indice 0
+    private static final int MAX_PAYMENT_METHODS = PAYMENT_MASK + 1;
+    private static final int NO_PAYMENT_METHOD = 0;
+
+    private static final int UNKNOWN_CATEGORY = 0;
+
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile long rows;
+    private volatile int maxProductId;
+    private volatile int maxCategoryId;
+    private volatile String[] paymentMethods = new String[]{null};
+
+    private volatile boolean ready;
+    // La ultima construccion fallo o descarto compras pendientes, retryBuild la repite
+    private volatile boolean failed;
+
+    // Solo los usa el hilo que escribe (metodos synchronized)
+    private long size;
+    private final Map<String, Integer> paymentIndex = new HashMap<>();
+    private int[] productCategories = new int[1024];
+    private List<Purchase> pending = new ArrayList<>();
+    private boolean pendingDropped;
+    private BitSet loaded = new BitSet();
+    private int lastLoaded;
+
+    private final ForkJoinPool pool;
+    private final boolean enabled;
+    private final int maxPending;
+
+    @Value("${platzi.analytics.retry-ms}")
+    private long retryInterval;
+
+    @Autowired
+    private CompraCrudRepository compraCrudRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    public SalesSnapshot(@Value("${platzi.analytics.enabled}") boolean enabled,
+                         @Value("${platzi.analytics.parallelism}") int parallelism,
+                         @Value("${platzi.analytics.max-pending}") int maxPending) {
+        this.enabled = enabled;
+        this.maxPending = maxPending;
+        paymentIndex.put(null, NO_PAYMENT_METHOD);
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    /*
+    * El cursor de streamSalesLines necesita una transaccion abierta, de solo lectura.
+    * */
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        if (!enabled) {
+            return;
+        }
+        failed = false;
+        try {
+            TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+            transactionTemplate.setReadOnly(true);
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<Object[]> lines = compraCrudRepository.streamSalesLines()) {
+                    lines.forEach(this::load);
+                }
+            });
+            finishBuild();
+        } catch (RuntimeException e) {
+            log.warn("Sales snapshot build failed, retrying in {} ms", retryInterval, e);
+            reset();
+            failed = true;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${platzi.analytics.retry-ms}", initialDelayString = "${platzi.analytics.retry-ms}")
+    public void retryBuild() {
+        if (failed) {
+            build();
+        }
+    }
+
+    /*
+    * Si la construccion falla las compras se dejan de guardar: la siguiente construccion las lee
+    * de la BD.
+    * */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onPurchaseSaved(PurchaseSavedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        if (!ready) {
+            if (failed || pendingDropped) {
+                return;
+            }
+            if (pending.size() + event.getPurchases().size() > maxPending) {
+                pending = new ArrayList<>();
+                pendingDropped = true;
+                return;
+            }
+            pending.addAll(event.getPurchases());
+            return;
+        }
+        event.getPurchases().forEach(this::append);
+        publish();
+    }
+
+    /*
+    * Categoria de cada producto para las compras nuevas. decrementStock publica STOCK_CHANGED antes
+    * de que se confirme la compra, asi los productos vendidos ya estan aqui al llegar la compra.
+    * */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onProductChanged(ProductChangedEvent event) {
+        if (event.getType() != ProductChangedEvent.Type.DELETED) {
+            setCategory(event.getProductId(), event.getCategoryId());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    public long size() {
+        return rows;
+    }
+
+    /*
+    * Productos con mas unidades vendidas en el rango, a igualdad de unidades el de mayor total.
+    * */
+    @Override
+    public List<ProductSales> getTopProducts(LocalDate from, LocalDate to, int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        long total = rows;
+        int products = maxProductId + 1;
+        Totals totals = scan(total, from, to, () -> new Totals(products, ByProduct.INSTANCE));
+
+        Comparator<Integer> ranking = Comparator.<Integer>comparingLong(id -> totals.quantity[id])
+                .thenComparingLong(id -> totals.cents[id])
+                .thenComparing(Comparator.<Integer>reverseOrder());
+        PriorityQueue<Integer> top = new PriorityQueue<>(limit + 1, ranking);
+        for (int productId = 0; productId < products; productId++) {
+            if (totals.quantity[productId] > 0 || totals.cents[productId] != 0) {
+                top.add(productId);
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+        }
+
+        List<ProductSales> sales = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            int productId = top.poll();
+            String name = productRepository.getById(productId).map(Product::getName).orElse(null);
+            sales.add(new ProductSales(productId, name, totals.quantity[productId], toAmount(totals.cents[productId])));
+        }
+        Collections.reverse(sales);
+        return sales;
+    }
+
+    /*
+    * Ordenado de mayor a menor total.
+    * */
+    @Override
+    public List<CategorySales> getSalesByCategory(LocalDate from, LocalDate to) {
+        long total = rows;
+        int categories = maxCategoryId + 1;
+        Totals totals = scan(total, from, to, () -> new Totals(categories, ByCategory.INSTANCE));
+
+        List<CategorySales> sales = new ArrayList<>();
+        for (int categoryId = 0; categoryId < categories; categoryId++) {
+            if (totals.quantity[categoryId] > 0 || totals.cents[categoryId] != 0) {
+                sales.add(new CategorySales(categoryId, totals.quantity[categoryId], toAmount(totals.cents[categoryId])));
+            }
+        }
+        sales.sort(Comparator.comparingDouble(CategorySales::getTotal).reversed());
+        return sales;
+    }
+
+    /*
+    * Ordenado de mayor a menor total; quantity cuenta compras, no items.
+    * */
+    @Override
+    public List<PaymentMethodSales> getPaymentMethodMix(LocalDate from, LocalDate to) {
+        long total = rows;
+        String[] methods = paymentMethods;
+        Totals totals = scan(total, from, to, () -> new Totals(methods.length, ByPaymentMethod.INSTANCE));
+
+        long sum = Arrays.stream(totals.cents).sum();
+        List<PaymentMethodSales> mix = new ArrayList<>();
+        for (int i = 0; i < methods.length; i++) {
+            if (totals.quantity[i] > 0) {
+                double share = sum != 0 ? (double) totals.cents[i] / sum : 0;
+                mix.add(new PaymentMethodSales(methods[i], totals.quantity[i], toAmount(totals.cents[i]), share));
+            }
+        }
+        mix.sort(Comparator.comparingDouble(PaymentMethodSales::getTotal).reversed());
+        return mix;
+    }
+
+    /*
+    * rows se lee antes que chunks: el escritor agrega los bloques antes de publicar las filas.
+    * */
+    private Totals scan(long total, LocalDate from, LocalDate to, Supplier<Totals> factory) {
+        Chunk[] current = chunks;
+        int count = (int) ((total + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+        int leaf = Math.max(1, count / (pool.getParallelism() * 2));
+        return pool.invoke(new ScanTask(current, total, 0, count, leaf, toDay(from, Integer.MIN_VALUE), toDay(to, Integer.MAX_VALUE), factory));
+    }
+
+    private void load(Object[] line) {
+        int purchaseId = (Integer) line[6];
+        LocalDateTime fecha = (LocalDateTime) line[3];
+        Integer categoryId = (Integer) line[4];
+        synchronized (this) {
+            if (categoryId != null) {
+                setCategory((Integer) line[0], categoryId);
+            }
+            if (fecha != null) {
+                appendLine((Integer) line[0], line[1] != null ? (Integer) line[1] : 0, toCents((Double) line[2]),
+                        (int) fecha.toLocalDate().toEpochDay(), categoryId != null ? categoryId : UNKNOWN_CATEGORY,
+                        paymentIndex((String) line[5]), purchaseId != lastLoaded);
+            }
+            loaded.set(purchaseId);
+            lastLoaded = purchaseId;
+        }
+    }
+
+    private synchronized void finishBuild() {
+        if (pendingDropped) {
+            throw new IllegalStateException("More than " + maxPending + " purchases arrived while the sales snapshot was loading");
+        }
+        for (Purchase purchase : pending) {
+            if (!loaded.get(purchase.getPurchaseId())) {
+                append(purchase);
+            }
+        }
+        pending = null;
+        loaded = null;
+        publish();
+        ready = true;
+    }
+
+    /*
+    * Descarta lo cargado por una construccion que no termino.
+    * */
+    private synchronized void reset() {
+        chunks = new Chunk[0];
+        size = 0;
+        publish();
+        maxProductId = 0;
+        maxCategoryId = 0;
+        paymentIndex.clear();
+        paymentIndex.put(null, NO_PAYMENT_METHOD);
+        paymentMethods = new String[]{null};
+        pending = new ArrayList<>();
+        pendingDropped = false;
+        loaded = new BitSet();
+        lastLoaded = 0;
+    }
+
+    /*
+    * Las compras sin fecha no entran en ningun rango, no se guardan.
+    * */
+    private void append(Purchase purchase) {
+        if (purchase.getDate() == null || purchase.getItems() == null) {
+            return;
+        }
+        int day = (int) purchase.getDate().toLocalDate().toEpochDay();
+        int payment = paymentIndex(purchase.getPaymentMethod());
+        boolean first = true;
+        for (PurchaseItem item : purchase.getItems()) {
+            appendLine(item.getProductId(), item.getQuantity(), toCents(item.getTotal()), day,
+                    categoryOf(item.getProductId()), payment, first);
+            first = false;
+        }
+    }
+
+    private void appendLine(int productId, int quantity, long cents, int day, int categoryId, int payment, boolean first) {
+        int chunkIndex = (int) (size >>> CHUNK_BITS);
+        int row = (int) (size & (CHUNK_SIZE - 1));
+        Chunk[] current = chunks;
+        if (chunkIndex == current.length) {
+            current = Arrays.copyOf(current, Math.max(16, current.length * 2));
+            current[chunkIndex] = new Chunk();
+            chunks = current;
+        } else if (current[chunkIndex] == null) {
+            current[chunkIndex] = new Chunk();
+        }
+
+        Chunk chunk = current[chunkIndex];
+        chunk.product[row] = productId;
+        chunk.quantity[row] = quantity;
+        chunk.cents[row] = cents;
+        chunk.day[row] = day;
+        chunk.category[row] = categoryId;
+        chunk.flags[row] = (byte) (payment | (first ? FIRST_LINE : 0));
+        chunk.minDay = Math.min(chunk.minDay, day);
+        chunk.maxDay = Math.max(chunk.maxDay, day);
+
+        if (productId > maxProductId) {
+            maxProductId = productId;
+        }
+        if (categoryId > maxCategoryId) {
+            maxCategoryId = categoryId;
+        }
+        size++;
+        if ((size & (CHUNK_SIZE - 1)) == 0) {
+            publish();
+        }
+    }
+
+    private void publish() {
+        rows = size;
+    }
+
+    private int paymentIndex(String paymentMethod) {
+        if (paymentMethod == null) {
+            return NO_PAYMENT_METHOD;
+        }
+        Integer index = paymentIndex.get(paymentMethod);
+        if (index != null) {
+            return index;
+        }
+        if (paymentIndex.size() == MAX_PAYMENT_METHODS) {
+            return NO_PAYMENT_METHOD;
+        }
+        int added = paymentIndex.size();
+        paymentIndex.put(paymentMethod, added);
+        String[] methods = Arrays.copyOf(paymentMethods, added + 1);
+        methods[added] = paymentMethod;
+        paymentMethods = methods;
+        return added;
+    }
+
+    private int categoryOf(int productId) {
+        int categoryId = productId < productCategories.length ? productCategories[productId] : UNKNOWN_CATEGORY;
+        if (categoryId == UNKNOWN_CATEGORY) {
+            categoryId = productRepository.getById(productId).map(Product::getCategoryId).orElse(UNKNOWN_CATEGORY);
+            setCategory(productId, categoryId);
+        }
+        return categoryId;
+    }
+
+    private synchronized void setCategory(int productId, int categoryId) {
+        if (productId < 0) {
+            return;
+        }
+        if (productId >= productCategories.length) {
+            productCategories = Arrays.copyOf(productCategories, Math.max(productId + 1, productCategories.length * 2));
+        }
+        productCategories[productId] = categoryId;
+    }
+
+    /*
+    * Sin fecha el rango queda abierto de ese lado.
+    * */
+    private static int toDay(LocalDate date, int unbounded) {
+        if (date == null) {
+            return unbounded;
+        }
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, date.toEpochDay()));
+    }
+
+    private static long toCents(Double amount) {
+        return amount != null ? Math.round(amount * 100) : 0;
+    }
+
+    private static double toAmount(long cents) {
+        return cents / 100.0;
+    }
+
+    private static final class Chunk {
+        private final int[] product = new int[CHUNK_SIZE];
+        private final int[] quantity = new int[CHUNK_SIZE];
+        private final long[] cents = new long[CHUNK_SIZE];
+        private final int[] day = new int[CHUNK_SIZE];
+        private final int[] category = new int[CHUNK_SIZE];
+        private final byte[] flags = new byte[CHUNK_SIZE];
+        // Solo se amplian y se escriben antes de publicar rows, un lector puede ver un rango mas
+        // amplio que el de las filas que recorre pero nunca menor
+        private int minDay = Integer.MAX_VALUE;
+        private int maxDay = Integer.MIN_VALUE;
+    }
+
+    /*
+    * Suma unidades (o compras) y centavos de un rango de filas de un bloque en los arreglos de una
+    * tarea, agrupando por la columna que corresponda. Un ciclo por clase para que cada uno quede
+    * compilado sobre sus propias columnas.
+    * */
+    private interface GroupBy {
+        void add(Chunk chunk, int rows, int fromDay, int toDay, long[] quantity, long[] cents);
+    }
+
+    private enum ByProduct implements GroupBy {
+        INSTANCE;
+
+        @Override
+        public void add(Chunk chunk, int rows, int fromDay, int toDay, long[] quantity, long[] cents) {
+            int[] product = chunk.product;
+            int[] units = chunk.quantity;
+            long[] amounts = chunk.cents;
+            int[] day = chunk.day;
+            for (int i = 0; i < rows; i++) {
+                int d = day[i];
+                if (d >= fromDay && d <= toDay) {
+                    int key = product[i];
+                    quantity[key] += units[i];
+                    cents[key] += amounts[i];
+                }
+            }
+        }
+    }
+
+    private enum ByCategory implements GroupBy {
+        INSTANCE;
+
+        @Override
+        public void add(Chunk chunk, int rows, int fromDay, int toDay, long[] quantity, long[] cents) {
+            int[] category = chunk.category;
+            int[] units = chunk.quantity;
+            long[] amounts = chunk.cents;
+            int[] day = chunk.day;
+            for (int i = 0; i < rows; i++) {
+                int d = day[i];
+                if (d >= fromDay && d <= toDay) {
+                    int key = category[i];
+                    quantity[key] += units[i];
+                    cents[key] += amounts[i];
+                }
+            }
+        }
+    }
+
+    private enum ByPaymentMethod implements GroupBy {
+        INSTANCE;
+
+        @Override
+        public void add(Chunk chunk, int rows, int fromDay, int toDay, long[] quantity, long[] cents) {
+            byte[] flags = chunk.flags;
+            long[] amounts = chunk.cents;
+            int[] day = chunk.day;
+            for (int i = 0; i < rows; i++) {
+                int d = day[i];
+                if (d >= fromDay && d <= toDay) {
+                    int flag = flags[i];
+                    int key = flag & PAYMENT_MASK;
+                    quantity[key] += (flag & FIRST_LINE) >>> 7;
+                    cents[key] += amounts[i];
+                }
+            }
+        }
+    }
+
+    private static final class Totals {
+        private final long[] quantity;
+        private final long[] cents;
+        private final GroupBy groupBy;
+
+        private Totals(int keys, GroupBy groupBy) {
+            this.quantity = new long[keys];
+            this.cents = new long[keys];
+            this.groupBy = groupBy;
+        }
+
+        private void merge(Totals other) {
+            for (int i = 0; i < quantity.length; i++) {
+                quantity[i] += other.quantity[i];
+                cents[i] += other.cents[i];
+            }
+        }
+    }
+
+    /*
+    * Divide los bloques [lo, hi) a la mitad hasta tener a lo mucho leaf bloques por tarea.
+    * */
+    private static final class ScanTask extends RecursiveTask<Totals> {
+        private final Chunk[] chunks;
+        private final long rows;
+        private final int lo;
+        private final int hi;
+        private final int leaf;
+        private final int fromDay;
+        private final int toDay;
+        private final Supplier<Totals> factory;
+
+        private ScanTask(Chunk[] chunks, long rows, int lo, int hi, int leaf, int fromDay, int toDay, Supplier<Totals> factory) {
+            this.chunks = chunks;
+            this.rows = rows;
+            this.lo = lo;
+            this.hi = hi;
+            this.leaf = leaf;
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+            this.factory = factory;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (hi - lo <= leaf) {
+                Totals totals = factory.get();
+                for (int i = lo; i < hi; i++) {
+                    scanChunk(i, totals);
+                }
+                return totals;
+            }
+            int mid = (lo + hi) >>> 1;
+            ScanTask left = new ScanTask(chunks, rows, lo, mid, leaf, fromDay, toDay, factory);
+            left.fork();
+            Totals right = new ScanTask(chunks, rows, mid, hi, leaf, fromDay, toDay, factory).compute();
+            Totals totals = left.join();
+            totals.merge(right);
+            return totals;
+        }
+
+        private void scanChunk(int index, Totals totals) {
+            Chunk chunk = chunks[index];
+            int count = (int) Math.min(CHUNK_SIZE, rows - ((long) index << CHUNK_BITS));
+            if (chunk == null || count <= 0 || chunk.maxDay < fromDay || chunk.minDay > toDay) {
+                return;
+            }
+            // Todo el bloque esta en el rango, el filtro por dia siempre se cumple
+            boolean inside = chunk.minDay >= fromDay && chunk.maxDay <= toDay;
+            totals.groupBy.add(chunk, count, inside ? Integer.MIN_VALUE : fromDay, inside ? Integer.MAX_VALUE : toDay,
+                    totals.quantity, totals.cents);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.platzi.market.persistence.cache;
+
+import com.platzi.market.domain.dto.CatalogVersion;
+import com.platzi.market.domain.event.ProductChangedEvent;
+import com.platzi.market.domain.repository.CatalogVersionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+* Contadores de version del catalogo completo, de cada categoria y de cada producto.
+*
+* Cada ProductChangedEvent (guardar, eliminar o descontar stock) incrementa la version del producto,
+* la de su categoria (y la anterior si cambio de categoria) y la global, despues del commit.
+*
+* El ETag incluye la hora de arranque (epoch), asi las versiones en memoria nunca repiten un ETag
+* entregado antes de reiniciar la aplicacion. Lo que no ha cambiado desde el arranque tiene la
+* version 0 y como fecha de modificacion la hora de arranque.
+*
+* La version se incrementa despues de invalidar las caches (@Order, ProductCacheListener va primero,
+* y SecondLevelCacheLock ya libero los productos al terminar la transaccion): quien ve la version nueva ya no encuentra el dato anterior
+* en cache, y ProductoRepository lo vuelve a leer de la BD principal.
+*
+* Las caches de ProductoRepository usan como llave el id con su version (productKey, categoryKey),
+* leida antes de consultar la BD. Una lectura que empezo antes del commit y guarda el dato anterior
+* despues de invalidar lo guarda con la version anterior: quien ya ve la version nueva no lo encuentra
+* y nunca recibe el dato viejo con el ETag nuevo.
+*
+* Los contadores son de cada nodo, solo cuentan los cambios hechos en el mismo nodo. Con varios
+* nodos un cambio hecho en otro no cambia el ETag de este y un cliente podria recibir 304 con un dato
+* viejo; platzi.catalog.version-window-ms > 0 agrega al ETag la ventana de tiempo actual, asi un
+* ETag dura a lo mucho ese tiempo. Con 0 (un solo nodo) no cambia hasta que cambia el catalogo.
+* */
+@Component
+public class CatalogVersionTracker implements CatalogVersionRepository {
+
+    private final long window;
+    private final long epoch = System.currentTimeMillis();
+    private final String epochTag = Long.toString(epoch, 36);
+    private final Stamp initial = new Stamp(0, epoch);
+
+    private final AtomicReference<Stamp> catalog = new AtomicReference<>(initial);
+    private final Map<Integer, Stamp> categories = new ConcurrentHashMap<>();
+    private final Map<Integer, Stamp> products = new ConcurrentHashMap<>();
+
+    public CatalogVersionTracker(@Value("${platzi.catalog.version-window-ms}") long window) {
+        this.window = window;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onProductChanged(ProductChangedEvent event) {
+        long now = System.currentTimeMillis();
+
+        products.merge(event.getProductId(), initial.next(now), (stamp, ignored) -> stamp.next(now));
+        categories.merge(event.getCategoryId(), initial.next(now), (stamp, ignored) -> stamp.next(now));
+        if (event.getPreviousCategoryId() != null && event.getPreviousCategoryId() != event.getCategoryId()) {
+            categories.merge(event.getPreviousCategoryId(), initial.next(now), (stamp, ignored) -> stamp.next(now));
+        }
+        catalog.updateAndGet(stamp -> stamp.next(now));
+    }
+
+    /*
+    * Llaves de las caches products y productsByCategory, ver ProductoRepository.
+    * */
+    public String productKey(int productId) {
+        return productId + "@" + products.getOrDefault(productId, initial).version;
+    }
+
+    public String categoryKey(int categoryId) {
+        return categoryId + "@" + categories.getOrDefault(categoryId, initial).version;
+    }
+
+    @Override
+    public CatalogVersion getCatalogVersion() {
+        return toVersion("c", 0, catalog.get());
+    }
+
+    @Override
+    public CatalogVersion getCategoryVersion(int categoryId) {
+        return toVersion("k", categoryId, categories.getOrDefault(categoryId, initial));
+    }
+
+    @Override
+    public CatalogVersion getProductVersion(int productId) {
+        return toVersion("p", productId, products.getOrDefault(productId, initial));
+    }
+
+    private CatalogVersion toVersion(String scope, int id, Stamp stamp) {
+        String eTag = scope + id + "-" + epochTag + "-" + stamp.version;
+        if (window <= 0) {
+            return new CatalogVersion("\"" + eTag + "\"", stamp.modified);
+        }
+        long start = System.currentTimeMillis() / window * window;
+        return new CatalogVersion("\"" + eTag + "-" + Long.toString(start, 36) + "\"", Math.max(stamp.modified, start));
+    }
+
+    private static final class Stamp {
+        private final long version;
+        private final long modified;
+
+        private Stamp(long version, long modified) {
+            this.version = version;
+            this.modified = modified;
+        }
+
+        private Stamp next(long now) {
+            return new Stamp(version + 1, Math.max(modified, now));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.platzi.market.persistence.cache;
+
+import com.platzi.market.domain.event.ProductChangedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/*
+* Invalida las entradas de cache de productos afectadas por un cambio.
+*
+* Las caches se llenan con @Cacheable en ProductoRepository, la llave es el id con su version de
+* CatalogVersionTracker. Solo se elimina el producto que cambio y las listas de su categoria (y de la
+* categoria anterior si se movio de categoria).
+*
+* La eliminacion solo libera memoria: lo que impide leer un dato anterior al cambio es que la
+* version se incrementa despues, y con ella la llave. Una lectura concurrente que guarde la fila
+* anterior despues de esta eliminacion la guarda con la llave vieja, que ya nadie consulta.
+*
+* @TransactionalEventListener  la invalidacion ocurre despues del commit.
+*                              fallbackExecution permite recibir eventos publicados sin transaccion.
+* @Order                       antes que CatalogVersionTracker incremente la version, asi se elimina
+*                              la llave de la version vigente hasta este cambio.
+* */
+@Component
+public class ProductCacheListener {
+
+    public static final String PRODUCTS = "products";
+    public static final String PRODUCTS_BY_CATEGORY = "productsByCategory";
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private CatalogVersionTracker versions;
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onProductChanged(ProductChangedEvent event) {
+        evict(PRODUCTS, versions.productKey(event.getProductId()));
+        evict(PRODUCTS_BY_CATEGORY, versions.categoryKey(event.getCategoryId()));
+
+        if (event.getPreviousCategoryId() != null && event.getPreviousCategoryId() != event.getCategoryId()) {
+            evict(PRODUCTS_BY_CATEGORY, versions.categoryKey(event.getPreviousCategoryId()));
+        }
+    }
+
+    private void evict(String cacheName, Object key) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache != null) {
+            cache.evict(key);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.platzi.market.persistence.cache;
+
+import com.platzi.market.persistence.entity.Producto;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/*
+* Bloquea en la cache de segundo nivel de Hibernate los productos cuyo stock se actualiza por JDBC.
+*
+* ProductoRepository.decrementStock cambia la tabla con JdbcTemplate y Hibernate no se entera. Borrar
+* la entrada despues del commit no basta: una lectura que cargo la fila anterior antes del commit la
+* puede guardar en cache despues de borrada.
+*
+* Se usa el mismo bloqueo (soft lock) que READ_WRITE pone al actualizar una entidad con Hibernate:
+* lockItem antes del UPDATE y unlockItem al terminar la transaccion (confirmada o revertida).
+* Mientras esta bloqueada la entrada no se lee de cache, y despues de desbloquearla Hibernate no
+* acepta guardar lo que lea una sesion abierta antes del desbloqueo.
+* */
+@Component
+public class SecondLevelCacheLock {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /*
+    * Debe llamarse dentro de la transaccion que hace el UPDATE y antes de ejecutarlo.
+    * */
+    public void lockProducts(Collection<Integer> productIds) {
+        SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        SessionFactoryImplementor factory = session.getFactory();
+        EntityPersister persister = factory.getMetamodel().entityPersister(Producto.class);
+        EntityDataAccess access = persister.getCacheAccessStrategy();
+        if (access == null) {
+            return;
+        }
+
+        List<Object> keys = new ArrayList<>(productIds.size());
+        List<SoftLock> locks = new ArrayList<>(productIds.size());
+        for (Integer productId : productIds) {
+            Object key = access.generateCacheKey(productId, persister, factory, session.getTenantIdentifier());
+            locks.add(access.lockItem(session, key, null));
+            keys.add(key);
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                for (int i = 0; i < keys.size(); i++) {
+                    access.unlockItem(session, keys.get(i), locks.get(i));
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,148 @@
+package com.platzi.market.persistence.catalog;
+
+import com.platzi.market.domain.dto.CategorySummary;
+import com.platzi.market.domain.event.ProductChangedEvent;
+import com.platzi.market.domain.repository.CategoryRepository;
+import com.platzi.market.persistence.crud.CategoriaCrudRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+* Foto inmutable de las categorias con sus conteos de productos, para /categories.
+*
+* Se carga al arrancar y cada cambio construye una foto nueva que reemplaza a la anterior en un solo
+* paso (copy-on-write): las lecturas no se bloquean ni ven una foto a medio actualizar, y en estado
+* estable no consultan la BD.
+*
+* Crear, modificar o eliminar un producto ajusta los conteos de su categoria (y de la anterior si
+* cambio de categoria) despues del commit, con la categoria y el estado que trae el evento y sin
+* consultar la BD. Los cambios de stock no cambian los conteos y se ignoran (son la mayoria de los
+* eventos, uno por producto en cada compra).
+*
+* La consulta agrupada completa solo se hace al arrancar y cada platzi.categories.refresh-interval-ms,
+* y corrige lo que los eventos no ven: cambios hechos directamente en la BD o en otro nodo, categorias
+* nuevas, o un ajuste que se pierde porque una reconstruccion termina despues y publica datos leidos
+* antes de ese cambio.
+* */
+@Component
+public class CategorySnapshot implements CategoryRepository {
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+
+    @Autowired
+    private CategoriaCrudRepository categoriaCrudRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        rebuild();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        switch (event.getType()) {
+            case CREATED:
+                count(event.getCategoryId(), 1, event.getProduct().isActive());
+                break;
+            case UPDATED:
+                count(event.getPreviousCategoryId(), -1, event.isPreviouslyActive());
+                count(event.getCategoryId(), 1, event.getProduct().isActive());
+                break;
+            case DELETED:
+                count(event.getCategoryId(), -1, event.isPreviouslyActive());
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${platzi.categories.refresh-interval-ms}",
+            initialDelayString = "${platzi.categories.refresh-interval-ms}")
+    public void refresh() {
+        rebuild();
+    }
+
+    @Override
+    public List<CategorySummary> getAll() {
+        return snapshot().categories;
+    }
+
+    @Override
+    public Optional<CategorySummary> getSummary(int categoryId) {
+        return Optional.ofNullable(snapshot().byId.get(categoryId));
+    }
+
+    /*
+    * Suma (o resta) un producto a la categoria en una foto nueva. updateAndGet reintenta si otro hilo
+    * publico una foto mientras tanto, ningun ajuste se pierde entre eventos. Antes de la primera carga
+    * no hay foto que ajustar, la carga ya leera el cambio.
+    * */
+    private void count(int categoryId, int products, boolean active) {
+        current.updateAndGet(snapshot -> snapshot != null ? snapshot.count(categoryId, products, active ? products : 0) : null);
+    }
+
+    /*
+    * Antes de la primera carga (peticiones que llegan mientras arranca) se carga en el momento.
+    * */
+    private Snapshot snapshot() {
+        Snapshot snapshot = current.get();
+        return snapshot != null ? snapshot : rebuild();
+    }
+
+    /*
+    * synchronized: al serializar las reconstrucciones la ultima en publicarse es tambien la que leyo
+    * los datos mas recientes.
+    *
+    * En una transaccion nueva (puede llamarse desde getAll dentro de otra transaccion) y de escritura,
+    * asi se lee de la BD principal y no de una replica atrasada.
+    * */
+    synchronized Snapshot rebuild() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Snapshot snapshot = new Snapshot(transactionTemplate.execute(status -> categoriaCrudRepository.findSummaries()));
+        current.set(snapshot);
+        return snapshot;
+    }
+
+    private static final class Snapshot {
+        private final List<CategorySummary> categories;
+        private final Map<Integer, CategorySummary> byId;
+
+        private Snapshot(List<CategorySummary> categories) {
+            this.categories = List.copyOf(categories);
+            this.byId = Map.copyOf(categories.stream()
+                    .collect(Collectors.toMap(CategorySummary::getCategoryId, Function.identity())));
+        }
+
+        /*
+        * Una categoria que no esta en la foto (creada despues de la ultima carga) se deja para el
+        * siguiente refresco, no se conoce su descripcion.
+        * */
+        private Snapshot count(int categoryId, long products, long activeProducts) {
+            if (!byId.containsKey(categoryId)) {
+                return this;
+            }
+            return new Snapshot(categories.stream()
+                    .map(category -> category.getCategoryId() != categoryId ? category : new CategorySummary(
+                            category.getCategoryId(), category.getCategory(), category.isActive(),
+                            category.getProducts() + products, category.getActiveProducts() + activeProducts))
+                    .collect(Collectors.toList()));
+        }
+    }
+}
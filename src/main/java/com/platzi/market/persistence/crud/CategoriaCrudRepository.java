@@ -0,0 +1,21 @@
+package com.platzi.market.persistence.crud;
+
+import com.platzi.market.domain.dto.CategorySummary;
+import com.platzi.market.persistence.entity.Categoria;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.List;
+
+public interface CategoriaCrudRepository extends CrudRepository<Categoria, Integer> {
+
+    /*
+    * Todas las categorias con sus conteos de productos en una sola consulta agrupada, sin cargar
+    * entidades. El LEFT JOIN incluye las categorias sin productos.
+    * */
+    @Query("SELECT new com.platzi.market.domain.dto.CategorySummary(c.idCategoria, c.descripcion, c.estado, "
+            + "COUNT(p), SUM(CASE WHEN p.estado = true THEN 1 ELSE 0 END)) "
+            + "FROM Categoria c LEFT JOIN c.productos p "
+            + "GROUP BY c.idCategoria, c.descripcion, c.estado ORDER BY c.idCategoria ASC")
+    List<CategorySummary> findSummaries();
+}
@@ -0,0 +1,7 @@
+package com.platzi.market.persistence.crud;
+
+import com.platzi.market.persistence.entity.ClienteResumen;
+import org.springframework.data.repository.CrudRepository;
+
+public interface ClienteResumenCrudRepository extends CrudRepository<ClienteResumen, String> {
+}
@@ -1,11 +1,61 @@
 package com.platzi.market.persistence.crud;
 
 import com.platzi.market.persistence.entity.Compra;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 public interface CompraCrudRepository extends CrudRepository<Compra, Integer> {
+
+    /*
+    * JOIN FETCH carga las compras del cliente junto con sus items en una sola consulta.
+    *
+    * DISTINCT elimina las compras repetidas (una por cada item) en memoria, HINT_PASS_DISTINCT_THROUGH
+    * evita que el DISTINCT se envie tambien a la BD donde no hace falta.
+    * */
+    @QueryHints(@QueryHint(name = HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("SELECT DISTINCT c FROM Compra c LEFT JOIN FETCH c.productos WHERE c.idCliente = ?1 ORDER BY c.idCompra ASC")
     Optional<List<Compra>> findByIdCliente(String clientId);
+
+    @QueryHints(@QueryHint(name = HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("SELECT DISTINCT c FROM Compra c LEFT JOIN FETCH c.productos ORDER BY c.idCompra ASC")
+    List<Compra> findAllWithProductos();
+
+    @QueryHints(@QueryHint(name = HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("SELECT DISTINCT c FROM Compra c LEFT JOIN FETCH c.productos WHERE c.idCompra = ?1")
+    Optional<Compra> findWithProductosById(int purchaseId);
+
+    /*
+    * Cursor de solo lectura y solo hacia adelante sobre las compras de un rango de fechas
+    * [desde, hasta). Debe consumirse dentro de una transaccion y cerrarse al terminar.
+    * */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("SELECT c FROM Compra c WHERE c.fecha >= ?1 AND c.fecha < ?2 ORDER BY c.idCompra ASC")
+    Stream<Compra> streamByFecha(LocalDateTime desde, LocalDateTime hasta);
+
+    /*
+    * Una fila por item vendido, sin construir entidades, para llenar la foto de ventas (SalesSnapshot):
+    * idProducto, cantidad, total, fecha, idCategoria, medioPago, idCompra. Los items de cada compra
+    * salen juntos. Mismas reglas que streamByFecha.
+    * */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "10000"),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("SELECT cp.id.idProducto, cp.cantidad, cp.total, c.fecha, p.idCategoria, c.medioPago, c.idCompra " +
+            "FROM ComprasProducto cp JOIN cp.compra c JOIN cp.producto p ORDER BY c.idCompra ASC")
+    Stream<Object[]> streamSalesLines();
 }
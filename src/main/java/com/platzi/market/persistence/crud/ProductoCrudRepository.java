@@ -1,16 +1,47 @@
 package com.platzi.market.persistence.crud;
 
+import com.platzi.market.domain.Product;
 import com.platzi.market.persistence.entity.Producto;
-// import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+
+import javax.persistence.QueryHint;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 /*
 * CrudRepository<T, ID>, Recibe la clase entidad y el tipo de la clave primaria
 * */
 public interface ProductoCrudRepository extends CrudRepository<Producto, Integer> {
 
+    /*
+    * Proyeccion con constructor: la consulta construye directamente los Product (y su Category) con
+    * las columnas que necesitan. No se crean entidades, no pasan por el contexto de persistencia ni
+    * por el dirty checking y no hace falta el mapper. La categoria viene en el mismo JOIN en lugar
+    * del select adicional de la relacion @ManyToOne.
+    *
+    * Solo para listas de lectura, para modificar un producto se usan las entidades.
+    * */
+    String PRODUCT_PROJECTION = "SELECT new com.platzi.market.domain.Product(p.idProducto, p.nombre, p.idCategoria, "
+            + "p.precioVenta, p.cantidadStock, p.estado, p.codigoBarras, c.idCategoria, c.descripcion, c.estado) "
+            + "FROM Producto p LEFT JOIN p.categoria c ";
+
+    @Query(PRODUCT_PROJECTION + "ORDER BY p.idProducto ASC")
+    List<Product> findAllProducts();
+
+    /*
+    * Sin cache de consultas de Hibernate: getByCategory ya guarda el resultado en la cache
+    * productsByCategory, que se invalida solo para la categoria que cambia.
+    * */
+    @Query(PRODUCT_PROJECTION + "WHERE p.idCategoria = ?1 ORDER BY p.nombre ASC")
+    List<Product> findProductsByIdCategoria(int idCategoria);
+
     /*
      * https://docs.spring.io/spring-data/jpa/docs/current/reference/html/#jpa.query-methods
      *
@@ -26,9 +57,7 @@ public interface ProductoCrudRepository extends CrudRepository<Producto, Integer
      *                y asi poder operar cuando el dato esta presente sin lidiar con multiples
      *                validaciones para saber si el valor es vacio o nulo.
      *
-     * El siguiente query method hace una busqueda por idCategoria ordenando por Nombre de
-     * forma ascendente y retorna una lista de los resultados.
-     * El segundo query method hace una busqueda por CantidadStock menor que y el estado, donde
+     * El siguiente query method hace una busqueda por CantidadStock menor que y el estado, donde
      * los valores de cada uno de estos se pasan como parametros.
      *
      * Al usar query methods se debe respetar el CamelCase en la firma.
@@ -36,10 +65,46 @@ public interface ProductoCrudRepository extends CrudRepository<Producto, Integer
      * Esto evita tener que escribir SQL nativo.
      *
      * */
-    List<Producto> findByIdCategoriaOrderByNombreAsc(int idCategoria);
-
     Optional<List<Producto>> findByCantidadStockLessThanAndEstado(int cantidad, boolean estado);
 
+    /*
+    * Paginacion por keyset: en lugar de usar OFFSET (que obliga a la BD a recorrer todas las filas
+    * anteriores) se filtra por el ultimo idProducto entregado, aprovechando el indice de la clave
+    * primaria. El Pageable unicamente se usa para limitar el numero de filas.
+    *
+    * Usa la proyeccion, la categoria viene en la misma consulta.
+    * */
+    @Query(PRODUCT_PROJECTION + "WHERE p.idProducto > ?1 ORDER BY p.idProducto ASC")
+    List<Product> findProductPage(int idProducto, Pageable pageable);
+
+    /*
+    * Recorre todos los productos con un cursor de la BD, el driver trae las filas en bloques de
+    * HINT_FETCH_SIZE en lugar de cargar toda la tabla en memoria.
+    * Debe consumirse dentro de una transaccion y cerrarse al terminar (try-with-resources).
+    * */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("SELECT p FROM Producto p LEFT JOIN FETCH p.categoria ORDER BY p.idProducto ASC")
+    Stream<Producto> streamAll();
+
+    /*
+    * Solo el id y el codigo de barras, sin construir entidades, para llenar el indice de codigos
+    * de barras. Mismas reglas que streamAll.
+    * */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("SELECT p.idProducto, p.codigoBarras FROM Producto p WHERE p.codigoBarras IS NOT NULL")
+    Stream<Object[]> streamBarcodes();
+
+    /*
+    * La columna no es unica, si hay codigos repetidos se toma el primero.
+    * */
+    Optional<Producto> findFirstByCodigoBarras(String codigoBarras);
+
     /*
     * Es posible hacer lo anterior con un query nativo, para ello se debe usar la anotacion @query
     * y despues especificar el SQL y adiconalmente indicar el nativeQuery como true. Con esto el
@@ -0,0 +1,13 @@
+package com.platzi.market.persistence.crud;
+
+import com.platzi.market.persistence.entity.VentaDiaria;
+import com.platzi.market.persistence.entity.VentaDiariaPK;
+import org.springframework.data.repository.CrudRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface VentaDiariaCrudRepository extends CrudRepository<VentaDiaria, VentaDiariaPK> {
+
+    List<VentaDiaria> findByIdFechaBetweenOrderByIdFechaAsc(LocalDate desde, LocalDate hasta);
+}
@@ -1,5 +1,9 @@
 package com.platzi.market.persistence.entity;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
@@ -7,10 +11,20 @@ import javax.persistence.OneToMany;
 import javax.persistence.Table;
 import java.util.List;
 
+/*
+* Cache de segundo nivel de Hibernate (region "categorias"): las categorias no se modifican desde la
+* aplicacion. NONSTRICT_READ_WRITE no usa los bloqueos de READ_WRITE y, a diferencia de READ_ONLY,
+* no falla cuando una categoria creada en la misma transaccion se vuelve a cargar (Hibernate lo
+* trata como una actualizacion de la cache); una modificacion solo invalida la entrada.
+* */
 @Entity
 @Table(name = "categorias")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = Categoria.CACHE_REGION)
 public class Categoria {
 
+    public static final String CACHE_REGION = "categorias";
+
     @Id
     @Column(name = "id_categoria")
     private Integer idCategoria;
@@ -0,0 +1,73 @@
+package com.platzi.market.persistence.entity;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/*
+* Totales acumulados de las compras de un cliente, una fila por cliente.
+*
+* CompraRepository la actualiza en la misma transaccion que guarda cada compra, asi consultar lo
+* gastado por un cliente es una lectura por clave primaria sin recorrer compras_productos.
+* */
+@Entity
+@Table(name = "clientes_resumen")
+public class ClienteResumen {
+
+    @Id
+    @Column(name = "id_cliente")
+    private String idCliente;
+
+    private Double total;
+
+    @Column(name = "cantidad_compras")
+    private Integer cantidadCompras;
+
+    @Column(name = "cantidad_productos")
+    private Integer cantidadProductos;
+
+    @Column(name = "ultima_compra")
+    private LocalDateTime ultimaCompra;
+
+    public String getIdCliente() {
+        return idCliente;
+    }
+
+    public void setIdCliente(String idCliente) {
+        this.idCliente = idCliente;
+    }
+
+    public Double getTotal() {
+        return total;
+    }
+
+    public void setTotal(Double total) {
+        this.total = total;
+    }
+
+    public Integer getCantidadCompras() {
+        return cantidadCompras;
+    }
+
+    public void setCantidadCompras(Integer cantidadCompras) {
+        this.cantidadCompras = cantidadCompras;
+    }
+
+    public Integer getCantidadProductos() {
+        return cantidadProductos;
+    }
+
+    public void setCantidadProductos(Integer cantidadProductos) {
+        this.cantidadProductos = cantidadProductos;
+    }
+
+    public LocalDateTime getUltimaCompra() {
+        return ultimaCompra;
+    }
+
+    public void setUltimaCompra(LocalDateTime ultimaCompra) {
+        this.ultimaCompra = ultimaCompra;
+    }
+}
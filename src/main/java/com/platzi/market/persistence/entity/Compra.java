@@ -1,5 +1,7 @@
 package com.platzi.market.persistence.entity;
 
+import org.hibernate.annotations.BatchSize;
+
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -10,6 +12,7 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -18,8 +21,20 @@ import java.util.List;
 @Table(name = "compras")
 public class Compra {
 
+    // Ids que Hibernate reserva por cada llamada a la secuencia
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    /*
+    * Con IDENTITY Hibernate debe insertar cada compra para conocer su id y no puede agrupar los
+    * inserts en lotes (JDBC batch). Con una secuencia reserva 50 ids por cada llamada a la BD
+    * (allocationSize) y agrupa los inserts de compras y compras_productos.
+    *
+    * La secuencia es la que crea la columna serial, debe incrementar de 50 en 50
+    * (ver db/compras_id_sequence.sql).
+    * */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "compras_seq")
+    @SequenceGenerator(name = "compras_seq", sequenceName = "compras_id_compra_seq", allocationSize = ID_ALLOCATION_SIZE)
     @Column(name = "id_compra")
     private Integer idCompra;
 
@@ -41,8 +56,9 @@ public class Compra {
     *                   No se puede insertar, actualizar o eliminar a traves de la relacion.
     *
     * El atributo cliente recupera el Cliente al que pertenece la compra.
+    * Es LAZY porque ninguna conversion a dominio lo usa, asi no se hace un select por cliente.
     * */
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "id_cliente", insertable = false, updatable = false)
     private Cliente cliente;
 
@@ -55,8 +71,12 @@ public class Compra {
     * cascade           indica que al guardar una compra, se guardaran en cascada sus items.
     *
     * El atributo producos recupera la lista de los productos que pertencen a una compra.
+    *
+    * @BatchSize        al inicializar la lista de una compra, Hibernate carga en la misma consulta
+    *                   las listas de hasta 100 compras que esten en el contexto de persistencia.
     * */
     @OneToMany(mappedBy = "compra", cascade = {CascadeType.ALL})
+    @BatchSize(size = 100)
     private List<ComprasProducto> productos;
 
 
@@ -0,0 +1,65 @@
+package com.platzi.market.persistence.entity;
+
+import javax.persistence.Column;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/*
+* Clave de idempotencia con la que se creo una compra (encabezado Idempotency-Key de POST /purchases).
+*
+* El cliente y la clave son la llave primaria: si dos nodos guardan la misma clave del mismo cliente
+* al mismo tiempo, la segunda transaccion falla y se revierte completa, incluida su compra. huella
+* es el hash de la compra que se pidio, un reintento con otra compra se rechaza. fecha sirve para
+* eliminar las claves expiradas (ver db/compras_idempotencia.sql). CompraIdempotenciaRepository la
+* lee y escribe con JdbcTemplate.
+* */
+@Entity
+@Table(name = "compras_idempotencia")
+public class CompraIdempotencia {
+
+    @EmbeddedId
+    private CompraIdempotenciaPK id;
+
+    @Column(name = "id_compra", nullable = false)
+    private Integer idCompra;
+
+    @Column(length = 44)
+    private String huella;
+
+    @Column(nullable = false)
+    private LocalDateTime fecha;
+
+    public CompraIdempotenciaPK getId() {
+        return id;
+    }
+
+    public void setId(CompraIdempotenciaPK id) {
+        this.id = id;
+    }
+
+    public Integer getIdCompra() {
+        return idCompra;
+    }
+
+    public void setIdCompra(Integer idCompra) {
+        this.idCompra = idCompra;
+    }
+
+    public String getHuella() {
+        return huella;
+    }
+
+    public void setHuella(String huella) {
+        this.huella = huella;
+    }
+
+    public LocalDateTime getFecha() {
+        return fecha;
+    }
+
+    public void setFecha(LocalDateTime fecha) {
+        this.fecha = fecha;
+    }
+}
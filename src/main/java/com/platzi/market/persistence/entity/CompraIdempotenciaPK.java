@@ -0,0 +1,32 @@
+package com.platzi.market.persistence.entity;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import java.io.Serializable;
+
+// Llave de CompraIdempotencia: las claves son de cada cliente
+@Embeddable
+public class CompraIdempotenciaPK implements Serializable {
+
+    @Column(name = "id_cliente", length = 20)
+    private String idCliente;
+
+    @Column(length = 100)
+    private String clave;
+
+    public String getIdCliente() {
+        return idCliente;
+    }
+
+    public void setIdCliente(String idCliente) {
+        this.idCliente = idCliente;
+    }
+
+    public String getClave() {
+        return clave;
+    }
+
+    public void setClave(String clave) {
+        this.clave = clave;
+    }
+}
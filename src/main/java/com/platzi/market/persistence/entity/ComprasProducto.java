@@ -2,6 +2,7 @@ package com.platzi.market.persistence.entity;
 
 import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.MapsId;
@@ -31,7 +32,7 @@ public class ComprasProducto {
     *
     * El atributo compra tendra la Compra a la que pertence el item.
     * */
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @MapsId("idCompra")
     @JoinColumn(name = "id_compra", insertable = false, updatable = false)
     private Compra compra;
@@ -43,8 +44,10 @@ public class ComprasProducto {
     *                       No se puede insertar, actualizar o eliminar a traves de la relacion.
     *
     * El atributo producto tendra el producto al quepertence el item.
+    * Es LAZY para que al leer los items no se haga un select por cada producto y su categoria,
+    * la conversion a dominio solo necesita el id que ya viene en la clave primaria.
     * */
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "id_producto", insertable = false, updatable = false)
     private Producto producto;
 
@@ -1,5 +1,9 @@
 package com.platzi.market.persistence.entity;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
@@ -9,10 +13,18 @@ import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 
+/*
+* Cache de segundo nivel de Hibernate (region "productos"). READ_WRITE mantiene la cache al guardar o
+* eliminar con Hibernate; el descuento de stock se hace con JDBC y lo bloquea SecondLevelCacheLock.
+* */
 @Entity
 @Table(name = "productos")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Producto.CACHE_REGION)
 public class Producto {
 
+    public static final String CACHE_REGION = "productos";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "id_producto")
@@ -0,0 +1,58 @@
+package com.platzi.market.persistence.entity;
+
+import javax.persistence.Column;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/*
+* Ventas acumuladas de un dia. Cada dia se reparte en varias filas (particion) para que las compras
+* concurrentes no esperen todas por la misma fila; el total del dia es la suma de sus filas.
+* */
+@Entity
+@Table(name = "ventas_diarias")
+public class VentaDiaria {
+
+    @EmbeddedId
+    private VentaDiariaPK id;
+
+    private Double total;
+
+    @Column(name = "cantidad_compras")
+    private Integer cantidadCompras;
+
+    @Column(name = "cantidad_productos")
+    private Integer cantidadProductos;
+
+    public VentaDiariaPK getId() {
+        return id;
+    }
+
+    public void setId(VentaDiariaPK id) {
+        this.id = id;
+    }
+
+    public Double getTotal() {
+        return total;
+    }
+
+    public void setTotal(Double total) {
+        this.total = total;
+    }
+
+    public Integer getCantidadCompras() {
+        return cantidadCompras;
+    }
+
+    public void setCantidadCompras(Integer cantidadCompras) {
+        this.cantidadCompras = cantidadCompras;
+    }
+
+    public Integer getCantidadProductos() {
+        return cantidadProductos;
+    }
+
+    public void setCantidadProductos(Integer cantidadProductos) {
+        this.cantidadProductos = cantidadProductos;
+    }
+}
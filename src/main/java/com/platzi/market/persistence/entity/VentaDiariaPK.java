@@ -0,0 +1,30 @@
+package com.platzi.market.persistence.entity;
+
+import javax.persistence.Embeddable;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+// Llave de VentaDiaria: la fecha y una de sus particiones (slot)
+@Embeddable
+public class VentaDiariaPK implements Serializable {
+
+    private LocalDate fecha;
+
+    private Integer particion;
+
+    public LocalDate getFecha() {
+        return fecha;
+    }
+
+    public void setFecha(LocalDate fecha) {
+        this.fecha = fecha;
+    }
+
+    public Integer getParticion() {
+        return particion;
+    }
+
+    public void setParticion(Integer particion) {
+        this.particion = particion;
+    }
+}
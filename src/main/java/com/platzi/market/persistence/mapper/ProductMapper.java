@@ -51,6 +51,7 @@ public interface ProductMapper {
             @Mapping(source = "precioVenta", target = "price"),
             @Mapping(source = "cantidadStock", target = "stock"),
             @Mapping(source = "estado", target = "active"),
+            @Mapping(source = "codigoBarras", target = "barcode"),
             @Mapping(source = "categoria", target = "category")
     })
     // Convierte una entidad Producto en un dominio Product
@@ -62,8 +63,6 @@ public interface ProductMapper {
 
     // Conversion inversa a la anterior
     @InheritInverseConfiguration
-    // El atributo codigoBarras que espera la entidad, no va a ir por ello debe ignorarlo
-    @Mapping(target = "codigoBarras", ignore = true)
     // Convierte un dominio Product a una entidad Producto
     Producto toProducto(Product product);
 
@@ -0,0 +1,32 @@
+package com.platzi.market.persistence.mapper;
+
+import com.platzi.market.domain.dto.ClientSummary;
+import com.platzi.market.domain.dto.DailySales;
+import com.platzi.market.persistence.entity.ClienteResumen;
+import com.platzi.market.persistence.entity.VentaDiaria;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.Mappings;
+
+import java.util.List;
+
+@Mapper(componentModel = "spring")
+public interface PurchaseSummaryMapper {
+    @Mappings({
+            @Mapping(source = "idCliente", target = "clientId"),
+            @Mapping(source = "total", target = "total"),
+            @Mapping(source = "cantidadCompras", target = "purchases"),
+            @Mapping(source = "cantidadProductos", target = "items"),
+            @Mapping(source = "ultimaCompra", target = "lastPurchase")
+    })
+    ClientSummary toClientSummary(ClienteResumen resumen);
+
+    @Mappings({
+            @Mapping(source = "id.fecha", target = "date"),
+            @Mapping(source = "total", target = "total"),
+            @Mapping(source = "cantidadCompras", target = "purchases"),
+            @Mapping(source = "cantidadProductos", target = "items")
+    })
+    DailySales toDailySales(VentaDiaria venta);
+    List<DailySales> toDailySales(List<VentaDiaria> ventas);
+}
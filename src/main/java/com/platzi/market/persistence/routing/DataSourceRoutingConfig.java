@@ -0,0 +1,107 @@
+package com.platzi.market.persistence.routing;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/*
+* DataSource de la aplicacion: LazyConnectionDataSourceProxy => ReplicaRoutingDataSource => principal
+* (spring.datasource.*) o una de las replicas (platzi.datasource.replicas.urls).
+*
+* Las replicas usan el timeout, la vida maxima y las propiedades del driver de la principal
+* (spring.datasource.hikari.*) con su propio tamaño de pool.
+*
+* Sin replicas todo va a la principal. El proxy se usa siempre: una transaccion que se resuelve
+* con caches o indices en memoria no llega a pedir una conexion al pool.
+* */
+@Configuration
+public class DataSourceRoutingConfig {
+
+    /*
+    * Solo la configuracion es un bean: si el pool principal o el enrutador fueran beans DataSource,
+    * Spring Boot inicializaria la BD (DataSourceInitializer) en cuanto se crean, con dataSource
+    * todavia en construccion.
+    * */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariConfig primaryDataSourceConfig(DataSourceProperties properties) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(properties.determineUrl());
+        config.setUsername(properties.determineUsername());
+        config.setPassword(properties.determinePassword());
+        config.setDriverClassName(properties.determineDriverClassName());
+        return config;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariConfig primaryDataSourceConfig,
+                                 DataSourceProperties properties,
+                                 @Value("${platzi.datasource.replicas.urls}") String[] urls,
+                                 @Value("${platzi.datasource.replicas.username}") String username,
+                                 @Value("${platzi.datasource.replicas.password}") String password,
+                                 @Value("${platzi.datasource.replicas.pool-size}") int poolSize,
+                                 @Value("${platzi.datasource.replicas.lag-query}") String lagQuery,
+                                 @Value("${platzi.datasource.replicas.max-lag-ms}") long maxLag,
+                                 @Value("${platzi.datasource.replicas.check-interval-ms}") long checkInterval,
+                                 MeterRegistry meterRegistry) {
+        primaryDataSourceConfig.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        HikariDataSource primaryDataSource = new HikariDataSource(primaryDataSourceConfig);
+
+        List<String> replicaUrls = Arrays.stream(urls).map(String::trim).filter(url -> !url.isEmpty()).collect(Collectors.toList());
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            String name = "replica-" + (i + 1);
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName(name);
+            replica.setJdbcUrl(replicaUrls.get(i));
+            replica.setUsername(username);
+            replica.setPassword(password);
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setMaximumPoolSize(poolSize);
+            replica.setReadOnly(true);
+            replica.setConnectionTimeout(primaryDataSource.getConnectionTimeout());
+            replica.setMaxLifetime(primaryDataSource.getMaxLifetime());
+            replica.setDataSourceProperties(primaryDataSource.getDataSourceProperties());
+            replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            replicas.put(name, replica);
+        }
+        return new RoutingDataSourceProxy(new ReplicaRoutingDataSource(primaryDataSource, replicas, lagQuery, maxLag, checkInterval, meterRegistry));
+    }
+
+    /*
+    * close() lo invoca Spring al cerrar el contexto y cierra los pools
+    * */
+    static class RoutingDataSourceProxy extends LazyConnectionDataSourceProxy implements Closeable {
+
+        private final ReplicaRoutingDataSource routingDataSource;
+
+        RoutingDataSourceProxy(ReplicaRoutingDataSource routingDataSource) {
+            super(routingDataSource);
+            this.routingDataSource = routingDataSource;
+        }
+
+        @Override
+        public void close() throws IOException {
+            routingDataSource.close();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.platzi.market.persistence.routing;
+
+import java.util.function.Supplier;
+
+/*
+* Envia a la BD principal las lecturas de solo lectura hechas dentro de get, aunque haya replicas.
+*
+* Es para las lecturas que llenan una cache o acompañan una version (ETag) que ya se incremento: en
+* una replica atrasada guardarian o entregarian el dato anterior con la version nueva.
+*
+* ReplicaRoutingDataSource decide al pedir la conexion, la primera sentencia de la transaccion debe
+* ejecutarse dentro de get; si la transaccion ya tiene conexion se sigue usando esa.
+* */
+public final class PrimaryReads {
+
+    private static final ThreadLocal<Boolean> ACTIVE = new ThreadLocal<>();
+
+    private PrimaryReads() {
+    }
+
+    public static <T> T get(Supplier<T> reader) {
+        if (ACTIVE.get() != null) {
+            return reader.get();
+        }
+        ACTIVE.set(Boolean.TRUE);
+        try {
+            return reader.get();
+        } finally {
+            ACTIVE.remove();
+        }
+    }
+
+    static boolean isActive() {
+        return ACTIVE.get() != null;
+    }
+}
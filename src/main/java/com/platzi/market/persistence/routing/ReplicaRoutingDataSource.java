@@ -0,0 +1,184 @@
+package com.platzi.market.persistence.routing;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+* Envia las transacciones de solo lectura (@Transactional(readOnly = true)) a las replicas y todo
+* lo demas a la BD principal.
+*
+* La decision se toma al pedir la conexion, por eso debe usarse detras de un
+* LazyConnectionDataSourceProxy: la transaccion se abre sin conexion real y esta se pide en la
+* primera sentencia, cuando ya se sabe si la transaccion es de solo lectura.
+*
+* Una replica sale de la rotacion si su retraso (lagQuery, medido cada checkInterval) es mayor a
+* maxLag o si no responde; sin replicas disponibles se lee de la principal.
+*
+* Leer lo que uno escribio: despues de confirmar una transaccion de escritura, las lecturas del mismo
+* cliente van a la principal durante maxLag + checkInterval, el tiempo en que una replica en rotacion
+* puede no tener todavia ese cambio. El cliente es la sesion (las credenciales de la autenticacion,
+* el id del JWT que pone JwtFilterRequest), no el usuario: varias terminales con el mismo usuario
+* tienen cada una su ventana. Sin credenciales se usa el nombre del usuario, y sin usuario autenticado
+* la ventana es compartida por todas las peticiones anonimas.
+*
+* Las lecturas dentro de PrimaryReads.get siempre van a la principal.
+* */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    static final String PRIMARY = "primary";
+    private static final String ANONYMOUS = "";
+    private static final long MAX_RECENT_WRITERS = 100_000;
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final Cache<String, Boolean> recentWriters;
+    private final String lagQuery;
+    private final long maxLag;
+    private final ScheduledExecutorService lagChecker;
+    private final Counter primaryReads;
+    private final Counter replicaReads;
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, String lagQuery,
+                                    long maxLag, long checkInterval, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.lagQuery = lagQuery;
+        this.maxLag = maxLag;
+        this.recentWriters = Caffeine.newBuilder()
+                .maximumSize(MAX_RECENT_WRITERS)
+                .expireAfterWrite(Duration.ofMillis(maxLag + checkInterval))
+                .build();
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        replicas.forEach((name, dataSource) -> {
+            Replica replica = new Replica(name, dataSource);
+            this.replicas.add(replica);
+            targets.put(name, dataSource);
+            Gauge.builder("platzi.datasource.replica.lag", replica, r -> r.lag).tag("name", name).register(meterRegistry);
+        });
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+
+        this.primaryReads = Counter.builder("platzi.datasource.reads").tag("target", PRIMARY).register(meterRegistry);
+        this.replicaReads = Counter.builder("platzi.datasource.reads").tag("target", "replica").register(meterRegistry);
+
+        if (this.replicas.isEmpty()) {
+            this.lagChecker = null;
+        } else {
+            this.lagChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "replica-lag-checker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            lagChecker.scheduleWithFixedDelay(this::checkLag, 0, checkInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                String client = currentClient();
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        recentWriters.put(client, Boolean.TRUE);
+                    }
+                });
+            }
+            return PRIMARY;
+        }
+
+        if (!replicas.isEmpty() && !PrimaryReads.isActive() && recentWriters.getIfPresent(currentClient()) == null) {
+            int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+            for (int i = 0; i < replicas.size(); i++) {
+                Replica replica = replicas.get((start + i) % replicas.size());
+                if (replica.available) {
+                    replicaReads.increment();
+                    return replica.name;
+                }
+            }
+        }
+        primaryReads.increment();
+        return PRIMARY;
+    }
+
+    /*
+    * Una consulta que devuelve null (la instancia no es una replica en recuperacion) cuenta como
+    * retraso 0. Una replica que falla queda con retraso NaN en platzi.datasource.replica.lag.
+    * */
+    void checkLag() {
+        for (Replica replica : replicas) {
+            try {
+                Double lag = new JdbcTemplate(replica.dataSource).queryForObject(lagQuery, Double.class);
+                replica.lag = lag != null ? lag : 0;
+                replica.available = replica.lag <= maxLag;
+            } catch (RuntimeException e) {
+                replica.lag = Double.NaN;
+                replica.available = false;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (lagChecker != null) {
+            lagChecker.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof Closeable) {
+                ((Closeable) replica.dataSource).close();
+            }
+        }
+        if (primary instanceof Closeable) {
+            ((Closeable) primary).close();
+        }
+    }
+
+    private static String currentClient() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null) {
+            return ANONYMOUS;
+        }
+        return authentication.getCredentials() instanceof String
+                ? (String) authentication.getCredentials()
+                : authentication.getName();
+    }
+
+    private static final class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        // Fuera de rotacion hasta la primera medicion
+        private volatile boolean available;
+        private volatile double lag = Double.NaN;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
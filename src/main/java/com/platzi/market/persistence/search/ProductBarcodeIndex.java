@@ -0,0 +1,265 @@
+package com.platzi.market.persistence.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.platzi.market.domain.Product;
+import com.platzi.market.domain.event.ProductChangedEvent;
+import com.platzi.market.domain.repository.ProductBarcodeRepository;
+import com.platzi.market.domain.repository.ProductRepository;
+import com.platzi.market.persistence.crud.ProductoCrudRepository;
+import com.platzi.market.persistence.mapper.ProductMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/*
+* Indice codigo de barras => idProducto para los lectores de las cajas.
+*
+* Es una tabla hash de direccionamiento abierto (sondeo lineal) sobre dos arreglos primitivos:
+* keys guarda un hash de 64 bits del codigo y ids el idProducto. No hay un String ni un Integer por
+* entrada, 5M codigos ocupan ~12 bytes por casilla en lugar de cientos de MB de objetos.
+*
+* El producto se toma de ProductRepository.getById (cache "products") y siempre se compara su codigo
+* con el buscado; asi un choque de hashes, un producto que cambio de codigo o uno eliminado nunca
+* devuelven un producto equivocado: la casilla se descarta y se consulta la BD.
+*
+* El indice solo aprende de los ProductChangedEvent de este nodo. Un codigo que no esta se busca en
+* la BD (un producto creado en otro nodo, por SQL o cargado despues del arranque) y se agrega; si la
+* BD tampoco lo tiene la ausencia se recuerda en misses durante platzi.barcodes.miss-ttl-ms, asi un
+* codigo desconocido escaneado muchas veces consulta la BD a lo mucho una vez por ese tiempo.
+*
+* Las lecturas no toman locks. Las escrituras se serializan y modifican la tabla en su lugar con
+* escrituras release (VarHandle): primero el id y despues el hash, asi un lector que ve el hash con
+* una lectura acquire ve tambien su id. Al redimensionar la tabla nueva se llena completa antes de
+* publicarla en el campo volatil.
+* */
+@Component
+public class ProductBarcodeIndex implements ProductBarcodeRepository {
+
+    private static final long EMPTY = 0L;
+    private static final int NO_PRODUCT = 0;
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final double MAX_LOAD = 0.7;
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle IDS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+
+    // Codigos que no estan en la BD, con expiracion
+    private final Cache<String, Boolean> misses;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductoCrudRepository productoCrudRepository;
+
+    @Autowired
+    private ProductMapper mapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    public ProductBarcodeIndex(@Value("${platzi.barcodes.miss-ttl-ms}") long missTtlMillis,
+                               @Value("${platzi.barcodes.miss-cache-size}") long missCacheSize) {
+        this.misses = Caffeine.newBuilder()
+                .maximumSize(missCacheSize)
+                .expireAfterWrite(Duration.ofMillis(missTtlMillis))
+                .build();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Object[]> rows = productoCrudRepository.streamBarcodes()) {
+                rows.forEach(row -> put((String) row[1], (Integer) row[0]));
+            }
+        });
+    }
+
+    /*
+    * Un producto eliminado o que cambio de codigo deja su casilla anterior, que se descarta la
+    * primera vez que se busca el codigo viejo.
+    * */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        Product product = event.getProduct();
+        if (product != null && product.getBarcode() != null) {
+            put(product.getBarcode(), product.getProductId());
+            misses.invalidate(product.getBarcode().trim());
+        }
+    }
+
+    @Override
+    public Optional<Product> getByBarcode(String barcode) {
+        return find(barcode.trim(), true);
+    }
+
+    @Override
+    public Optional<Product> getIndexedByBarcode(String barcode) {
+        return find(barcode.trim(), false);
+    }
+
+    private Optional<Product> find(String code, boolean askDatabase) {
+        long hash = hash(code);
+
+        int productId = table.get(hash);
+        if (productId != NO_PRODUCT) {
+            Optional<Product> product = productRepository.getById(productId);
+            if (product.isPresent() && code.equals(product.get().getBarcode())) {
+                return product;
+            }
+            remove(hash, productId);
+        }
+        if (!askDatabase || misses.getIfPresent(code) != null) {
+            return Optional.empty();
+        }
+
+        Optional<Product> product = productoCrudRepository.findFirstByCodigoBarras(code).map(mapper::toProduct);
+        if (product.isPresent()) {
+            put(code, product.get().getProductId());
+        } else {
+            misses.put(code, Boolean.TRUE);
+        }
+        return product;
+    }
+
+    public synchronized int size() {
+        return table.size;
+    }
+
+    private synchronized void put(String barcode, int productId) {
+        String code = barcode.trim();
+        if (code.isEmpty()) {
+            return;
+        }
+        Table current = table;
+        if (current.used + 1 > current.keys.length * MAX_LOAD) {
+            Table resized = current.resize();
+            resized.put(hash(code), productId);
+            table = resized;
+        } else {
+            current.put(hash(code), productId);
+        }
+    }
+
+    private synchronized void remove(long hash, int productId) {
+        table.remove(hash, productId);
+    }
+
+    /*
+    * FNV-1a de 64 bits con la mezcla final de MurmurHash3 para repartir mejor los bits bajos,
+    * que son los que eligen la casilla. El 0 se reserva para las casillas vacias.
+    * */
+    static long hash(String barcode) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < barcode.length(); i++) {
+            h ^= barcode.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h == EMPTY ? 1L : h;
+    }
+
+    /*
+    * Una casilla eliminada conserva su hash con id NO_PRODUCT para no cortar el sondeo de las
+    * claves que estan despues; se limpian al redimensionar.
+    *
+    * Solo get se ejecuta fuera del lock, por eso solo las escrituras que puede ver un lector usan
+    * VarHandle; las lecturas de put, remove y resize ven lo que escribio el mismo lock.
+    * */
+    private static final class Table {
+        private final long[] keys;
+        private final int[] ids;
+        private final int mask;
+        // Casillas con hash (incluye eliminadas) y casillas con producto
+        private int used;
+        private int size;
+
+        private Table(int capacity) {
+            keys = new long[capacity];
+            ids = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        private int get(long hash) {
+            for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+                long key = (long) KEYS.getAcquire(keys, slot);
+                if (key == hash) {
+                    return (int) IDS.getAcquire(ids, slot);
+                }
+                if (key == EMPTY) {
+                    return NO_PRODUCT;
+                }
+            }
+        }
+
+        private void put(long hash, int productId) {
+            for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+                long key = keys[slot];
+                if (key == hash) {
+                    if (ids[slot] == NO_PRODUCT) {
+                        size++;
+                    }
+                    IDS.setRelease(ids, slot, productId);
+                    return;
+                }
+                if (key == EMPTY) {
+                    IDS.setRelease(ids, slot, productId);
+                    KEYS.setRelease(keys, slot, hash);
+                    used++;
+                    size++;
+                    return;
+                }
+            }
+        }
+
+        private void remove(long hash, int productId) {
+            for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+                long key = keys[slot];
+                if (key == hash) {
+                    if (ids[slot] == productId) {
+                        IDS.setRelease(ids, slot, NO_PRODUCT);
+                        size--;
+                    }
+                    return;
+                }
+                if (key == EMPTY) {
+                    return;
+                }
+            }
+        }
+
+        /*
+        * La nueva tabla queda a lo mucho a la mitad de su capacidad con las casillas vivas.
+        * */
+        private Table resize() {
+            int capacity = INITIAL_CAPACITY;
+            while (capacity < size * 2L + 2) {
+                capacity <<= 1;
+            }
+            Table resized = new Table(capacity);
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY && ids[slot] != NO_PRODUCT) {
+                    resized.put(keys[slot], ids[slot]);
+                }
+            }
+            return resized;
+        }
+    }
+}
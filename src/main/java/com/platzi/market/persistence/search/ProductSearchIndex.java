@@ -0,0 +1,317 @@
+package com.platzi.market.persistence.search;
+
+import com.platzi.market.domain.Product;
+import com.platzi.market.domain.event.ProductChangedEvent;
+import com.platzi.market.domain.repository.ProductBarcodeRepository;
+import com.platzi.market.domain.repository.ProductRepository;
+import com.platzi.market.domain.repository.ProductSearchRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/*
+* Indice invertido en memoria sobre el nombre y el codigo de barras de los productos.
+*
+* terms      palabra normalizada => ids de los productos que la contienen. Al estar ordenado, las
+*            palabras que empiezan con un prefijo son un rango contiguo (subMap) y no hace falta
+*            recorrer todo el catalogo ni hacer un LIKE '%...%' sobre la BD.
+* entries    id => producto y sus palabras, para calificar cada candidato sin volver a la BD.
+*
+* Las coincidencias exactas por codigo de barras se resuelven con ProductBarcodeRepository.
+*
+* Un prefijo de una o dos letras abarca buena parte del catalogo, por eso las palabras de la consulta
+* mas cortas que MIN_PREFIX_LENGTH no eligen candidatos, solo filtran los de las demas ("arroz di").
+* Si todas son cortas se buscan como palabras completas ("te" encuentra "Té Hindú").
+*
+* Se construye al arrancar la aplicacion y despues se mantiene con los ProductChangedEvent.
+* Las lecturas no se bloquean; las escrituras se serializan para que quitar una palabra sin
+* productos no compita con agregar un producto a esa misma palabra.
+*
+* Un producto cambiado mientras se construye el indice puede quedar con los datos leidos por el
+* cursor hasta su siguiente cambio.
+* */
+@Component
+public class ProductSearchIndex implements ProductSearchRepository {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^a-z0-9]+");
+
+    // Puntaje por palabra de la consulta segun como coincide con el nombre
+    private static final int EXACT_SCORE = 3;
+    private static final int PREFIX_SCORE = 1;
+    // Bonos si el nombre empieza con la consulta o si la consulta es el codigo de barras
+    private static final int LEADING_SCORE = 2;
+    private static final int BARCODE_SCORE = 100;
+
+    private static final int MIN_PREFIX_LENGTH = 3;
+
+    // De peor a mejor, para que la cola de prioridad tenga a la cabeza el que sale primero
+    private static final Comparator<Hit> RANKING = (hit, other) -> compare(hit.score, hit.entry, other);
+
+    private final ConcurrentSkipListMap<String, Set<Integer>> terms = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductBarcodeRepository productBarcodeRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /*
+    * El cursor de streamAll necesita una transaccion abierta, de solo lectura.
+    * */
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        transactionTemplate.executeWithoutResult(status -> productRepository.streamAll(this::index));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        switch (event.getType()) {
+            case CREATED:
+            case UPDATED:
+                index(new Product(event.getProduct()));
+                break;
+            case DELETED:
+                unindex(event.getProductId());
+                break;
+            case STOCK_CHANGED:
+                updateStock(event.getProductId(), event.getStock());
+                break;
+        }
+    }
+
+    /*
+    * Todas las palabras de la consulta deben aparecer en el nombre, completas o como prefijo.
+    * Solo se recorren los candidatos de la palabra mas selectiva; el resto se comprueba contra
+    * las palabras guardadas de cada candidato.
+    *
+    * Por cada candidato no se asigna memoria salvo que entre a los mejores limit.
+    * */
+    @Override
+    public List<Product> search(String query, int limit) {
+        if (query == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        PriorityQueue<Hit> top = new PriorityQueue<>(limit + 1, RANKING);
+
+        Integer barcodeMatch = query.isBlank() ? null : productBarcodeRepository.getIndexedByBarcode(query)
+                .map(Product::getProductId)
+                .orElse(null);
+        Entry barcodeEntry = barcodeMatch != null ? entries.get(barcodeMatch) : null;
+        if (barcodeEntry != null) {
+            top.add(new Hit(barcodeEntry, BARCODE_SCORE));
+        }
+
+        String[] queryTokens = tokenize(query);
+        if (queryTokens.length > 0) {
+            boolean prefixes = Arrays.stream(queryTokens).anyMatch(token -> token.length() >= MIN_PREFIX_LENGTH);
+            String selected = mostSelective(queryTokens, prefixes);
+            for (Map.Entry<String, Set<Integer>> term : range(selected, prefixes).entrySet()) {
+                for (Integer productId : term.getValue()) {
+                    if (productId.equals(barcodeMatch)) {
+                        continue;
+                    }
+                    Entry entry = entries.get(productId);
+                    // Un producto con dos palabras en el rango se califica solo con la primera
+                    if (entry == null || (prefixes && hasEarlierToken(entry.tokens, selected, term.getKey()))) {
+                        continue;
+                    }
+                    int score = score(entry.tokens, queryTokens, prefixes);
+                    if (score > 0 && (top.size() < limit || compare(score, entry, top.peek()) > 0)) {
+                        top.add(new Hit(entry, score));
+                        if (top.size() > limit) {
+                            top.poll();
+                        }
+                    }
+                }
+            }
+        }
+
+        while (top.size() > limit) {
+            top.poll();
+        }
+        List<Product> products = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            products.add(top.poll().entry.product);
+        }
+        Collections.reverse(products);
+        return products;
+    }
+
+    /*
+    * Con prefixes solo compiten las palabras de al menos MIN_PREFIX_LENGTH letras, sin el solo las
+    * palabras completas.
+    * */
+    private String mostSelective(String[] queryTokens, boolean prefixes) {
+        String best = null;
+        long bestSize = Long.MAX_VALUE;
+
+        for (String token : queryTokens) {
+            if (prefixes && token.length() < MIN_PREFIX_LENGTH) {
+                continue;
+            }
+            long size = 0;
+            for (Set<Integer> ids : range(token, prefixes).values()) {
+                size += ids.size();
+                if (size >= bestSize) {
+                    break;
+                }
+            }
+            if (size < bestSize) {
+                best = token;
+                bestSize = size;
+            }
+        }
+        return best;
+    }
+
+    private NavigableMap<String, Set<Integer>> range(String token, boolean prefix) {
+        return prefix
+                ? terms.subMap(token, true, token + Character.MAX_VALUE, false)
+                : terms.subMap(token, true, token, true);
+    }
+
+    private static boolean hasEarlierToken(String[] tokens, String prefix, String term) {
+        for (String token : tokens) {
+            if (token.compareTo(term) < 0 && token.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int score(String[] tokens, String[] queryTokens, boolean prefixes) {
+        int total = 0;
+        for (String queryToken : queryTokens) {
+            int best = 0;
+            for (String token : tokens) {
+                if (token.equals(queryToken)) {
+                    best = EXACT_SCORE;
+                    break;
+                }
+                if (prefixes && token.startsWith(queryToken)) {
+                    best = PREFIX_SCORE;
+                }
+            }
+            if (best == 0) {
+                return 0;
+            }
+            total += best;
+        }
+        if (tokens.length > 0 && (prefixes ? tokens[0].startsWith(queryTokens[0]) : tokens[0].equals(queryTokens[0]))) {
+            total += LEADING_SCORE;
+        }
+        return total;
+    }
+
+    /*
+    * Mayor puntaje, despues menos palabras y despues el id menor. Sin cajas de Integer, se llama
+    * varias veces por candidato.
+    * */
+    private static int compare(int score, Entry entry, Hit other) {
+        if (score != other.score) {
+            return Integer.compare(score, other.score);
+        }
+        if (entry.tokens.length != other.entry.tokens.length) {
+            return Integer.compare(other.entry.tokens.length, entry.tokens.length);
+        }
+        return Integer.compare(other.entry.product.getProductId(), entry.product.getProductId());
+    }
+
+    private synchronized void index(Product product) {
+        unindex(product.getProductId());
+
+        String[] tokens = tokenize(product.getName());
+        for (String token : tokens) {
+            terms.computeIfAbsent(token, key -> ConcurrentHashMap.newKeySet()).add(product.getProductId());
+        }
+        entries.put(product.getProductId(), new Entry(product, tokens));
+    }
+
+    private synchronized void updateStock(int productId, int stock) {
+        Entry entry = entries.get(productId);
+        if (entry != null) {
+            Product product = new Product(entry.product);
+            product.setStock(stock);
+            entries.put(productId, new Entry(product, entry.tokens));
+        }
+    }
+
+    private synchronized void unindex(int productId) {
+        Entry entry = entries.remove(productId);
+        if (entry == null) {
+            return;
+        }
+        for (String token : entry.tokens) {
+            Set<Integer> ids = terms.get(token);
+            if (ids != null) {
+                ids.remove(productId);
+                if (ids.isEmpty()) {
+                    terms.remove(token);
+                }
+            }
+        }
+    }
+
+    /*
+    * Minusculas, sin acentos y separado por todo lo que no sea letra o numero, asi "Café" y
+    * "cafe" son la misma palabra. Las palabras se guardan en el orden del nombre y sin repetir.
+    * */
+    static String[] tokenize(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        String normalized = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        return Arrays.stream(SEPARATORS.split(normalized))
+                .filter(token -> !token.isEmpty())
+                .distinct()
+                .toArray(String[]::new);
+    }
+
+    private static final class Entry {
+        private final Product product;
+        private final String[] tokens;
+
+        private Entry(Product product, String[] tokens) {
+            this.product = product;
+            this.tokens = tokens;
+        }
+    }
+
+    private static final class Hit {
+        private final Entry entry;
+        private final int score;
+
+        private Hit(Entry entry, int score) {
+            this.entry = entry;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.platzi.market.persistence.stock;
+
+import com.platzi.market.domain.Product;
+import com.platzi.market.domain.event.ProductChangedEvent;
+import com.platzi.market.domain.event.StockLevelChangedEvent;
+import com.platzi.market.persistence.crud.ProductoCrudRepository;
+import com.platzi.market.persistence.mapper.ProductMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/*
+* Productos activos con stock menor a platzi.stock.low-stock.tracked-below, ordenados por stock.
+*
+* byStock    llaves (stock << 32 | idProducto) ordenadas; los productos con stock menor a un umbral
+*            son el headSet de (umbral << 32), sin recorrer la tabla productos.
+* products   idProducto => producto, con el stock actual, para responder sin ir a la BD y para
+*            saber cual era la llave anterior al cambiar el stock.
+* versions   idProducto => version del ultimo evento aplicado. Los eventos de dos compras llegan
+*            en cualquier orden; uno con version menor traeria un stock ya reemplazado y se ignora.
+*
+* Se llena al arrancar con una sola consulta y despues se mantiene con los ProductChangedEvent.
+* Cada cambio de stock que involucra al indice publica un StockLevelChangedEvent.
+*
+* Umbrales mayores al limite, o consultas antes de terminar de construirlo, van a la BD.
+* */
+@Component
+public class LowStockIndex {
+
+    // track devuelve STALE cuando descarta un evento atrasado
+    private static final Product STALE = new Product();
+
+    private final ConcurrentSkipListSet<Long> byStock = new ConcurrentSkipListSet<>();
+    private final Map<Integer, Product> products = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> versions = new HashMap<>();
+
+    private volatile boolean ready;
+
+    @Value("${platzi.stock.low-stock.tracked-below}")
+    private int trackedBelow;
+
+    @Autowired
+    private ProductoCrudRepository productoCrudRepository;
+
+    @Autowired
+    private ProductMapper mapper;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        productoCrudRepository.findByCantidadStockLessThanAndEstado(trackedBelow, true)
+                .ifPresent(productos -> mapper.toProducts(productos).forEach(product -> track(product, 0)));
+        ready = true;
+    }
+
+    public boolean covers(int quantity) {
+        return ready && quantity <= trackedBelow;
+    }
+
+    public int getTrackedBelow() {
+        return trackedBelow;
+    }
+
+    /*
+    * Productos con stock menor a quantity, de menor a mayor stock.
+    * */
+    public List<Product> getBelow(int quantity) {
+        if (quantity <= 0) {
+            return Collections.emptyList();
+        }
+        List<Product> below = new ArrayList<>();
+        for (long key : byStock.headSet(key(quantity, 0))) {
+            Product product = products.get(productId(key));
+            if (product != null) {
+                below.add(product);
+            }
+        }
+        return below;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        switch (event.getType()) {
+            case CREATED:
+            case UPDATED:
+                changed(event.getProduct(), event.getVersion());
+                break;
+            case DELETED:
+                untrack(event.getProductId(), event.getVersion());
+                break;
+            case STOCK_CHANGED:
+                stockChanged(event.getProductId(), event.getStock(), event.getVersion());
+                break;
+        }
+    }
+
+    private void changed(Product product, long version) {
+        Product tracked = products.get(product.getProductId());
+        if (!product.isActive()) {
+            untrack(product.getProductId(), version);
+            return;
+        }
+        if (tracked != null || product.getStock() < trackedBelow) {
+            Product copy = new Product(product);
+            Product previous = track(copy, version);
+            if (previous != STALE) {
+                publish(copy, previous);
+            }
+        }
+    }
+
+    /*
+    * Un producto que baja del limite no esta en el indice, se carga de la BD una sola vez.
+    * */
+    private void stockChanged(int productId, int stock, long version) {
+        Product tracked = products.get(productId);
+        if (tracked == null && stock >= trackedBelow) {
+            return;
+        }
+
+        Product product;
+        if (tracked != null) {
+            product = new Product(tracked);
+        } else if (stale(productId, version)) {
+            return;
+        } else {
+            product = productoCrudRepository.findById(productId).map(mapper::toProduct).orElse(null);
+            if (product == null || !product.isActive()) {
+                return;
+            }
+        }
+        product.setStock(stock);
+        Product previous = track(product, version);
+        if (previous != STALE) {
+            publish(product, previous);
+        }
+    }
+
+    private void publish(Product product, Product previous) {
+        int previousStock = previous != null ? previous.getStock() : trackedBelow;
+        if (previousStock != product.getStock()) {
+            eventPublisher.publishEvent(new StockLevelChangedEvent(product, previousStock, product.getStock()));
+        }
+    }
+
+    /*
+    * Devuelve el producto que estaba en el indice antes del cambio (null si no estaba), o STALE si
+    * ya se aplico un cambio mas reciente del producto y este se descarto.
+    * */
+    private synchronized Product track(Product product, long version) {
+        if (!advance(product.getProductId(), version)) {
+            return STALE;
+        }
+        Product previous = products.get(product.getProductId());
+        if (previous != null) {
+            byStock.remove(key(previous.getStock(), previous.getProductId()));
+        }
+        if (product.getStock() < trackedBelow) {
+            products.put(product.getProductId(), product);
+            byStock.add(key(product.getStock(), product.getProductId()));
+        } else {
+            products.remove(product.getProductId());
+        }
+        return previous;
+    }
+
+    private synchronized void untrack(int productId, long version) {
+        if (!advance(productId, version)) {
+            return;
+        }
+        Product previous = products.remove(productId);
+        if (previous != null) {
+            byStock.remove(key(previous.getStock(), productId));
+        }
+    }
+
+    // Solo evita ir a la BD por un evento atrasado, track vuelve a revisar la version
+    private synchronized boolean stale(int productId, long version) {
+        Long applied = versions.get(productId);
+        return applied != null && applied >= version;
+    }
+
+    /*
+    * La carga inicial usa la version 0: si un evento llego antes, sus datos son mas recientes.
+    * */
+    private boolean advance(int productId, long version) {
+        if (stale(productId, version)) {
+            return false;
+        }
+        versions.put(productId, version);
+        return true;
+    }
+
+    private static long key(int stock, int productId) {
+        return ((long) stock << 32) | (productId & 0xffffffffL);
+    }
+
+    private static int productId(long key) {
+        return (int) key;
+    }
+}
@@ -0,0 +1,136 @@
+package com.platzi.market.web.async;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/*
+* Ejecutor acotado de un subsistema (catalogo, compras, autenticacion).
+*
+* Admite a lo mucho threads + queue tareas a la vez: threads se ejecutan y el resto espera en la
+* cola. Una tarea que no cabe se rechaza de inmediato con RejectedExecutionException (503), asi la
+* lentitud de un subsistema no consume los hilos ni la cola de los demas.
+*
+* Con hilos virtuales no hay cola: todas las tareas admitidas se ejecutan a la vez y el limite real
+* de concurrencia contra la BD lo pone el pool de conexiones.
+*
+* La tarea se ejecuta con el SecurityContext de la peticion (usuario autenticado).
+*
+* supply es para las consultas que devuelven un resultado; stream para las respuestas que se escriben
+* conforme salen del cursor de la BD.
+*
+* Metricas (tag name): platzi.bulkhead.active, platzi.bulkhead.queued y platzi.bulkhead.rejected.
+* */
+public class Bulkhead {
+
+    private final String name;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int capacity;
+    private final int threads;
+    private final boolean virtual;
+    private final Counter rejected;
+
+    public Bulkhead(String name, ExecutorService executor, int threads, int queue, boolean virtual, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.executor = executor;
+        this.threads = threads;
+        this.capacity = threads + queue;
+        this.permits = new Semaphore(capacity);
+        this.virtual = virtual;
+
+        this.rejected = Counter.builder("platzi.bulkhead.rejected").tag("name", name).register(meterRegistry);
+        Gauge.builder("platzi.bulkhead.active", this, Bulkhead::active).tag("name", name).register(meterRegistry);
+        Gauge.builder("platzi.bulkhead.queued", this, Bulkhead::queued).tag("name", name).register(meterRegistry);
+    }
+
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        acquire();
+        SecurityContext context = SecurityContextHolder.getContext();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                SecurityContextHolder.setContext(context);
+                try {
+                    return task.get();
+                } finally {
+                    SecurityContextHolder.clearContext();
+                    permits.release();
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    /*
+    * body escribe en la respuesta desde un hilo del Bulkhead y la peticion queda asincrona hasta que
+    * termina o pasan timeout ms, en lugar del spring.mvc.async.request-timeout de las demas. El
+    * permiso se toma en el hilo de la peticion, asi un Bulkhead lleno responde 503 antes de empezar
+    * la respuesta.
+    * */
+    public WebAsyncTask<Void> stream(long timeout, HttpServletResponse response, StreamingResponseBody body) {
+        acquire();
+        SecurityContext context = SecurityContextHolder.getContext();
+        Callable<Void> task = () -> {
+            SecurityContextHolder.setContext(context);
+            try {
+                body.writeTo(response.getOutputStream());
+                response.flushBuffer();
+                return null;
+            } finally {
+                SecurityContextHolder.clearContext();
+                permits.release();
+            }
+        };
+        return new WebAsyncTask<>(timeout, new TaskExecutorAdapter(runnable -> {
+            try {
+                executor.execute(runnable);
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                rejected.increment();
+                throw e;
+            }
+        }), task);
+    }
+
+    /*
+    * Los beans @Bean con un metodo shutdown() lo llaman al cerrar el contexto.
+    * */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void acquire() {
+        if (!permits.tryAcquire()) {
+            rejected.increment();
+            throw new RejectedExecutionException("Bulkhead " + name + " is full");
+        }
+    }
+
+    private double inFlight() {
+        return capacity - permits.availablePermits();
+    }
+
+    private double active() {
+        return virtual ? inFlight() : Math.min(inFlight(), threads);
+    }
+
+    private double queued() {
+        return virtual ? 0 : Math.max(0, inFlight() - threads);
+    }
+}
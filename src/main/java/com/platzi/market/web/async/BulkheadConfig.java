@@ -0,0 +1,95 @@
+package com.platzi.market.web.async;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+* Un Bulkhead por subsistema, los controladores ejecutan en ellos el trabajo bloqueante (JPA) y
+* devuelven un CompletableFuture; el hilo de Tomcat queda libre mientras tanto.
+*
+* Con platzi.bulkhead.virtual-threads=true y un JDK que tenga hilos virtuales
+* (Executors.newVirtualThreadPerTaskExecutor) se usan en lugar de pools fijos. Se busca por
+* reflexion porque el proyecto compila con Java 11; si no existe se usan los pools fijos.
+* */
+@Configuration
+public class BulkheadConfig {
+
+    public static final String CATALOG = "catalogBulkhead";
+    public static final String PURCHASE = "purchaseBulkhead";
+    public static final String AUTH = "authBulkhead";
+    public static final String ANALYTICS = "analyticsBulkhead";
+    public static final String STREAMING = "streamingBulkhead";
+
+    @Value("${platzi.bulkhead.virtual-threads}")
+    private boolean virtualThreads;
+
+    @Bean(CATALOG)
+    public Bulkhead catalogBulkhead(@Value("${platzi.bulkhead.catalog.threads}") int threads,
+                                    @Value("${platzi.bulkhead.catalog.queue}") int queue,
+                                    MeterRegistry meterRegistry) {
+        return bulkhead("catalog", threads, queue, meterRegistry);
+    }
+
+    @Bean(PURCHASE)
+    public Bulkhead purchaseBulkhead(@Value("${platzi.bulkhead.purchase.threads}") int threads,
+                                     @Value("${platzi.bulkhead.purchase.queue}") int queue,
+                                     MeterRegistry meterRegistry) {
+        return bulkhead("purchase", threads, queue, meterRegistry);
+    }
+
+    @Bean(AUTH)
+    public Bulkhead authBulkhead(@Value("${platzi.bulkhead.auth.threads}") int threads,
+                                 @Value("${platzi.bulkhead.auth.queue}") int queue,
+                                 MeterRegistry meterRegistry) {
+        return bulkhead("auth", threads, queue, meterRegistry);
+    }
+
+    @Bean(ANALYTICS)
+    public Bulkhead analyticsBulkhead(@Value("${platzi.bulkhead.analytics.threads}") int threads,
+                                      @Value("${platzi.bulkhead.analytics.queue}") int queue,
+                                      MeterRegistry meterRegistry) {
+        return bulkhead("analytics", threads, queue, meterRegistry);
+    }
+
+    /*
+    * Respuestas que recorren un cursor de la BD completo (/products/stream, /purchases/export).
+    * Tienen su propio Bulkhead para que una exportacion larga no ocupe los hilos del catalogo o de
+    * las compras.
+    * */
+    @Bean(STREAMING)
+    public Bulkhead streamingBulkhead(@Value("${platzi.bulkhead.streaming.threads}") int threads,
+                                      @Value("${platzi.bulkhead.streaming.queue}") int queue,
+                                      MeterRegistry meterRegistry) {
+        return bulkhead("streaming", threads, queue, meterRegistry);
+    }
+
+    private Bulkhead bulkhead(String name, int threads, int queue, MeterRegistry meterRegistry) {
+        ExecutorService virtual = virtualThreads ? newVirtualThreadExecutor() : null;
+        if (virtual != null) {
+            return new Bulkhead(name, virtual, threads, queue, true, meterRegistry);
+        }
+        return new Bulkhead(name, Executors.newFixedThreadPool(threads, threadFactory(name)), threads, queue, false, meterRegistry);
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> new Thread(runnable, name + "-bulkhead-" + count.incrementAndGet());
+    }
+}
@@ -0,0 +1,74 @@
+package com.platzi.market.web.controller;
+
+import com.platzi.market.domain.dto.CategorySales;
+import com.platzi.market.domain.dto.PaymentMethodSales;
+import com.platzi.market.domain.dto.ProductSales;
+import com.platzi.market.domain.service.SalesAnalyticsService;
+import com.platzi.market.web.async.Bulkhead;
+import com.platzi.market.web.async.BulkheadConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/*
+* Agregados de ventas sobre el rango de dias [from, to] (por defecto los ultimos 30 dias).
+*
+* Se responden desde la foto en memoria de las ventas; mientras se carga al arrancar se responde
+* 503 con Retry-After.
+* */
+@RestController
+@RequestMapping("/analytics")
+public class AnalyticsController {
+
+    private static final String RETRY_AFTER_SECONDS = "30";
+
+    @Autowired
+    private SalesAnalyticsService salesAnalyticsService;
+
+    /*
+    * Cada consulta ya se reparte entre varios hilos, el Bulkhead limita cuantas corren a la vez.
+    * */
+    @Autowired
+    @Qualifier(BulkheadConfig.ANALYTICS)
+    private Bulkhead analytics;
+
+    @GetMapping("/top-products")
+    public CompletableFuture<ResponseEntity<List<ProductSales>>> getTopProducts(@RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                               @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                                               @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return query(() -> salesAnalyticsService.getTopProducts(from, to, limit));
+    }
+
+    @GetMapping("/categories")
+    public CompletableFuture<ResponseEntity<List<CategorySales>>> getSalesByCategory(@RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                                    @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return query(() -> salesAnalyticsService.getSalesByCategory(from, to));
+    }
+
+    @GetMapping("/payment-methods")
+    public CompletableFuture<ResponseEntity<List<PaymentMethodSales>>> getPaymentMethodMix(@RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                                          @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return query(() -> salesAnalyticsService.getPaymentMethodMix(from, to));
+    }
+
+    private <T> CompletableFuture<ResponseEntity<T>> query(Supplier<T> supplier) {
+        if (!salesAnalyticsService.isReady()) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                    .build());
+        }
+        return analytics.supply(() -> new ResponseEntity<>(supplier.get(), HttpStatus.OK));
+    }
+}
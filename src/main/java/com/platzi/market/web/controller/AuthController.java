@@ -2,44 +2,63 @@ package com.platzi.market.web.controller;
 
 import com.platzi.market.domain.dto.AuthenticationRequest;
 import com.platzi.market.domain.dto.AuthenticationResponse;
-import com.platzi.market.domain.service.PlatziUserDetailsService;
+import com.platzi.market.web.async.Bulkhead;
+import com.platzi.market.web.async.BulkheadConfig;
 import com.platzi.market.web.security.JWTUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("/auth")
 public class AuthController {
 
+    private static final Logger log = LoggerFactory.getLogger(AuthController.class);
+
     @Autowired
     private AuthenticationManager authenticationManager;
 
     @Autowired
-    private PlatziUserDetailsService platziUserDetailsService;
+    private JWTUtil jwtUtil;
 
+    /*
+    * La autenticacion tiene su propio Bulkhead, una saturacion de compras o del catalogo no la deja
+    * sin hilos.
+    * */
     @Autowired
-    private JWTUtil jwtUtil;
+    @Qualifier(BulkheadConfig.AUTH)
+    private Bulkhead auth;
 
     @PostMapping("/authenticate")
-    public ResponseEntity<AuthenticationResponse> createToken(@RequestBody AuthenticationRequest request) {
-        try {
-            authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(request.getUsername(), request.getPassword()));
-            UserDetails userDetails = platziUserDetailsService.loadUserByUsername(request.getUsername());
-            String jwt = jwtUtil.generateToken(userDetails);
-
-            return new ResponseEntity<>(new AuthenticationResponse(jwt), HttpStatus.OK);
-        } catch (BadCredentialsException e) {
-            e.printStackTrace(System.out);
-            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
-        }
+    public CompletableFuture<ResponseEntity<AuthenticationResponse>> createToken(@RequestBody AuthenticationRequest request) {
+        return auth.supply(() -> {
+            try {
+                // El AuthenticationManager ya cargo el usuario, no es necesario volver a buscarlo
+                Authentication authentication = authenticationManager.authenticate(
+                        new UsernamePasswordAuthenticationToken(request.getUsername(), request.getPassword()));
+                UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+                String jwt = jwtUtil.generateToken(userDetails);
+
+                return new ResponseEntity<>(new AuthenticationResponse(jwt), HttpStatus.OK);
+            } catch (BadCredentialsException e) {
+                // Credenciales invalidas es un caso esperado, basta una linea sin la traza
+                log.info("Authentication failed for {}", request.getUsername());
+                return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+            }
+        });
     }
 }
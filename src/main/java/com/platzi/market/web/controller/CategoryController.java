@@ -0,0 +1,44 @@
+package com.platzi.market.web.controller;
+
+import com.platzi.market.domain.dto.CategorySummary;
+import com.platzi.market.domain.service.CategoryService;
+import com.platzi.market.web.async.Bulkhead;
+import com.platzi.market.web.async.BulkheadConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/*
+* Categorias con sus conteos de productos, para navegar el catalogo sin descargar los productos.
+* */
+@RestController
+@RequestMapping("/categories")
+public class CategoryController {
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    @Qualifier(BulkheadConfig.CATALOG)
+    private Bulkhead catalog;
+
+    @GetMapping
+    public CompletableFuture<ResponseEntity<List<CategorySummary>>> getAll() {
+        return catalog.supply(() -> new ResponseEntity<>(categoryService.getAll(), HttpStatus.OK));
+    }
+
+    @GetMapping("/{categoryId}/summary")
+    public CompletableFuture<ResponseEntity<CategorySummary>> getSummary(@PathVariable("categoryId") int categoryId) {
+        return catalog.supply(() -> categoryService.getSummary(categoryId)
+                .map(summary -> new ResponseEntity<>(summary, HttpStatus.OK))
+                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND)));
+    }
+}
@@ -1,7 +1,15 @@
 package com.platzi.market.web.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.platzi.market.domain.Product;
+import com.platzi.market.domain.dto.CatalogVersion;
+import com.platzi.market.domain.dto.ProductPage;
 import com.platzi.market.domain.service.ProductService;
+import com.platzi.market.web.async.Bulkhead;
+import com.platzi.market.web.async.BulkheadConfig;
+import com.platzi.market.web.sse.ProductChangeFeed;
+import com.platzi.market.web.sse.ScarceProductNotifier;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -9,19 +17,35 @@ import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import io.swagger.annotations.Authorization;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import springfox.documentation.annotations.ApiIgnore;
 
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 
 /*
@@ -35,12 +59,37 @@ import java.util.function.Predicate;
 @RequestMapping("/products")
 public class ProductController {
 
+    private static final String CATALOG_CACHE_CONTROL = CacheControl.noCache().cachePrivate().getHeaderValue();
+
     /*
     * Inyectamos el service ProductService
     * */
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ScarceProductNotifier scarceProductNotifier;
+
+    @Autowired
+    private ProductChangeFeed productChangeFeed;
+
+    /*
+    * Las consultas a la BD se ejecutan en el Bulkhead del catalogo, ver BulkheadConfig.
+    * */
+    @Autowired
+    @Qualifier(BulkheadConfig.CATALOG)
+    private Bulkhead catalog;
+
+    @Autowired
+    @Qualifier(BulkheadConfig.STREAMING)
+    private Bulkhead streaming;
+
+    @Value("${platzi.bulkhead.streaming.timeout-ms}")
+    private long streamTimeout;
+
     /*
     * @GetMapping, @PostMapping o @DeleteMapping: Indican que nuestros metodos seran expuestos
     * mediante alguno de estos metodo HTTP.
@@ -60,12 +109,139 @@ public class ProductController {
     @GetMapping("/")
 
     @ApiOperation(value = "Get all supermarket products", authorizations = { @Authorization(value="JWT") })
+    @ApiResponses({
+            @ApiResponse(code = 200, message = "OK"),
+            @ApiResponse(code = 304, message = "Not modified since the given ETag or date")
+    })
+
+    public CompletableFuture<ResponseEntity<List<Product>>> getAll(@ApiIgnore ServletWebRequest request) {
+        if (notModified(request, productService.getCatalogVersion())) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.NOT_MODIFIED));
+        }
+        return catalog.supply(() -> new ResponseEntity<>(productService.getAll(), HttpStatus.OK));
+    }
+
+    /*
+    * Paginacion por cursor: after es el nextPageToken de la pagina anterior (0 para la primera).
+    * */
+    @GetMapping("/page")
+
+    @ApiOperation(value = "Get a page of supermarket products ordered by ID", authorizations = { @Authorization(value="JWT") })
+    @ApiResponses({
+            @ApiResponse(code = 200, message = "OK")
+    })
+
+    public CompletableFuture<ResponseEntity<ProductPage>> getPage(@ApiParam(value = "The nextPageToken of the previous page", example = "0")
+                                               @RequestParam(value = "after", defaultValue = "0") int after,
+                                               @ApiParam(value = "Max number of products in the page", example = "100")
+                                               @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return catalog.supply(() -> new ResponseEntity<>(productService.getPage(after, limit), HttpStatus.OK));
+    }
+
+    /*
+    * Escribe el catalogo completo como un arreglo JSON conforme los productos salen del cursor
+    * de la BD, sin construir la lista en memoria. Se escribe en el Bulkhead de streaming.
+    * */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+
+    @ApiOperation(value = "Stream all supermarket products", authorizations = { @Authorization(value="JWT") })
+    @ApiResponses({
+            @ApiResponse(code = 200, message = "OK"),
+            @ApiResponse(code = 503, message = "Too many streams in progress")
+    })
+
+    public WebAsyncTask<Void> streamAll(HttpServletResponse response) {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+
+        return streaming.stream(streamTimeout, response, outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                productService.streamAll(product -> {
+                    try {
+                        generator.writeObject(product);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        });
+    }
+
+    /*
+    * Busca por palabras o prefijos del nombre (q=arroz dia) y por codigo de barras; los resultados
+    * vienen del indice en memoria, ordenados de mejor a peor coincidencia.
+    * */
+    @GetMapping("/search")
+
+    @ApiOperation(value = "Search supermarket products by name prefix or barcode", authorizations = { @Authorization(value="JWT") })
+    @ApiResponses({
+            @ApiResponse(code = 200, message = "OK")
+    })
+
+    public CompletableFuture<ResponseEntity<List<Product>>> search(@ApiParam(value = "Words, prefixes or barcode to search", required = true, example = "arr")
+                                                @RequestParam("q") String query,
+                                                @ApiParam(value = "Max number of products in the result", example = "20")
+                                                @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        return catalog.supply(() -> new ResponseEntity<>(productService.search(query, limit), HttpStatus.OK));
+    }
+
+    /*
+    * Productos activos con stock menor a quantity. Hasta platzi.stock.low-stock.tracked-below se
+    * responde desde memoria.
+    * */
+    @GetMapping("/scarce")
+
+    @ApiOperation(value = "Get active products with stock below a quantity", authorizations = { @Authorization(value="JWT") })
     @ApiResponses({
             @ApiResponse(code = 200, message = "OK")
     })
 
-    public ResponseEntity<List<Product>> getAll() {
-        return new ResponseEntity<>(productService.getAll(), HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<List<Product>>> getScarseProducts(@ApiParam(value = "Stock threshold", example = "10")
+                                                           @RequestParam(value = "quantity", defaultValue = "10") int quantity) {
+        return catalog.supply(() -> new ResponseEntity<>(productService.getScarseProducts(quantity).orElse(new LinkedList<>()), HttpStatus.OK));
+    }
+
+    /*
+    * Suscripcion SSE a los cruces del umbral, ver ScarceProductNotifier.
+    * */
+    @GetMapping(value = "/scarce/subscribe", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+
+    @ApiOperation(value = "Subscribe to products crossing a stock threshold", authorizations = { @Authorization(value="JWT") })
+    @ApiResponses({
+            @ApiResponse(code = 200, message = "OK"),
+            @ApiResponse(code = 400, message = "Threshold out of the tracked range")
+    })
+
+    public ResponseEntity<SseEmitter> subscribeScarse(@ApiParam(value = "Stock threshold", example = "10")
+                                                      @RequestParam(value = "threshold", defaultValue = "10") int threshold) {
+        if (!scarceProductNotifier.accepts(threshold)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(scarceProductNotifier.subscribe(threshold), HttpStatus.OK);
+    }
+
+    /*
+    * Feed SSE de cambios del catalogo, ver ProductChangeFeed. El cliente debe suscribirse antes de
+    * cargar el catalogo para no perder cambios entre ambas peticiones.
+    * */
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+
+    @ApiOperation(value = "Subscribe to product and stock changes", authorizations = { @Authorization(value="JWT") })
+    @ApiResponses({
+            @ApiResponse(code = 200, message = "OK"),
+            @ApiResponse(code = 503, message = "Too many subscribers")
+    })
+
+    public ResponseEntity<SseEmitter> changes(@ApiParam(value = "Last sequence already received", example = "0")
+                                              @RequestParam(value = "since", required = false) Long since,
+                                              @ApiParam(value = "Only changes of this category", example = "1")
+                                              @RequestParam(value = "categoryId", required = false) Integer categoryId,
+                                              @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        if (productChangeFeed.isFull()) {
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        return new ResponseEntity<>(productChangeFeed.subscribe(since != null ? since : lastEventId, categoryId), HttpStatus.OK);
     }
 
     /*
@@ -81,14 +257,37 @@ public class ProductController {
     @ApiOperation("Search a product with an ID")
     @ApiResponses({
             @ApiResponse(code = 200, message = "OK"),
+            @ApiResponse(code = 304, message = "Not modified since the given ETag or date"),
             @ApiResponse(code = 404, message = "Product not found")
     })
 
-    public ResponseEntity<Product> getById(@ApiParam(value = "The id of the product", required = true, example = "7")
-                                               @PathVariable("productId") int productId) {
-        return productService.getById(productId)
+    public CompletableFuture<ResponseEntity<Product>> getById(@ApiParam(value = "The id of the product", required = true, example = "7")
+                                               @PathVariable("productId") int productId,
+                                           @ApiIgnore ServletWebRequest request) {
+        if (notModified(request, productService.getProductVersion(productId))) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.NOT_MODIFIED));
+        }
+        return catalog.supply(() -> productService.getById(productId)
                 .map(product -> new ResponseEntity<>(product, HttpStatus.OK))
-                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND)));
+    }
+
+    /*
+    * Consulta de los lectores de las cajas, se responde desde el indice de codigos de barras.
+    * */
+    @GetMapping("/barcode/{code}")
+
+    @ApiOperation("Search a product with a barcode")
+    @ApiResponses({
+            @ApiResponse(code = 200, message = "OK"),
+            @ApiResponse(code = 404, message = "Product not found")
+    })
+
+    public CompletableFuture<ResponseEntity<Product>> getByBarcode(@ApiParam(value = "The barcode of the product", required = true, example = "7702511000014")
+                                                @PathVariable("code") String code) {
+        return catalog.supply(() -> productService.getByBarcode(code)
+                .map(product -> new ResponseEntity<>(product, HttpStatus.OK))
+                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND)));
     }
 
     /*
@@ -101,11 +300,16 @@ public class ProductController {
     @ApiOperation("Search products for the Category ID")
     @ApiResponses({
             @ApiResponse(code = 200, message = "OK"),
+            @ApiResponse(code = 304, message = "Not modified since the given ETag or date"),
             @ApiResponse(code = 404, message = "Category not found")
     })
 
-    public ResponseEntity<List<Product>> getByCategory(@ApiParam(value = "The id of the catgeory", required = true, example = "1")
-                                                           @PathVariable("categoryId") int categoryId) {
+    public CompletableFuture<ResponseEntity<List<Product>>> getByCategory(@ApiParam(value = "The id of the catgeory", required = true, example = "1")
+                                                           @PathVariable("categoryId") int categoryId,
+                                                       @ApiIgnore ServletWebRequest request) {
+        if (notModified(request, productService.getCategoryVersion(categoryId))) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.NOT_MODIFIED));
+        }
         /*
         Optional<List<Product>> products = productService.getByCategory(categoryId);
         if(products.isPresent() && !products.get().isEmpty()) {
@@ -114,9 +318,9 @@ public class ProductController {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
         */
-        return productService.getByCategory(categoryId).filter(Predicate.not(List::isEmpty))
+        return catalog.supply(() -> productService.getByCategory(categoryId).filter(Predicate.not(List::isEmpty))
                 .map(products -> new ResponseEntity<>(products, HttpStatus.OK))
-                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND)));
 
     }
 
@@ -132,8 +336,8 @@ public class ProductController {
             @ApiResponse(code = 201, message = "Product created")
     })
 
-    public ResponseEntity<Product> save(@RequestBody Product product) {
-        return new ResponseEntity<>(productService.save(product), HttpStatus.CREATED);
+    public CompletableFuture<ResponseEntity<Product>> save(@RequestBody Product product) {
+        return catalog.supply(() -> new ResponseEntity<>(productService.save(product), HttpStatus.CREATED));
     }
 
     /*
@@ -150,11 +354,29 @@ public class ProductController {
     })
 
 
-    public ResponseEntity delete(@PathVariable("productId") int productId) {
-        if(productService.delete(productId)) {
-            return new ResponseEntity(HttpStatus.OK);
-        } else {
-            return new ResponseEntity(HttpStatus.NOT_FOUND);
-        }
+    public CompletableFuture<ResponseEntity> delete(@PathVariable("productId") int productId) {
+        return catalog.supply(() -> {
+            if(productService.delete(productId)) {
+                return new ResponseEntity(HttpStatus.OK);
+            } else {
+                return new ResponseEntity(HttpStatus.NOT_FOUND);
+            }
+        });
+    }
+
+    /*
+    * Peticiones condicionales (If-None-Match / If-Modified-Since).
+    *
+    * La version se lee antes de cargar los productos: si cambian entre ambas lecturas se entrega
+    * el dato nuevo con el ETag viejo y la siguiente peticion simplemente no coincide. Al coincidir
+    * se responde 304 sin consultar la BD ni convertir entidades; en ambos casos checkNotModified
+    * agrega los encabezados ETag y Last-Modified.
+    *
+    * no-cache permite guardar la respuesta pero obliga a revalidarla, private porque depende del
+    * usuario autenticado.
+    * */
+    private boolean notModified(ServletWebRequest request, CatalogVersion version) {
+        request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, CATALOG_CACHE_CONTROL);
+        return request.checkNotModified(version.getETag(), version.getLastModified());
     }
 }
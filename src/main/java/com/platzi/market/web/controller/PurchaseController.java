@@ -1,41 +1,164 @@
 package com.platzi.market.web.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.platzi.market.domain.Purchase;
+import com.platzi.market.domain.dto.ClientSummary;
+import com.platzi.market.domain.dto.DailySales;
+import com.platzi.market.domain.dto.PurchaseBatchResult;
+import com.platzi.market.domain.exception.IdempotencyKeyReusedException;
+import com.platzi.market.domain.exception.InsufficientStockException;
+import com.platzi.market.domain.exception.InvalidPurchaseException;
+import com.platzi.market.domain.exception.ProductNotFoundException;
+import com.platzi.market.domain.exception.PurchaseInProgressException;
 import com.platzi.market.domain.service.PurchaseService;
+import com.platzi.market.web.async.Bulkhead;
+import com.platzi.market.web.async.BulkheadConfig;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 
 @RestController
 @RequestMapping("/purchases")
 public class PurchaseController {
 
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     @Autowired
     private PurchaseService purchaseService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /*
+    * Las consultas y escrituras se ejecutan en el Bulkhead de compras, ver BulkheadConfig.
+    * */
+    @Autowired
+    @Qualifier(BulkheadConfig.PURCHASE)
+    private Bulkhead purchases;
+
+    @Autowired
+    @Qualifier(BulkheadConfig.STREAMING)
+    private Bulkhead streaming;
+
+    @Value("${platzi.bulkhead.streaming.timeout-ms}")
+    private long streamTimeout;
+
     @GetMapping("/")
-    public ResponseEntity<List<Purchase>> getAll() {
-        return new ResponseEntity<>(purchaseService.getAll(), HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<List<Purchase>>> getAll() {
+        return purchases.supply(() -> new ResponseEntity<>(purchaseService.getAll(), HttpStatus.OK));
+    }
+
+    /*
+    * Exporta las compras del rango [from, to) en formato NDJSON (un objeto JSON por linea)
+    * conforme salen del cursor de la BD. Se escribe en el Bulkhead de streaming.
+    * */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public WebAsyncTask<Void> export(@RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                     @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                     HttpServletResponse response) {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+
+        return streaming.stream(streamTimeout, response, outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                // Sin separador por defecto entre objetos, cada uno termina con un salto de linea
+                generator.setRootValueSeparator(null);
+                purchaseService.streamByDate(from, to, purchase -> {
+                    try {
+                        generator.writeObject(purchase);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        });
     }
 
     @GetMapping("/client/{clientId}")
-    public ResponseEntity<List<Purchase>> getByClient(@PathVariable("clientId") String clientId) {
-        return purchaseService.getByClient(clientId).filter(Predicate.not(List::isEmpty))
-                .map(purchases -> new ResponseEntity<>(purchases, HttpStatus.OK))
-                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    public CompletableFuture<ResponseEntity<List<Purchase>>> getByClient(@PathVariable("clientId") String clientId) {
+        return purchases.supply(() -> purchaseService.getByClient(clientId).filter(Predicate.not(List::isEmpty))
+                .map(found -> new ResponseEntity<>(found, HttpStatus.OK))
+                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND)));
+    }
+
+    /*
+    * Totales del cliente desde clientes_resumen, no recorre sus compras.
+    * */
+    @GetMapping("/client/{clientId}/summary")
+    public CompletableFuture<ResponseEntity<ClientSummary>> getClientSummary(@PathVariable("clientId") String clientId) {
+        return purchases.supply(() -> purchaseService.getClientSummary(clientId)
+                .map(summary -> new ResponseEntity<>(summary, HttpStatus.OK))
+                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND)));
     }
 
+    /*
+    * Ventas por dia del rango [from, to] desde ventas_diarias.
+    * */
+    @GetMapping("/daily")
+    public CompletableFuture<ResponseEntity<List<DailySales>>> getDailySales(@RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                           @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return purchases.supply(() -> new ResponseEntity<>(purchaseService.getDailySales(from, to), HttpStatus.OK));
+    }
+
+    /*
+    * Con el encabezado Idempotency-Key un reintento de la terminal (por ejemplo tras un timeout)
+    * recibe la compra que ya se creo en lugar de crear otra. La clave es de cada cliente (clientId).
+    * 409 si la compra original sigue en curso despues de esperarla o si falta stock, 422 si la clave
+    * ya se uso con una compra distinta, 400 si la compra no es valida y 404 si incluye un producto
+    * que no existe.
+    * */
     @PostMapping("/")
-    public ResponseEntity<Purchase> save(@RequestBody Purchase purchase) {
-        return new ResponseEntity<>(purchaseService.save(purchase), HttpStatus.CREATED);
+    public CompletableFuture<ResponseEntity<Purchase>> save(@RequestBody Purchase purchase,
+                                                            @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > PurchaseService.MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        }
+        return purchases.supply(() -> {
+            try {
+                Purchase guardada = idempotencyKey != null
+                        ? purchaseService.save(purchase, idempotencyKey)
+                        : purchaseService.save(purchase);
+                return new ResponseEntity<>(guardada, HttpStatus.CREATED);
+            } catch (InvalidPurchaseException e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            } catch (ProductNotFoundException e) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            } catch (InsufficientStockException | PurchaseInProgressException e) {
+                return new ResponseEntity<>(HttpStatus.CONFLICT);
+            } catch (IdempotencyKeyReusedException e) {
+                return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
+            }
+        });
+    }
+
+    /*
+    * Guarda un lote de tickets, la respuesta indica el resultado de cada uno en el mismo orden.
+    * */
+    @PostMapping("/batch")
+    public CompletableFuture<ResponseEntity<PurchaseBatchResult>> saveAll(@RequestBody List<Purchase> tickets) {
+        return purchases.supply(() -> new ResponseEntity<>(purchaseService.saveAll(tickets), HttpStatus.OK));
     }
 }
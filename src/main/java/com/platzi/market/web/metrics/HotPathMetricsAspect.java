@@ -0,0 +1,100 @@
+package com.platzi.market.web.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+* Mide cada llamada a los repositorios de dominio (ProductRepository, PurchaseRepository) y a los
+* mappers de MapStruct, sin modificar sus implementaciones.
+*
+* platzi.repository y platzi.mapper son timers con histograma de percentiles, etiquetados por
+* clase, metodo y excepcion. Se exponen en /actuator/prometheus.
+* */
+@Aspect
+@Component
+public class HotPathMetricsAspect {
+
+    private static final String REPOSITORY_TIMER = "platzi.repository";
+    private static final String MAPPER_TIMER = "platzi.mapper";
+    private static final String NO_EXCEPTION = "none";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /*
+    * Los timers se crean una sola vez por clase y metodo. En Spring AOP el JoinPoint.StaticPart se
+    * crea en cada llamada (es el mismo join point), como llave el mapa creceria con cada llamada; por
+    * eso la llave es la clase y el Method, que no cambian: buscar el timer no arma ningun String.
+    * */
+    private final Map<Class<?>, Map<Method, MethodTimers>> timers = new ConcurrentHashMap<>();
+
+    @Around("execution(* com.platzi.market.domain.repository.*.*(..))")
+    public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(REPOSITORY_TIMER, joinPoint);
+    }
+
+    @Around("execution(* com.platzi.market.persistence.mapper.*.*(..))")
+    public Object timeMapper(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(MAPPER_TIMER, joinPoint);
+    }
+
+    private Object time(String name, ProceedingJoinPoint joinPoint) throws Throwable {
+        MethodTimers methodTimers = timers(name, joinPoint);
+        long inicio = System.nanoTime();
+
+        try {
+            Object resultado = joinPoint.proceed();
+            methodTimers.success.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+            return resultado;
+        } catch (Throwable e) {
+            methodTimers.failure(e.getClass()).record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private MethodTimers timers(String name, ProceedingJoinPoint joinPoint) {
+        Class<?> clase = joinPoint.getTarget().getClass();
+        Method metodo = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        return timers.computeIfAbsent(clase, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(metodo, key -> new MethodTimers(name, clase.getSimpleName(), metodo.getName()));
+    }
+
+    private final class MethodTimers {
+        private final String name;
+        private final String clase;
+        private final String metodo;
+        private final Timer success;
+        private final Map<Class<?>, Timer> failures = new ConcurrentHashMap<>();
+
+        private MethodTimers(String name, String clase, String metodo) {
+            this.name = name;
+            this.clase = clase;
+            this.metodo = metodo;
+            this.success = timer(NO_EXCEPTION);
+        }
+
+        private Timer failure(Class<?> exception) {
+            return failures.computeIfAbsent(exception, key -> timer(key.getSimpleName()));
+        }
+
+        private Timer timer(String exception) {
+            return Timer.builder(name)
+                    .tag("class", clase)
+                    .tag("method", metodo)
+                    .tag("exception", exception)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -1,17 +1,38 @@
 package com.platzi.market.web.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JWTUtil {
 
-    private static final String KEY = "pl4tz1";
+    // Visible en el paquete para firmar tokens de prueba
+    static final String KEY = "pl4tz1";
+
+    // Numero maximo de tokens verificados que se mantienen en memoria
+    private static final int VERIFIED_TOKENS_SIZE = 10_000;
+
+    /*
+    * Tokens cuya firma ya se verifico, la llave es el hash SHA-256 del token para no guardar
+    * tokens completos en memoria. Cada entrada expira junto con el token.
+    * */
+    private final Cache<String, Claims> verifiedTokens = Caffeine.newBuilder()
+            .maximumSize(VERIFIED_TOKENS_SIZE)
+            .expireAfter(new TokenExpiry())
+            .build();
 
     public String generateToken(UserDetails userDetails) {
         return Jwts.builder().setSubject(userDetails.getUsername()).setIssuedAt(new Date())
@@ -19,20 +40,87 @@ public class JWTUtil {
                 .signWith(SignatureAlgorithm.HS256, KEY).compact();
     }
 
+    /*
+    * Verifica la firma y lee los claims del token una sola vez, las siguientes peticiones con el
+    * mismo token los obtienen de la cache. Lanza una JwtException si el token no es valido.
+    * */
+    public Claims getVerifiedClaims(String token) {
+        return getVerifiedClaims(token, getTokenId(token));
+    }
+
+    /*
+    * Igual que la anterior con el id del token (getTokenId) ya calculado, para quien tambien lo
+    * necesita y no quiere calcular el hash dos veces.
+    * */
+    public Claims getVerifiedClaims(String token, String tokenId) {
+        Claims claims = verifiedTokens.getIfPresent(tokenId);
+
+        if (claims == null) {
+            claims = getClaims(token);
+            verifiedTokens.put(tokenId, claims);
+        }
+        return claims;
+    }
+
+    /*
+    * Identifica la sesion (cada inicio de sesion recibe su token) sin guardar el token completo.
+    * Es el hash SHA-256 del token, la misma llave de la cache de tokens verificados.
+    * */
+    public String getTokenId(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // Toda JVM debe incluir SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public boolean validateToken(Claims claims, UserDetails userDetails) {
+        return userDetails.getUsername().equals(claims.getSubject()) && !isTokenExpired(claims);
+    }
+
     public boolean validateToken(String token, UserDetails userDetails) {
-        return userDetails.getUsername().equals(extractUsername(token)) && !isTokenExpired(token);
+        return validateToken(getVerifiedClaims(token), userDetails);
     }
 
     public String extractUsername(String token) {
-        return getClaims(token).getSubject();
+        return getVerifiedClaims(token).getSubject();
     }
 
     public boolean isTokenExpired(String token) {
-        return getClaims(token).getExpiration().before(new Date());
+        return isTokenExpired(getVerifiedClaims(token));
     }
 
-    private Claims getClaims(String token) {
+    private boolean isTokenExpired(Claims claims) {
+        return claims.getExpiration().before(new Date());
+    }
+
+    // Verificacion sin cache, visible en el paquete para medirla en los benchmarks
+    Claims getClaims(String token) {
         return Jwts.parser().setSigningKey(KEY).parseClaimsJws(token).getBody();
     }
 
+    /*
+    * La entrada vive hasta la fecha de expiracion del token, leerla no extiende su vida.
+    * */
+    private static class TokenExpiry implements Expiry<String, Claims> {
+
+        @Override
+        public long expireAfterCreate(String hash, Claims claims, long currentTime) {
+            long restante = claims.getExpiration().getTime() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(restante, 0));
+        }
+
+        @Override
+        public long expireAfterUpdate(String hash, Claims claims, long currentTime, long currentDuration) {
+            return expireAfterCreate(hash, claims, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String hash, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
 }
@@ -29,7 +29,9 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
     @Override
     protected void configure(HttpSecurity http) throws Exception {
-        http.csrf().disable().authorizeRequests().antMatchers("/**/authenticate").permitAll()
+        // health y prometheus quedan abiertos para el balanceador y el scraper de Prometheus; solo
+        // existen en el puerto de administracion (management.server.port), que no es publico
+        http.csrf().disable().authorizeRequests().antMatchers("/**/authenticate", "/actuator/health", "/actuator/prometheus").permitAll()
                 .anyRequest().authenticated().and().sessionManagement()
                 .sessionCreationPolicy(SessionCreationPolicy.STATELESS);
         http.addFilterBefore(jwtFilterRequest, UsernamePasswordAuthenticationFilter.class);
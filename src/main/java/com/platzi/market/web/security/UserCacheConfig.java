@@ -0,0 +1,58 @@
+package com.platzi.market.web.security;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.platzi.market.domain.service.PlatziUserDetailsService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.CachingUserDetailsService;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.cache.NullUserCache;
+import org.springframework.security.core.userdetails.cache.SpringCacheBasedUserCache;
+
+/*
+* Cache de UserDetails para el filtro JWT, evita consultar el almacen de usuarios en cada peticion.
+*
+* UserCache es la interfaz de Spring Security, para usar otra implementacion basta con
+* reemplazar el bean. Con platzi.security.user-cache.enabled=false se usa NullUserCache.
+*
+* El unico usuario esta fijo en PlatziUserDetailsService y no hay forma de cambiar sus credenciales
+* o permisos, por eso nada saca entradas de la cache y solo expiran con el TTL del spec. Cuando los
+* usuarios vengan de un almacen real, quien los modifique debe llamar a
+* UserCache.removeUserFromCache(username).
+* */
+@Configuration
+public class UserCacheConfig {
+
+    public static final String USERS = "users";
+
+    /*
+    * La cache "users" tiene su propio tamaño y TTL, distintos a los de las caches de productos.
+    * Al registrarse en el CacheManager sus metricas quedan en /actuator/metrics/cache.*
+    * */
+    @Bean
+    public CacheManagerCustomizer<CaffeineCacheManager> usersCacheCustomizer(
+            @Value("${platzi.security.user-cache.spec}") String spec) {
+        return cacheManager -> cacheManager.registerCustomCache(USERS, Caffeine.from(spec).build());
+    }
+
+    @Bean
+    public UserCache userCache(CacheManager cacheManager,
+                               @Value("${platzi.security.user-cache.enabled}") boolean enabled) {
+        if (!enabled) {
+            return new NullUserCache();
+        }
+        return new SpringCacheBasedUserCache(cacheManager.getCache(USERS));
+    }
+
+    @Bean
+    public CachingUserDetailsService cachingUserDetailsService(PlatziUserDetailsService platziUserDetailsService,
+                                                               UserCache userCache) {
+        CachingUserDetailsService service = new CachingUserDetailsService(platziUserDetailsService);
+        service.setUserCache(userCache);
+        return service;
+    }
+}
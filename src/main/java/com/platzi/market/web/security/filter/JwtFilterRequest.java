@@ -1,8 +1,11 @@
 package com.platzi.market.web.security.filter;
 
-import com.platzi.market.domain.service.PlatziUserDetailsService;
 import com.platzi.market.web.security.JWTUtil;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.CachingUserDetailsService;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -22,27 +25,52 @@ public class JwtFilterRequest extends OncePerRequestFilter {
     @Autowired
     private JWTUtil jwtUtil;
 
+    /*
+    * PlatziUserDetailsService con la cache de usuarios al frente (UserCacheConfig)
+    * */
     @Autowired
-    private PlatziUserDetailsService platziUserDetailsService;
+    private CachingUserDetailsService userDetailsService;
+
+    private final Timer filterTimer;
+
+    /*
+    * Tiempo que el filtro agrega a cada peticion autenticada (sin contar el resto de la cadena).
+    * */
+    public JwtFilterRequest(MeterRegistry meterRegistry) {
+        this.filterTimer = Timer.builder("platzi.security.jwt.filter")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         String authorizationHeader = request.getHeader("Authorization");
 
         if(authorizationHeader != null && authorizationHeader.startsWith("Bearer")) {
-            String jwt = authorizationHeader.substring(7);
-            String username = jwtUtil.extractUsername(jwt);
+            // Se detiene en finally: un token invalido (JwtException) o un usuario inexistente tambien cuentan
+            Timer.Sample sample = Timer.start();
+            try {
+                String jwt = authorizationHeader.substring(7);
+                // El hash del token es la llave de la cache de tokens verificados y el id de la sesion
+                String tokenId = jwtUtil.getTokenId(jwt);
+                // La firma se verifica una sola vez por token, los claims se reutilizan abajo
+                Claims claims = jwtUtil.getVerifiedClaims(jwt, tokenId);
+                String username = claims.getSubject();
 
-            if(username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                UserDetails userDetails = platziUserDetailsService.loadUserByUsername(username);
+                if(username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+                    UserDetails userDetails = userDetailsService.loadUserByUsername(username);
 
-                if(jwtUtil.validateToken(jwt, userDetails)) {
-                    UsernamePasswordAuthenticationToken authToken =
-                            new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
-                    authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                    if(jwtUtil.validateToken(claims, userDetails)) {
+                        // Las credenciales identifican la sesion, ReplicaRoutingDataSource las usa por terminal
+                        UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                                userDetails, tokenId, userDetails.getAuthorities());
+                        authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
 
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
+                        SecurityContextHolder.getContext().setAuthentication(authToken);
+                    }
                 }
+            } finally {
+                sample.stop(filterTimer);
             }
         }
 
@@ -0,0 +1,309 @@
+package com.platzi.market.web.sse;
+
+import com.platzi.market.domain.dto.ProductChange;
+import com.platzi.market.domain.event.ProductChangedEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+* Feed SSE de cambios de productos (creados, actualizados, eliminados y cambios de stock por compras).
+*
+* Los cambios se guardan en un buffer circular con una secuencia creciente. Un suscriptor no tiene
+* cola propia, solo la siguiente secuencia que le falta enviar; asi la memoria por cliente es
+* constante y un cliente lento no retiene eventos.
+*
+* Las peticiones SSE son asincronas, no ocupan un hilo del servidor mientras esperan. Los envios
+* los hace un pool pequeño: cada suscriptor con cambios pendientes se agenda una sola vez y el hilo
+* le envia todo lo que tenga pendiente. Si un suscriptor se atrasa mas que el buffer recibe un
+* evento "reset" y se cierra su conexion; debe volver a cargar el catalogo.
+*
+* Un envio bloquea al hilo mientras el cliente no lee (su buffer TCP esta lleno). Si un envio tarda
+* mas de platzi.changes.write-timeout-ms el suscriptor se cierra con error y no se vuelve a agendar;
+* mientras su hilo sigue bloqueado (hasta que el contenedor cierra la conexion) el pool tiene un hilo
+* extra, asi unos pocos clientes atascados no detienen a los demas.
+*
+* Para retomar, el cliente envia la ultima secuencia recibida en el encabezado Last-Event-ID
+* (EventSource lo hace solo) o en el parametro since.
+* */
+@Component
+public class ProductChangeFeed {
+
+    public static final String RESET = "reset";
+    private static final long HEARTBEAT_SECONDS = 20;
+
+    private final AtomicReferenceArray<ProductChange> buffer;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor sender;
+    private final ScheduledExecutorService heartbeat;
+    private final ExecutorService closer;
+    private final long timeout;
+    private final long writeTimeout;
+    private final int maxSubscribers;
+    private final int senderThreads;
+
+    /*
+    * Ultima secuencia escrita en el buffer. Arranca en un valor basado en la hora, asi la secuencia
+    * que guardo un cliente antes de reiniciar la aplicacion no se confunde con una nueva: no esta en
+    * el buffer y el cliente recibe un "reset".
+    * */
+    private volatile long lastSequence = System.currentTimeMillis() * 1000;
+
+    public ProductChangeFeed(@Value("${platzi.changes.buffer-size}") int bufferSize,
+                             @Value("${platzi.changes.sender-threads}") int senderThreads,
+                             @Value("${platzi.changes.max-subscribers}") int maxSubscribers,
+                             @Value("${platzi.changes.sse-timeout-ms}") long timeout,
+                             @Value("${platzi.changes.write-timeout-ms}") long writeTimeout,
+                             MeterRegistry meterRegistry) {
+        this.buffer = new AtomicReferenceArray<>(bufferSize);
+        this.maxSubscribers = maxSubscribers;
+        this.senderThreads = senderThreads;
+        this.timeout = timeout;
+        this.writeTimeout = TimeUnit.MILLISECONDS.toNanos(writeTimeout);
+        this.sender = new ThreadPoolExecutor(senderThreads, senderThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), threadFactory("product-changes-sse-"));
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(threadFactory("product-changes-heartbeat-"));
+        this.closer = Executors.newCachedThreadPool(threadFactory("product-changes-close-"));
+        heartbeat.scheduleAtFixedRate(this::heartbeat, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+        long checkInterval = Math.max(1, writeTimeout / 2);
+        heartbeat.scheduleAtFixedRate(this::closeStalled, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+
+        Gauge.builder("platzi.changes.subscribers", subscribers, Set::size).register(meterRegistry);
+        Gauge.builder("platzi.changes.sender.queue", sender, executor -> executor.getQueue().size()).register(meterRegistry);
+        Gauge.builder("platzi.changes.sender.stalled", sender, executor -> executor.getMaximumPoolSize() - senderThreads).register(meterRegistry);
+    }
+
+    /*
+    * Despues del commit, un cambio que se revierte nunca llega a los clientes.
+    * */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        append(event);
+        subscribers.forEach(this::schedule);
+    }
+
+    private synchronized void append(ProductChangedEvent event) {
+        long sequence = lastSequence + 1;
+        buffer.set(slot(sequence), new ProductChange(sequence, event, Instant.now()));
+        lastSequence = sequence;
+    }
+
+    public boolean isFull() {
+        return subscribers.size() >= maxSubscribers;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /*
+    * since es la ultima secuencia que el cliente ya tiene; null para recibir solo los cambios
+    * nuevos. categoryId filtra los cambios de una categoria.
+    * */
+    public SseEmitter subscribe(Long since, Integer categoryId) {
+        SseEmitter emitter = new SseEmitter(timeout);
+        long current = lastSequence;
+        long next = since != null ? since + 1 : current + 1;
+        boolean reset = next < oldestAvailable(current) || next > current + 1;
+
+        Subscriber subscriber = new Subscriber(emitter, categoryId, reset ? current + 1 : next, reset);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> subscribers.remove(subscriber));
+
+        subscribers.add(subscriber);
+        schedule(subscriber);
+        return emitter;
+    }
+
+    @PreDestroy
+    public void close() {
+        heartbeat.shutdownNow();
+        sender.shutdownNow();
+        closer.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    private void heartbeat() {
+        subscribers.forEach(subscriber -> {
+            subscriber.ping = true;
+            schedule(subscriber);
+        });
+    }
+
+    /*
+    * Cierra a los suscriptores con un envio en curso desde hace mas de writeTimeout y agrega un hilo
+    * al pool por cada uno (hasta duplicarlo), drain lo quita cuando el envio por fin termina. Si el
+    * envio termino mientras tanto el hilo se quita aqui; stalled decide cual de los dos lo hace.
+    *
+    * completeWithError espera a que termine el send en curso (ambos se sincronizan en el emitter),
+    * por eso se llama en otro hilo; si no, el primer suscriptor atascado detendria este hilo y los
+    * siguientes ya no se cerrarian.
+    * */
+    private void closeStalled() {
+        long now = System.nanoTime();
+        subscribers.forEach(subscriber -> {
+            long since = subscriber.sendingSince;
+            if (since != 0 && now - since > writeTimeout && subscribers.remove(subscriber)) {
+                if (resize(1)) {
+                    subscriber.stalled.set(true);
+                    if (subscriber.sendingSince == 0 && subscriber.stalled.compareAndSet(true, false)) {
+                        resize(-1);
+                    }
+                }
+                closer.execute(() -> subscriber.emitter.completeWithError(new IOException("Subscriber stopped reading")));
+            }
+        });
+    }
+
+    private synchronized boolean resize(int delta) {
+        int size = sender.getMaximumPoolSize() + delta;
+        if (size > senderThreads * 2) {
+            return false;
+        }
+        if (delta > 0) {
+            sender.setMaximumPoolSize(size);
+            sender.setCorePoolSize(size);
+        } else {
+            sender.setCorePoolSize(size);
+            sender.setMaximumPoolSize(size);
+        }
+        return true;
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.scheduled.compareAndSet(false, true)) {
+            try {
+                sender.execute(() -> drain(subscriber));
+            } catch (RuntimeException e) {
+                subscriber.scheduled.set(false);
+            }
+        }
+    }
+
+    /*
+    * Solo un hilo a la vez drena un suscriptor. Al terminar se vuelve a revisar la secuencia para
+    * no perder un cambio que llego mientras se liberaba la bandera.
+    * */
+    private void drain(Subscriber subscriber) {
+        do {
+            try {
+                subscriber.sendingSince = System.nanoTime();
+                send(subscriber);
+            } catch (IOException | IllegalStateException e) {
+                subscribers.remove(subscriber);
+                subscriber.emitter.completeWithError(e);
+                return;
+            } finally {
+                subscriber.sendingSince = 0;
+                subscriber.scheduled.set(false);
+                if (subscriber.stalled.compareAndSet(true, false)) {
+                    resize(-1);
+                }
+            }
+        } while (subscribers.contains(subscriber)
+                && subscriber.pending(lastSequence)
+                && subscriber.scheduled.compareAndSet(false, true));
+    }
+
+    private void send(Subscriber subscriber) throws IOException {
+        if (subscriber.reset) {
+            subscriber.reset = false;
+            subscriber.emitter.send(SseEmitter.event().id(String.valueOf(subscriber.next - 1)).name(RESET).data(subscriber.next - 1));
+        }
+        if (subscriber.ping) {
+            subscriber.ping = false;
+            subscriber.emitter.send(SseEmitter.event().comment("ping"));
+        }
+
+        long last = lastSequence;
+        while (subscriber.next <= last) {
+            ProductChange change = buffer.get(slot(subscriber.next));
+            if (change == null || change.getSequence() != subscriber.next) {
+                // El buffer ya sobreescribio cambios que este cliente no recibio
+                subscriber.emitter.send(SseEmitter.event().id(String.valueOf(last)).name(RESET).data(last));
+                subscribers.remove(subscriber);
+                subscriber.emitter.complete();
+                return;
+            }
+            if (subscriber.wants(change)) {
+                subscriber.emitter.send(SseEmitter.event()
+                        .id(String.valueOf(change.getSequence()))
+                        .name(change.getType().name().toLowerCase(Locale.ROOT))
+                        .data(change));
+            }
+            subscriber.next++;
+        }
+    }
+
+    private long oldestAvailable(long current) {
+        return Math.max(1, current - buffer.length() + 1);
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % buffer.length());
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final Integer categoryId;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // next y reset solo los modifica el hilo que tiene scheduled
+        private volatile long next;
+        private volatile boolean reset;
+        private volatile boolean ping;
+        // Inicio del envio en curso (System.nanoTime), 0 si no hay ninguno
+        private volatile long sendingSince;
+        // closeStalled agrego un hilo al pool por este suscriptor
+        private final AtomicBoolean stalled = new AtomicBoolean();
+
+        private Subscriber(SseEmitter emitter, Integer categoryId, long next, boolean reset) {
+            this.emitter = emitter;
+            this.categoryId = categoryId;
+            this.next = next;
+            this.reset = reset;
+        }
+
+        /*
+        * Un producto que se movio de categoria tambien se envia a la categoria anterior.
+        * */
+        private boolean wants(ProductChange change) {
+            return categoryId == null
+                    || categoryId == change.getCategoryId()
+                    || categoryId.equals(change.getPreviousCategoryId());
+        }
+
+        private boolean pending(long lastSequence) {
+            return next <= lastSequence || reset || ping;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.platzi.market.web.sse;
+
+import com.platzi.market.domain.dto.ScarceProductAlert;
+import com.platzi.market.domain.event.StockLevelChangedEvent;
+import com.platzi.market.domain.service.ProductService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+* Suscripciones SSE del tablero de reabastecimiento.
+*
+* Cada suscriptor indica un umbral; al conectarse recibe un evento "snapshot" con los productos que
+* ya estan por debajo y despues un "scarce" cuando un producto baja del umbral o un "restocked"
+* cuando vuelve a quedar igual o por encima.
+*
+* Los envios se hacen en un hilo propio, asi un cliente lento no detiene el commit de la compra
+* que publico el evento. Cada suscriptor tiene una cola de a lo mucho
+* platzi.stock.low-stock.max-pending avisos; si se llena, el suscriptor recibe un evento "reset" y se
+* cierra su conexion, al reconectarse recibe un snapshot nuevo.
+*
+* Un cliente que deja de leer bloquea al hilo en el envio. Si un envio tarda mas de
+* platzi.stock.low-stock.write-timeout-ms ese suscriptor se cierra y los envios pendientes de los
+* demas pasan a un hilo nuevo; el bloqueado termina cuando el contenedor cierra la conexion.
+* */
+@Component
+public class ScarceProductNotifier {
+
+    public static final String RESET = "reset";
+
+    @Value("${platzi.stock.low-stock.tracked-below}")
+    private int trackedBelow;
+
+    @Value("${platzi.stock.low-stock.sse-timeout-ms}")
+    private long timeout;
+
+    @Value("${platzi.stock.low-stock.max-pending}")
+    private int maxPending;
+
+    @Value("${platzi.stock.low-stock.write-timeout-ms}")
+    private long writeTimeout;
+
+    @Autowired
+    private ProductService productService;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private volatile ExecutorService sender = newSender();
+
+    /*
+    * completeWithError espera a que termine el send bloqueado (ambos se sincronizan en el emitter).
+    * Se llama en este pool para no detener al hilo de @Scheduled, que comparten todas las tareas
+    * programadas de la aplicacion.
+    * */
+    private final ExecutorService closer = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "scarce-products-sse-close");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Suscripcion con un envio en curso y desde cuando (System.nanoTime)
+    private volatile Subscription sending;
+    private volatile long sendingSince;
+
+    /*
+    * Solo se aceptan umbrales que el indice de stock bajo sigue, para los demas no se
+    * detectarian los cruces.
+    * */
+    public boolean accepts(int threshold) {
+        return threshold > 0 && threshold <= trackedBelow;
+    }
+
+    public SseEmitter subscribe(int threshold) {
+        SseEmitter emitter = new SseEmitter(timeout);
+        Subscription subscription = new Subscription(threshold, emitter, maxPending);
+
+        emitter.onCompletion(() -> subscriptions.remove(subscription));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> subscriptions.remove(subscription));
+
+        // El snapshot entra a la cola antes de registrar la suscripcion, asi ningun "scarce" o
+        // "restocked" llega al cliente antes que el
+        enqueue(subscription, SseEmitter.event().name("snapshot")
+                .data(productService.getScarseProducts(threshold).orElse(Collections.emptyList())));
+        subscriptions.add(subscription);
+        return emitter;
+    }
+
+    @EventListener
+    public void onStockLevelChanged(StockLevelChangedEvent event) {
+        for (Subscription subscription : subscriptions) {
+            String name;
+            if (event.crossedBelow(subscription.threshold)) {
+                name = "scarce";
+            } else if (event.crossedAbove(subscription.threshold)) {
+                name = "restocked";
+            } else {
+                continue;
+            }
+            ScarceProductAlert alert = new ScarceProductAlert(subscription.threshold, event.getPreviousStock(),
+                    event.getStock(), event.getProduct());
+            enqueue(subscription, SseEmitter.event().name(name).data(alert));
+        }
+    }
+
+    /*
+    * Si el envio en curso lleva mas de writeTimeout se cierra ese suscriptor y se cambia de hilo:
+    * shutdownNow devuelve los envios que esperaban detras del bloqueado y se agendan en el nuevo.
+    * */
+    @Scheduled(fixedDelayString = "${platzi.stock.low-stock.write-timeout-ms}")
+    public synchronized void closeStalled() {
+        Subscription stalled = sending;
+        if (stalled == null || System.nanoTime() - sendingSince <= TimeUnit.MILLISECONDS.toNanos(writeTimeout)) {
+            return;
+        }
+        sending = null;
+        subscriptions.remove(stalled);
+        closer.execute(() -> stalled.emitter.completeWithError(new IOException("Subscriber stopped reading")));
+
+        ExecutorService blocked = sender;
+        sender = newSender();
+        blocked.shutdownNow().forEach(sender::execute);
+    }
+
+    @PreDestroy
+    public void close() {
+        sender.shutdownNow();
+        closer.shutdownNow();
+        subscriptions.forEach(subscription -> subscription.emitter.complete());
+    }
+
+    private void enqueue(Subscription subscription, SseEmitter.SseEventBuilder event) {
+        if (!subscription.pending.offer(event)) {
+            // Cliente demasiado atrasado: se descartan sus avisos y se le pide volver a cargar
+            subscriptions.remove(subscription);
+            subscription.pending.clear();
+            subscription.reset = true;
+        }
+        schedule(subscription);
+    }
+
+    private void schedule(Subscription subscription) {
+        if (subscription.scheduled.compareAndSet(false, true)) {
+            try {
+                sender.execute(() -> drain(subscription));
+            } catch (RuntimeException e) {
+                subscription.scheduled.set(false);
+            }
+        }
+    }
+
+    /*
+    * Como en ProductChangeFeed, al terminar se vuelve a revisar la cola para no perder un aviso que
+    * llego mientras se liberaba la bandera.
+    * */
+    private void drain(Subscription subscription) {
+        do {
+            try {
+                if (subscription.reset) {
+                    subscription.reset = false;
+                    send(subscription, SseEmitter.event().name(RESET).data(subscription.threshold));
+                    subscription.emitter.complete();
+                    return;
+                }
+                SseEmitter.SseEventBuilder event;
+                while ((event = subscription.pending.poll()) != null) {
+                    send(subscription, event);
+                }
+            } finally {
+                subscription.scheduled.set(false);
+            }
+        } while ((!subscription.pending.isEmpty() || subscription.reset)
+                && subscription.scheduled.compareAndSet(false, true));
+    }
+
+    private void send(Subscription subscription, SseEmitter.SseEventBuilder event) {
+        sendingSince = System.nanoTime();
+        sending = subscription;
+        try {
+            subscription.emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            subscriptions.remove(subscription);
+            subscription.pending.clear();
+            subscription.emitter.completeWithError(e);
+        } finally {
+            // closeStalled pudo haber cambiado de hilo mientras tanto
+            if (sending == subscription) {
+                sending = null;
+            }
+        }
+    }
+
+    private static ExecutorService newSender() {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "scarce-products-sse");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static final class Subscription {
+        private final int threshold;
+        private final SseEmitter emitter;
+        private final Queue<SseEmitter.SseEventBuilder> pending;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean reset;
+
+        private Subscription(int threshold, SseEmitter emitter, int maxPending) {
+            this.threshold = threshold;
+            this.emitter = emitter;
+            this.pending = new ArrayBlockingQueue<>(maxPending);
+        }
+    }
+}
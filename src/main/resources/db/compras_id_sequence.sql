@@ -0,0 +1,7 @@
+-- Compra.idCompra reserva bloques de 50 ids (allocationSize = 50), la secuencia de la columna
+-- serial debe incrementar en la misma cantidad para que los ids no se repitan.
+--
+-- Mientras no se ejecute este script, hibernate.id.sequence.increment_size_mismatch_strategy=fix
+-- hace que Hibernate use el incremento de la BD (1), los inserts se siguen agrupando pero se llama
+-- a la secuencia por cada compra.
+ALTER SEQUENCE compras_id_compra_seq INCREMENT BY 50;
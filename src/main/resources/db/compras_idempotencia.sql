@@ -0,0 +1,17 @@
+-- Claves de idempotencia de POST /purchases (CompraIdempotenciaRepository). El cliente y la clave son
+-- la llave primaria para que dos reintentos concurrentes en distintos nodos no creen dos compras y
+-- para que la clave de un cliente nunca devuelva la compra de otro; no tiene llave foranea a compras
+-- porque se inserta antes de que Hibernate envie la compra. huella es el hash (SHA-256 en Base64) de
+-- la compra pedida, un reintento con otra compra recibe 422.
+-- Una tabla creada con la clave como unica llave se migra con compras_idempotencia_cliente.sql.
+CREATE TABLE IF NOT EXISTS compras_idempotencia (
+    id_cliente VARCHAR(20) NOT NULL,
+    clave VARCHAR(100) NOT NULL,
+    id_compra INTEGER NOT NULL,
+    huella VARCHAR(44),
+    fecha TIMESTAMP NOT NULL,
+    PRIMARY KEY (id_cliente, clave)
+);
+
+-- Limpieza periodica de las claves expiradas (DELETE ... WHERE fecha < ?)
+CREATE INDEX IF NOT EXISTS compras_idempotencia_fecha_idx ON compras_idempotencia (fecha);
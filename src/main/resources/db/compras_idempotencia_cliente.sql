@@ -0,0 +1,11 @@
+-- Migra compras_idempotencia de una llave por clave a una por (id_cliente, clave). El cliente se toma
+-- de la compra de cada clave; las claves existentes quedan sin huella y se aceptan hasta que expiran
+-- (platzi.purchases.idempotency.ttl-ms).
+ALTER TABLE compras_idempotencia ADD COLUMN IF NOT EXISTS id_cliente VARCHAR(20);
+ALTER TABLE compras_idempotencia ADD COLUMN IF NOT EXISTS huella VARCHAR(44);
+UPDATE compras_idempotencia k SET id_cliente = (SELECT c.id_cliente FROM compras c WHERE c.id_compra = k.id_compra)
+WHERE k.id_cliente IS NULL;
+DELETE FROM compras_idempotencia WHERE id_cliente IS NULL;
+ALTER TABLE compras_idempotencia ALTER COLUMN id_cliente SET NOT NULL;
+ALTER TABLE compras_idempotencia DROP CONSTRAINT IF EXISTS compras_idempotencia_pkey;
+ALTER TABLE compras_idempotencia ADD PRIMARY KEY (id_cliente, clave);
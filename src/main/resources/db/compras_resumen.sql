@@ -0,0 +1,59 @@
+-- Totales precalculados de compras (CompraResumenRepository), una fila por cliente y varias por dia
+-- (particion, de 0 a platzi.purchases.summary.daily-slots - 1); el total del dia es su suma.
+-- CompraRepository.save/saveAll los actualizan en la misma transaccion que cada compra.
+CREATE TABLE IF NOT EXISTS clientes_resumen (
+    id_cliente VARCHAR(20) PRIMARY KEY,
+    total NUMERIC(16, 2) NOT NULL DEFAULT 0,
+    cantidad_compras INTEGER NOT NULL DEFAULT 0,
+    cantidad_productos INTEGER NOT NULL DEFAULT 0,
+    ultima_compra TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS ventas_diarias (
+    fecha DATE NOT NULL,
+    particion SMALLINT NOT NULL DEFAULT 0,
+    total NUMERIC(16, 2) NOT NULL DEFAULT 0,
+    cantidad_compras INTEGER NOT NULL DEFAULT 0,
+    cantidad_productos INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (fecha, particion)
+);
+
+-- Tablas creadas con una fila por dia: las filas existentes quedan en la particion 0.
+ALTER TABLE ventas_diarias ADD COLUMN IF NOT EXISTS particion SMALLINT NOT NULL DEFAULT 0;
+ALTER TABLE ventas_diarias DROP CONSTRAINT IF EXISTS ventas_diarias_pkey;
+ALTER TABLE ventas_diarias ADD PRIMARY KEY (fecha, particion);
+
+-- Carga inicial a partir de las compras existentes, los dias quedan en la particion 0 y se borran
+-- las demas. Recalcula las filas desde cero, se debe
+-- ejecutar antes de desplegar la version que mantiene los totales (o sin compras entrando), de lo
+-- contrario una compra guardada durante el script se contaria dos veces o ninguna.
+INSERT INTO clientes_resumen (id_cliente, total, cantidad_compras, cantidad_productos, ultima_compra)
+SELECT c.id_cliente,
+       COALESCE(SUM(i.total), 0),
+       COUNT(DISTINCT c.id_compra),
+       COALESCE(SUM(i.cantidad), 0),
+       MAX(c.fecha)
+FROM compras c
+LEFT JOIN compras_productos i ON i.id_compra = c.id_compra
+WHERE c.id_cliente IS NOT NULL
+GROUP BY c.id_cliente
+ON CONFLICT (id_cliente) DO UPDATE SET total = EXCLUDED.total,
+                                       cantidad_compras = EXCLUDED.cantidad_compras,
+                                       cantidad_productos = EXCLUDED.cantidad_productos,
+                                       ultima_compra = EXCLUDED.ultima_compra;
+
+DELETE FROM ventas_diarias WHERE particion <> 0;
+
+INSERT INTO ventas_diarias (fecha, particion, total, cantidad_compras, cantidad_productos)
+SELECT CAST(c.fecha AS DATE),
+       0,
+       COALESCE(SUM(i.total), 0),
+       COUNT(DISTINCT c.id_compra),
+       COALESCE(SUM(i.cantidad), 0)
+FROM compras c
+LEFT JOIN compras_productos i ON i.id_compra = c.id_compra
+WHERE c.fecha IS NOT NULL
+GROUP BY CAST(c.fecha AS DATE)
+ON CONFLICT (fecha, particion) DO UPDATE SET total = EXCLUDED.total,
+                                             cantidad_compras = EXCLUDED.cantidad_compras,
+                                             cantidad_productos = EXCLUDED.cantidad_productos;
@@ -0,0 +1,4 @@
+-- Busqueda por codigo de barras en la BD (findFirstByCodigoBarras), se usa mientras el indice en
+-- memoria de ProductBarcodeIndex se construye y cuando un codigo del indice ya no corresponde al
+-- producto.
+CREATE INDEX IF NOT EXISTS productos_codigo_barras_idx ON productos (codigo_barras);
@@ -0,0 +1,169 @@
+package com.platzi.market.domain.service;
+
+import com.platzi.market.domain.Purchase;
+import com.platzi.market.domain.PurchaseItem;
+import com.platzi.market.domain.exception.IdempotencyKeyReusedException;
+import com.platzi.market.domain.exception.InsufficientStockException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+class PurchaseServiceIdempotencyTest {
+
+    private static final int STOCK = 50;
+    private static final int THREADS = 8;
+    private static final LocalDateTime DATE = LocalDateTime.of(2021, 3, 1, 10, 30);
+
+    @Autowired
+    private PurchaseService purchaseService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("INSERT INTO categorias (id_categoria, descripcion, estado) VALUES (1, 'Lacteos', true)");
+        jdbcTemplate.update("INSERT INTO productos (id_producto, nombre, id_categoria, precio_venta, cantidad_stock, estado) VALUES (1, 'Leche', 1, 20, ?, true)", STOCK);
+        jdbcTemplate.update("INSERT INTO clientes (id, nombre) VALUES ('cliente-1', 'Cliente')");
+        jdbcTemplate.update("INSERT INTO clientes (id, nombre) VALUES ('cliente-2', 'Otro cliente')");
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM compras_idempotencia");
+        jdbcTemplate.update("DELETE FROM compras_productos");
+        jdbcTemplate.update("DELETE FROM compras");
+        jdbcTemplate.update("DELETE FROM clientes");
+        jdbcTemplate.update("DELETE FROM productos");
+        jdbcTemplate.update("DELETE FROM categorias");
+    }
+
+    @Test
+    void retryReturnsTheOriginalPurchase() {
+        Purchase primera = purchaseService.save(purchase(1), "terminal-1-ticket-1");
+        Purchase reintento = purchaseService.save(purchase(1), "terminal-1-ticket-1");
+
+        assertEquals(primera.getPurchaseId(), reintento.getPurchaseId());
+        assertEquals(1, reintento.getItems().size());
+        assertEquals(1, compras());
+        assertEquals(STOCK - 1, stock());
+
+        purchaseService.save(purchase(1), "terminal-1-ticket-2");
+        assertEquals(2, compras());
+    }
+
+    @Test
+    void concurrentRetriesCreateOnePurchase() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> tareas = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            tareas.add(executor.submit(() -> {
+                start.await();
+                return purchaseService.save(purchase(2), "terminal-2-ticket-1").getPurchaseId();
+            }));
+        }
+        start.countDown();
+        int purchaseId = tareas.get(0).get(60, TimeUnit.SECONDS);
+        for (Future<Integer> tarea : tareas) {
+            assertEquals(purchaseId, tarea.get(60, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertEquals(1, compras());
+        assertEquals(STOCK - 2, stock());
+    }
+
+    @Test
+    void failedAttemptDoesNotKeepTheKey() {
+        assertThrows(InsufficientStockException.class, () -> purchaseService.save(purchase(STOCK + 1), "terminal-3-ticket-1"));
+
+        Purchase guardada = purchaseService.save(purchase(1), "terminal-3-ticket-1");
+        assertEquals(1, compras());
+        assertEquals(guardada.getPurchaseId(), jdbcTemplate.queryForObject(
+                "SELECT id_compra FROM compras_idempotencia WHERE clave = 'terminal-3-ticket-1'", Integer.class));
+    }
+
+    @Test
+    void sameKeyWithADifferentPurchaseIsRejected() {
+        Purchase primera = purchaseService.save(purchase(1), "terminal-5-ticket-1");
+
+        assertThrows(IdempotencyKeyReusedException.class, () -> purchaseService.save(purchase(2), "terminal-5-ticket-1"));
+        assertEquals(1, compras());
+        assertEquals(STOCK - 1, stock());
+        // La compra original se sigue entregando a su reintento
+        assertEquals(primera.getPurchaseId(), purchaseService.save(purchase(1), "terminal-5-ticket-1").getPurchaseId());
+    }
+
+    @Test
+    void keysAreScopedByClient() {
+        Purchase cliente1 = purchaseService.save(purchase(1), "ticket-1");
+        Purchase cliente2 = purchaseService.save(purchase("cliente-2", 1), "ticket-1");
+
+        assertNotEquals(cliente1.getPurchaseId(), cliente2.getPurchaseId());
+        assertEquals("cliente-2", cliente2.getClientId());
+        assertEquals(2, compras());
+    }
+
+    @Test
+    void keyStoredByAnotherNodeIsReused() {
+        Purchase guardada = purchaseService.save(purchase(1), "terminal-4-ticket-1");
+        jdbcTemplate.update("INSERT INTO compras_idempotencia (id_cliente, clave, id_compra, huella, fecha) "
+                + "SELECT id_cliente, 'otro-nodo', id_compra, huella, fecha FROM compras_idempotencia WHERE clave = 'terminal-4-ticket-1'");
+
+        assertEquals(guardada.getPurchaseId(), purchaseService.save(purchase(1), "otro-nodo").getPurchaseId());
+        assertEquals(1, compras());
+    }
+
+    private int compras() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM compras", Integer.class);
+    }
+
+    private int stock() {
+        return jdbcTemplate.queryForObject("SELECT cantidad_stock FROM productos WHERE id_producto = 1", Integer.class);
+    }
+
+    private Purchase purchase(int quantity) {
+        return purchase("cliente-1", quantity);
+    }
+
+    /*
+    * Un reintento envia la misma compra, incluida la fecha del ticket.
+    * */
+    private Purchase purchase(String clientId, int quantity) {
+        Purchase purchase = new Purchase();
+        purchase.setClientId(clientId);
+        purchase.setDate(DATE);
+        purchase.setPaymentMethod("E");
+        purchase.setState("P");
+        purchase.setItems(new ArrayList<>());
+
+        PurchaseItem item = new PurchaseItem();
+        item.setProductId(1);
+        item.setQuantity(quantity);
+        item.setTotal(20.0 * quantity);
+        item.setActive(true);
+        purchase.getItems().add(item);
+        return purchase;
+    }
+}
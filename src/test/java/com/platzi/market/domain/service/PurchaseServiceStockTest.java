@@ -0,0 +1,148 @@
+package com.platzi.market.domain.service;
+
+import com.platzi.market.domain.Purchase;
+import com.platzi.market.domain.PurchaseItem;
+import com.platzi.market.domain.exception.InsufficientStockException;
+import com.platzi.market.domain.exception.InvalidPurchaseException;
+import com.platzi.market.domain.exception.ProductNotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+class PurchaseServiceStockTest {
+
+    private static final int STOCK = 50;
+    private static final int THREADS = 16;
+    private static final int PURCHASES_PER_THREAD = 10;
+
+    @Autowired
+    private PurchaseService purchaseService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("INSERT INTO categorias (id_categoria, descripcion, estado) VALUES (1, 'Lacteos', true)");
+        jdbcTemplate.update("INSERT INTO productos (id_producto, nombre, id_categoria, precio_venta, cantidad_stock, estado) VALUES (1, 'Leche', 1, 20, ?, true)", STOCK);
+        jdbcTemplate.update("INSERT INTO productos (id_producto, nombre, id_categoria, precio_venta, cantidad_stock, estado) VALUES (2, 'Queso', 1, 50, ?, true)", STOCK);
+        jdbcTemplate.update("INSERT INTO clientes (id, nombre) VALUES ('cliente-1', 'Cliente')");
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM compras_productos");
+        jdbcTemplate.update("DELETE FROM compras");
+        jdbcTemplate.update("DELETE FROM clientes");
+        jdbcTemplate.update("DELETE FROM productos");
+        jdbcTemplate.update("DELETE FROM categorias");
+    }
+
+    @Test
+    void concurrentPurchasesNeverOversell() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger guardadas = new AtomicInteger();
+        AtomicInteger sinStock = new AtomicInteger();
+        List<Future<?>> tareas = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            // La mitad de los hilos pide los productos en orden inverso, el descuento debe evitar deadlocks
+            boolean inverso = t % 2 == 0;
+            tareas.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < PURCHASES_PER_THREAD; i++) {
+                    try {
+                        purchaseService.save(inverso ? purchase(2, 1) : purchase(1, 2));
+                        guardadas.incrementAndGet();
+                    } catch (InsufficientStockException e) {
+                        sinStock.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> tarea : tareas) {
+            tarea.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(STOCK, guardadas.get());
+        assertEquals(THREADS * PURCHASES_PER_THREAD - STOCK, sinStock.get());
+        assertEquals(0, stock(1));
+        assertEquals(0, stock(2));
+        assertEquals(STOCK, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM compras", Integer.class));
+    }
+
+    @Test
+    void purchaseIsRolledBackWhenAnyProductLacksStock() {
+        Purchase purchase = purchase(1, 2);
+        purchase.getItems().get(1).setQuantity(STOCK + 1);
+
+        assertThrows(InsufficientStockException.class, () -> purchaseService.save(purchase));
+        assertEquals(STOCK, stock(1));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM compras", Integer.class));
+    }
+
+    @Test
+    void invalidPurchaseIsRejectedBeforeTouchingStock() {
+        Purchase purchase = purchase(1);
+        purchase.getItems().get(0).setQuantity(-5);
+
+        assertThrows(InvalidPurchaseException.class, () -> purchaseService.save(purchase));
+        assertThrows(InvalidPurchaseException.class, () -> purchaseService.save(purchase, "terminal-1-ticket-1"));
+        assertEquals(STOCK, stock(1));
+    }
+
+    @Test
+    void unknownProductIsNotReportedAsMissingStock() {
+        Purchase purchase = purchase(1, 99);
+
+        ProductNotFoundException e = assertThrows(ProductNotFoundException.class, () -> purchaseService.save(purchase));
+        assertEquals(99, e.getProductId());
+        assertEquals(STOCK, stock(1));
+    }
+
+    private int stock(int idProducto) {
+        return jdbcTemplate.queryForObject("SELECT cantidad_stock FROM productos WHERE id_producto = ?", Integer.class, idProducto);
+    }
+
+    private Purchase purchase(int... productIds) {
+        Purchase purchase = new Purchase();
+        purchase.setClientId("cliente-1");
+        purchase.setDate(LocalDateTime.now());
+        purchase.setPaymentMethod("E");
+        purchase.setState("P");
+        purchase.setItems(new ArrayList<>());
+
+        for (int productId : productIds) {
+            PurchaseItem item = new PurchaseItem();
+            item.setProductId(productId);
+            item.setQuantity(1);
+            item.setTotal(10.0);
+            item.setActive(true);
+            purchase.getItems().add(item);
+        }
+        return purchase;
+    }
+}
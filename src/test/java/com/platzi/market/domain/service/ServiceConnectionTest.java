@@ -0,0 +1,116 @@
+package com.platzi.market.domain.service;
+
+import com.platzi.market.domain.Product;
+import com.platzi.market.domain.Purchase;
+import com.platzi.market.domain.PurchaseItem;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+* Conexiones que cada operacion de los servicios pide al pool, segun hikaricp.connections.acquire.
+* Sin transaccion en el servicio, cada llamada a un repositorio pedia la suya (delete pedia dos).
+* */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+class ServiceConnectionTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private PurchaseService purchaseService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("INSERT INTO categorias (id_categoria, descripcion, estado) VALUES (1, 'Lacteos', true)");
+        jdbcTemplate.update("INSERT INTO productos (id_producto, nombre, id_categoria, precio_venta, cantidad_stock, estado) VALUES (1, 'Leche', 1, 20, 100, true)");
+        jdbcTemplate.update("INSERT INTO productos (id_producto, nombre, id_categoria, precio_venta, cantidad_stock, estado) VALUES (2, 'Queso', 1, 50, 100, true)");
+        jdbcTemplate.update("INSERT INTO clientes (id, nombre) VALUES ('cliente-1', 'Cliente')");
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM compras_productos");
+        jdbcTemplate.update("DELETE FROM compras");
+        jdbcTemplate.update("DELETE FROM clientes");
+        jdbcTemplate.update("DELETE FROM productos");
+        jdbcTemplate.update("DELETE FROM categorias");
+    }
+
+    @Test
+    void writesUseOneConnection() {
+        assertEquals(1, acquisitions(() -> assertTrue(productService.delete(2))));
+        assertEquals(1, acquisitions(() -> productService.save(product())));
+        assertEquals(1, acquisitions(() -> purchaseService.save(purchase())));
+    }
+
+    @Test
+    void readsUseAtMostOneConnection() {
+        assertEquals(1, acquisitions(() -> productService.getAll()));
+        assertEquals(1, acquisitions(() -> productService.getPage(0, 10)));
+        assertTrue(acquisitions(() -> productService.getByCategory(1)) <= 1);
+        assertEquals(1, acquisitions(() -> purchaseService.getByClient("cliente-1")));
+    }
+
+    @Test
+    void inMemoryLookupsDoNotTouchThePool() {
+        assertEquals(0, acquisitions(() -> productService.search("leche", 10)));
+        assertEquals(0, acquisitions(() -> productService.getCatalogVersion()));
+    }
+
+    private long acquisitions(Runnable action) {
+        long antes = acquired();
+        action.run();
+        return acquired() - antes;
+    }
+
+    private long acquired() {
+        return meterRegistry.find("hikaricp.connections.acquire").timers().stream().mapToLong(Timer::count).sum();
+    }
+
+    private static Product product() {
+        Product product = new Product();
+        product.setName("Yogurt");
+        product.setCategoryId(1);
+        product.setPrice(15.0);
+        product.setStock(10);
+        product.setActive(true);
+        return product;
+    }
+
+    private static Purchase purchase() {
+        PurchaseItem item = new PurchaseItem();
+        item.setProductId(1);
+        item.setQuantity(1);
+        item.setTotal(20.0);
+        item.setActive(true);
+
+        Purchase purchase = new Purchase();
+        purchase.setClientId("cliente-1");
+        purchase.setDate(LocalDateTime.now());
+        purchase.setPaymentMethod("E");
+        purchase.setComment("");
+        purchase.setState("P");
+        purchase.setItems(List.of(item));
+        return purchase;
+    }
+}
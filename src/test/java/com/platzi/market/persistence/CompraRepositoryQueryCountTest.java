@@ -0,0 +1,176 @@
+package com.platzi.market.persistence;
+
+import com.platzi.market.domain.Purchase;
+import com.platzi.market.domain.PurchaseItem;
+import com.platzi.market.persistence.entity.Categoria;
+import com.platzi.market.persistence.entity.Cliente;
+import com.platzi.market.persistence.entity.Compra;
+import com.platzi.market.persistence.entity.ComprasProducto;
+import com.platzi.market.persistence.entity.ComprasProductoPK;
+import com.platzi.market.persistence.entity.Producto;
+import com.platzi.market.persistence.mapper.CategoryMapperImpl;
+import com.platzi.market.persistence.mapper.ProductMapperImpl;
+import com.platzi.market.persistence.mapper.PurchaseItemMapperImpl;
+import com.platzi.market.persistence.mapper.PurchaseMapperImpl;
+import com.platzi.market.persistence.mapper.PurchaseSummaryMapperImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({CompraRepository.class, CompraResumenRepository.class, PurchaseMapperImpl.class, PurchaseItemMapperImpl.class,
+        ProductMapperImpl.class, CategoryMapperImpl.class, PurchaseSummaryMapperImpl.class})
+class CompraRepositoryQueryCountTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CompraRepository compraRepository;
+
+    private final List<Producto> productos = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // La cache de segundo nivel es compartida con las demas pruebas de la JVM
+        entityManagerFactory.getCache().evictAll();
+        Categoria categoria = new Categoria();
+        categoria.setIdCategoria(1);
+        categoria.setDescripcion("Frutas y verduras");
+        categoria.setEstado(true);
+        entityManager.persist(categoria);
+
+        for (int i = 0; i < 10; i++) {
+            Producto producto = new Producto();
+            producto.setNombre("Producto " + i);
+            producto.setIdCategoria(1);
+            producto.setPrecioVenta(10.0);
+            producto.setCantidadStock(100);
+            producto.setEstado(true);
+            productos.add(entityManager.persist(producto));
+        }
+    }
+
+    @Test
+    void getByClientIssuesConstantNumberOfQueries() {
+        crearCompras("cliente-1", 1, 1);
+        crearCompras("cliente-2", 20, 10);
+        QueryCounter counter = new QueryCounter(entityManagerFactory);
+
+        long pocas = counter.count(() -> compraRepository.getByClient("cliente-1"));
+        entityManager.clear();
+        long muchas = counter.count(() -> {
+            List<Purchase> purchases = compraRepository.getByClient("cliente-2").orElseThrow();
+            assertEquals(20, purchases.size());
+            purchases.forEach(purchase -> assertEquals(10, purchase.getItems().size()));
+        });
+
+        assertEquals(1, pocas);
+        assertEquals(pocas, muchas);
+    }
+
+    @Test
+    void getAllIssuesConstantNumberOfQueries() {
+        crearCompras("cliente-1", 15, 5);
+        crearCompras("cliente-2", 15, 5);
+        QueryCounter counter = new QueryCounter(entityManagerFactory);
+
+        long consultas = counter.count(() -> assertEquals(30, compraRepository.getAll().size()));
+
+        assertEquals(1, consultas);
+    }
+
+    @Test
+    void saveAllBatchesInserts() {
+        crearCompras("cliente-1", 0, 0);
+        List<Purchase> purchases = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            purchases.add(nuevaCompra("cliente-1", 5));
+        }
+        QueryCounter counter = new QueryCounter(entityManagerFactory);
+
+        long unaPorUna = counter.count(() -> purchases.forEach(purchase -> {
+            compraRepository.save(purchase);
+            entityManager.flush();
+        }));
+        entityManager.clear();
+        long porLote = counter.count(() -> assertEquals(200, compraRepository.saveAll(purchases).size()));
+
+        // El numero de sentencias sustituye a una medicion de throughput: en H2 en memoria no hay
+        // ida y vuelta por red, que es lo que el lote ahorra en PostgreSQL, y un tiempo medido aqui no
+        // representaria al de produccion.
+        // Una por una: un insert de la compra y uno (lote) de sus items por cada compra
+        assertTrue(unaPorUna >= 400);
+        // Por lote: 4 llamadas a la secuencia, 4 lotes de compras y 20 de items
+        assertTrue(porLote * 10 < unaPorUna, "batch=" + porLote + " single=" + unaPorUna);
+    }
+
+    private Purchase nuevaCompra(String clientId, int items) {
+        Purchase purchase = new Purchase();
+        purchase.setClientId(clientId);
+        purchase.setDate(LocalDateTime.now());
+        purchase.setPaymentMethod("E");
+        purchase.setState("P");
+        purchase.setItems(new ArrayList<>());
+
+        for (int i = 0; i < items; i++) {
+            PurchaseItem item = new PurchaseItem();
+            item.setProductId(productos.get(i).getIdProducto());
+            item.setQuantity(1);
+            item.setTotal(10.0);
+            item.setActive(true);
+            purchase.getItems().add(item);
+        }
+        return purchase;
+    }
+
+    private void crearCompras(String idCliente, int numeroCompras, int itemsPorCompra) {
+        Cliente cliente = new Cliente();
+        cliente.setId(idCliente);
+        cliente.setNombre("Cliente " + idCliente);
+        entityManager.persist(cliente);
+
+        for (int i = 0; i < numeroCompras; i++) {
+            Compra compra = new Compra();
+            compra.setIdCliente(idCliente);
+            compra.setFecha(LocalDateTime.now());
+            compra.setMedioPago("E");
+            compra.setEstado("P");
+            compra.setProductos(new ArrayList<>());
+
+            for (int j = 0; j < itemsPorCompra; j++) {
+                ComprasProductoPK id = new ComprasProductoPK();
+                id.setIdProducto(productos.get(j).getIdProducto());
+
+                ComprasProducto item = new ComprasProducto();
+                item.setId(id);
+                item.setCantidad(1);
+                item.setTotal(10.0);
+                item.setEstado(true);
+                item.setCompra(compra);
+                compra.getProductos().add(item);
+            }
+            entityManager.persist(compra);
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
@@ -0,0 +1,160 @@
+package com.platzi.market.persistence;
+
+import com.platzi.market.domain.Purchase;
+import com.platzi.market.domain.PurchaseItem;
+import com.platzi.market.domain.dto.ClientSummary;
+import com.platzi.market.domain.dto.DailySales;
+import com.platzi.market.persistence.entity.Categoria;
+import com.platzi.market.persistence.entity.Cliente;
+import com.platzi.market.persistence.entity.Producto;
+import com.platzi.market.persistence.entity.VentaDiaria;
+import com.platzi.market.persistence.entity.VentaDiariaPK;
+import com.platzi.market.persistence.mapper.CategoryMapperImpl;
+import com.platzi.market.persistence.mapper.ProductMapperImpl;
+import com.platzi.market.persistence.mapper.PurchaseItemMapperImpl;
+import com.platzi.market.persistence.mapper.PurchaseMapperImpl;
+import com.platzi.market.persistence.mapper.PurchaseSummaryMapperImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({CompraRepository.class, CompraResumenRepository.class, PurchaseMapperImpl.class, PurchaseItemMapperImpl.class,
+        ProductMapperImpl.class, CategoryMapperImpl.class, PurchaseSummaryMapperImpl.class})
+class CompraResumenRepositoryTest {
+
+    private static final LocalDateTime AYER = LocalDate.now().minusDays(1).atTime(10, 0);
+    private static final LocalDateTime HOY = LocalDate.now().atTime(9, 30);
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CompraRepository compraRepository;
+
+    @Autowired
+    private CompraResumenRepository compraResumenRepository;
+
+    private Producto producto;
+
+    @BeforeEach
+    void setUp() {
+        // Categoria 1 puede seguir en la cache de segundo nivel por otra prueba
+        entityManagerFactory.getCache().evictAll();
+        Categoria categoria = new Categoria();
+        categoria.setIdCategoria(1);
+        categoria.setDescripcion("Lacteos");
+        categoria.setEstado(true);
+        entityManager.persist(categoria);
+
+        producto = new Producto();
+        producto.setNombre("Leche");
+        producto.setIdCategoria(1);
+        producto.setPrecioVenta(2.5);
+        producto.setCantidadStock(100);
+        producto.setEstado(true);
+        entityManager.persist(producto);
+
+        for (String id : List.of("cliente-1", "cliente-2")) {
+            Cliente cliente = new Cliente();
+            cliente.setId(id);
+            cliente.setNombre("Cliente " + id);
+            entityManager.persist(cliente);
+        }
+        entityManager.flush();
+    }
+
+    @Test
+    void saveAndSaveAllAccumulateTotals() {
+        compraRepository.save(compra("cliente-1", AYER, 2, 5.0));
+
+        List<Purchase> lote = new ArrayList<>();
+        lote.add(compra("cliente-1", HOY, 4, 10.0));
+        lote.add(compra("cliente-2", HOY, 1, 2.5));
+        compraRepository.saveAll(lote);
+
+        ClientSummary cliente1 = compraResumenRepository.getClientSummary("cliente-1").orElseThrow();
+        assertEquals(15.0, cliente1.getTotal(), 0.001);
+        assertEquals(2, cliente1.getPurchases());
+        assertEquals(6, cliente1.getItems());
+        assertEquals(HOY, cliente1.getLastPurchase());
+
+        List<DailySales> ventas = compraResumenRepository.getDailySales(AYER.toLocalDate(), HOY.toLocalDate());
+        assertEquals(2, ventas.size());
+        assertEquals(5.0, ventas.get(0).getTotal(), 0.001);
+        assertEquals(1, ventas.get(0).getPurchases());
+        assertEquals(12.5, ventas.get(1).getTotal(), 0.001);
+        assertEquals(2, ventas.get(1).getPurchases());
+        assertEquals(5, ventas.get(1).getItems());
+    }
+
+    @Test
+    void dailySalesAddUpTheDayRows() {
+        ventaDiaria(HOY.toLocalDate(), 0, 10.0, 2, 3);
+        ventaDiaria(HOY.toLocalDate(), 5, 2.5, 1, 1);
+        ventaDiaria(AYER.toLocalDate(), 3, 4.0, 1, 2);
+        entityManager.flush();
+
+        List<DailySales> ventas = compraResumenRepository.getDailySales(AYER.toLocalDate(), HOY.toLocalDate());
+        assertEquals(2, ventas.size());
+        assertEquals(AYER.toLocalDate(), ventas.get(0).getDate());
+        assertEquals(4.0, ventas.get(0).getTotal(), 0.001);
+        assertEquals(HOY.toLocalDate(), ventas.get(1).getDate());
+        assertEquals(12.5, ventas.get(1).getTotal(), 0.001);
+        assertEquals(3, ventas.get(1).getPurchases());
+        assertEquals(4, ventas.get(1).getItems());
+    }
+
+    @Test
+    void clientWithoutPurchasesHasNoSummary() {
+        assertTrue(compraResumenRepository.getClientSummary("cliente-2").isEmpty());
+    }
+
+    private void ventaDiaria(LocalDate fecha, int particion, double total, int compras, int productos) {
+        VentaDiariaPK id = new VentaDiariaPK();
+        id.setFecha(fecha);
+        id.setParticion(particion);
+
+        VentaDiaria venta = new VentaDiaria();
+        venta.setId(id);
+        venta.setTotal(total);
+        venta.setCantidadCompras(compras);
+        venta.setCantidadProductos(productos);
+        entityManager.persist(venta);
+    }
+
+    private Purchase compra(String clientId, LocalDateTime fecha, int cantidad, double total) {
+        PurchaseItem item = new PurchaseItem();
+        item.setProductId(producto.getIdProducto());
+        item.setQuantity(cantidad);
+        item.setTotal(total);
+        item.setActive(true);
+
+        Purchase purchase = new Purchase();
+        purchase.setClientId(clientId);
+        purchase.setDate(fecha);
+        purchase.setPaymentMethod("E");
+        purchase.setState("P");
+        purchase.setItems(new ArrayList<>(List.of(item)));
+        return purchase;
+    }
+}
@@ -0,0 +1,112 @@
+package com.platzi.market.persistence;
+
+import com.platzi.market.domain.Product;
+import com.platzi.market.persistence.crud.ProductoCrudRepository;
+import com.platzi.market.persistence.entity.Categoria;
+import com.platzi.market.persistence.entity.Producto;
+import com.platzi.market.persistence.mapper.CategoryMapperImpl;
+import com.platzi.market.persistence.mapper.ProductMapper;
+import com.platzi.market.persistence.mapper.ProductMapperImpl;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ProductMapperImpl.class, CategoryMapperImpl.class})
+class ProductoCrudRepositoryProjectionTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ProductoCrudRepository productoCrudRepository;
+
+    @Autowired
+    private ProductMapper mapper;
+
+    @BeforeEach
+    void setUp() {
+        // Las regiones de JCache son de toda la JVM: otra prueba pudo dejar en cache una categoria con el
+        // mismo id y persist la tomaria como separada (detached)
+        entityManagerFactory.getCache().evictAll();
+        crearCategoria(1, "Lacteos");
+        crearCategoria(2, "Panaderia");
+        crearProducto("Queso", 1, "7702511000014", true);
+        crearProducto("Leche", 1, null, true);
+        crearProducto("Yogurt", 1, "7702511000021", null);
+        crearProducto("Pan", 2, null, true);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void projectionMatchesTheMappedEntities() {
+        List<Product> proyectados = productoCrudRepository.findProductsByIdCategoria(1);
+        entityManager.clear();
+        List<Product> mapeados = mapper.toProducts(entityManager.getEntityManager()
+                .createQuery("SELECT p FROM Producto p WHERE p.idCategoria = 1 ORDER BY p.nombre ASC", Producto.class)
+                .getResultList());
+
+        assertEquals(List.of("Leche", "Queso", "Yogurt"), proyectados.stream().map(Product::getName).collect(Collectors.toList()));
+        assertEquals(describir(mapeados), describir(proyectados));
+    }
+
+    @Test
+    void projectionLoadsNoEntitiesAndOneStatement() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        assertEquals(4, productoCrudRepository.findAllProducts().size());
+        assertEquals(1, productoCrudRepository.findProductPage(0, PageRequest.of(0, 1)).size());
+        assertEquals(3, productoCrudRepository.findProductsByIdCategoria(1).size());
+
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(3, statistics.getPrepareStatementCount());
+    }
+
+    private void crearCategoria(int id, String descripcion) {
+        Categoria categoria = new Categoria();
+        categoria.setIdCategoria(id);
+        categoria.setDescripcion(descripcion);
+        categoria.setEstado(true);
+        entityManager.persist(categoria);
+    }
+
+    private void crearProducto(String nombre, int idCategoria, String codigoBarras, Boolean estado) {
+        Producto producto = new Producto();
+        producto.setNombre(nombre);
+        producto.setIdCategoria(idCategoria);
+        producto.setCodigoBarras(codigoBarras);
+        producto.setPrecioVenta(10.0);
+        producto.setCantidadStock(100);
+        producto.setEstado(estado);
+        entityManager.persist(producto);
+    }
+
+    private static List<String> describir(List<Product> products) {
+        return products.stream()
+                .map(product -> product.getProductId() + "|" + product.getName() + "|" + product.getCategoryId() + "|"
+                        + product.getPrice() + "|" + product.getStock() + "|" + product.isActive() + "|" + product.getBarcode() + "|"
+                        + product.getCategory().getCategoryId() + "|" + product.getCategory().getCategory() + "|" + product.getCategory().isActive())
+                .collect(Collectors.toList());
+    }
+}
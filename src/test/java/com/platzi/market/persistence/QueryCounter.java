@@ -0,0 +1,25 @@
+package com.platzi.market.persistence;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import javax.persistence.EntityManagerFactory;
+
+/*
+* Cuenta las sentencias SQL que Hibernate prepara mientras se ejecuta una accion.
+* Requiere hibernate.generate_statistics=true (perfil test).
+* */
+class QueryCounter {
+
+    private final Statistics statistics;
+
+    QueryCounter(EntityManagerFactory entityManagerFactory) {
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    long count(Runnable action) {
+        statistics.clear();
+        action.run();
+        return statistics.getPrepareStatementCount();
+    }
+}
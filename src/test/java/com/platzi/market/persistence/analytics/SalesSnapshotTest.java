@@ -0,0 +1,250 @@
+package com.platzi.market.persistence.analytics;
+
+import com.platzi.market.domain.Purchase;
+import com.platzi.market.domain.PurchaseItem;
+import com.platzi.market.domain.dto.CategorySales;
+import com.platzi.market.domain.dto.PaymentMethodSales;
+import com.platzi.market.domain.dto.ProductSales;
+import com.platzi.market.domain.event.ProductChangedEvent;
+import com.platzi.market.domain.event.PurchaseSavedEvent;
+import com.platzi.market.domain.repository.ProductRepository;
+import com.platzi.market.persistence.crud.CompraCrudRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SalesSnapshotTest {
+
+    private static final LocalDate LUNES = LocalDate.of(2021, 3, 1);
+    private static final LocalDate MARTES = LUNES.plusDays(1);
+
+    private static final int MAX_PENDING = 10;
+
+    private SalesSnapshot snapshot;
+    private CompraCrudRepository compraCrudRepository;
+    private int nextPurchaseId = 1;
+
+    @BeforeEach
+    void setUp() {
+        ProductRepository productRepository = mock(ProductRepository.class);
+        when(productRepository.getById(anyInt())).thenReturn(Optional.empty());
+
+        compraCrudRepository = mock(CompraCrudRepository.class);
+
+        snapshot = new SalesSnapshot(true, 4, MAX_PENDING);
+        ReflectionTestUtils.setField(snapshot, "productRepository", productRepository);
+        ReflectionTestUtils.setField(snapshot, "compraCrudRepository", compraCrudRepository);
+        ReflectionTestUtils.setField(snapshot, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.invokeMethod(snapshot, "finishBuild");
+
+        // Productos 1 y 2 en la categoria 1, producto 3 en la categoria 2
+        snapshot.onProductChanged(ProductChangedEvent.stockChanged(1, 1, 10, 1));
+        snapshot.onProductChanged(ProductChangedEvent.stockChanged(2, 1, 10, 2));
+        snapshot.onProductChanged(ProductChangedEvent.stockChanged(3, 2, 10, 3));
+    }
+
+    @AfterEach
+    void tearDown() {
+        snapshot.close();
+    }
+
+    @Test
+    void aggregatesOnlyTheRequestedDays() {
+        save(purchase(LUNES, "E", item(1, 2, 5.0), item(3, 1, 20.0)));
+        save(purchase(MARTES, "T", item(2, 5, 7.5)));
+        save(purchase(MARTES, "E", item(1, 1, 2.5)));
+
+        assertEquals(List.of(2, 1, 3), productIds(snapshot.getTopProducts(LUNES, MARTES, 10)));
+        assertEquals(List.of(2, 1), productIds(snapshot.getTopProducts(MARTES, MARTES, 10)));
+        assertEquals(List.of(2), productIds(snapshot.getTopProducts(LUNES, MARTES, 1)));
+
+        List<CategorySales> categorias = snapshot.getSalesByCategory(LUNES, MARTES);
+        assertEquals(2, categorias.size());
+        assertEquals(2, categorias.get(0).getCategoryId());
+        assertEquals(20.0, categorias.get(0).getTotal(), 0.001);
+        assertEquals(1, categorias.get(1).getCategoryId());
+        assertEquals(8, categorias.get(1).getQuantity());
+        assertEquals(15.0, categorias.get(1).getTotal(), 0.001);
+
+        List<PaymentMethodSales> medios = snapshot.getPaymentMethodMix(LUNES, MARTES);
+        assertEquals("E", medios.get(0).getPaymentMethod());
+        assertEquals(2, medios.get(0).getPurchases());
+        assertEquals(27.5, medios.get(0).getTotal(), 0.001);
+        assertEquals(27.5 / 35.0, medios.get(0).getShare(), 0.0001);
+        assertEquals("T", medios.get(1).getPaymentMethod());
+        assertEquals(1, medios.get(1).getPurchases());
+    }
+
+    @Test
+    void scansAcrossManyChunks() {
+        List<Purchase> lote = new ArrayList<>();
+        int compras = SalesSnapshot.CHUNK_SIZE * 3 + 17;
+        for (int i = 0; i < compras; i++) {
+            lote.add(purchase(i % 2 == 0 ? LUNES : MARTES, "E", item(1 + i % 3, 1, 1.0)));
+        }
+        snapshot.onPurchaseSaved(new PurchaseSavedEvent(lote));
+
+        assertEquals(compras, snapshot.size());
+        long unidades = snapshot.getTopProducts(LUNES, MARTES, 3).stream().mapToLong(ProductSales::getQuantity).sum();
+        assertEquals(compras, unidades);
+        assertEquals((compras + 1) / 2, snapshot.getPaymentMethodMix(LUNES, LUNES).get(0).getPurchases());
+        assertEquals(0, snapshot.getSalesByCategory(MARTES.plusDays(1), MARTES.plusDays(30)).size());
+    }
+
+    @Test
+    void purchasesWithoutPaymentMethodAreCountedAfterTheMethodsCap() {
+        for (int i = 0; i < 200; i++) {
+            save(purchase(LUNES, "medio-" + i, item(1, 1, 1.0)));
+        }
+        save(purchase(LUNES, null, item(1, 1, 1.0)));
+
+        List<PaymentMethodSales> medios = snapshot.getPaymentMethodMix(LUNES, LUNES);
+        long sinMedio = medios.stream().filter(medio -> medio.getPaymentMethod() == null)
+                .mapToLong(PaymentMethodSales::getPurchases).sum();
+        assertEquals(201 - 127, sinMedio);
+        assertEquals(201, medios.stream().mapToLong(PaymentMethodSales::getPurchases).sum());
+    }
+
+    @Test
+    void failedBuildIsRetriedFromScratch() {
+        SalesSnapshot nueva = new SalesSnapshot(true, 2, MAX_PENDING);
+        ReflectionTestUtils.setField(nueva, "productRepository", ReflectionTestUtils.getField(snapshot, "productRepository"));
+        ReflectionTestUtils.setField(nueva, "compraCrudRepository", compraCrudRepository);
+        ReflectionTestUtils.setField(nueva, "transactionManager", mock(PlatformTransactionManager.class));
+        try {
+            when(compraCrudRepository.streamSalesLines()).thenReturn(Stream.<Object[]>of(
+                    line(1, 1, LUNES, "E"), line(2, 1, LUNES, "E")).peek(line -> {
+                        if ((Integer) line[0] == 2) {
+                            throw new IllegalStateException("Conexion perdida");
+                        }
+                    }));
+            nueva.build();
+            assertFalse(nueva.isReady());
+
+            // Mientras no se construye no se acumulan compras, se leen de la BD al reintentar
+            for (int i = 0; i < MAX_PENDING * 2; i++) {
+                nueva.onPurchaseSaved(new PurchaseSavedEvent(List.of(purchase(LUNES, "E", item(1, 1, 1.0)))));
+            }
+            assertEquals(0, ((List<?>) ReflectionTestUtils.getField(nueva, "pending")).size());
+
+            when(compraCrudRepository.streamSalesLines()).thenReturn(Stream.<Object[]>of(line(1, 1, LUNES, "E"), line(2, 2, LUNES, "T")));
+            nueva.retryBuild();
+
+            assertTrue(nueva.isReady());
+            assertEquals(2, nueva.size());
+            assertEquals(2, nueva.getPaymentMethodMix(LUNES, LUNES).size());
+        } finally {
+            nueva.close();
+        }
+    }
+
+    @Test
+    void tooManyPendingPurchasesForceARebuild() {
+        SalesSnapshot nueva = new SalesSnapshot(true, 2, MAX_PENDING);
+        ReflectionTestUtils.setField(nueva, "productRepository", ReflectionTestUtils.getField(snapshot, "productRepository"));
+        ReflectionTestUtils.setField(nueva, "compraCrudRepository", compraCrudRepository);
+        ReflectionTestUtils.setField(nueva, "transactionManager", mock(PlatformTransactionManager.class));
+        try {
+            when(compraCrudRepository.streamSalesLines()).thenAnswer(invocation -> Stream.<Object[]>of(line(1, 1, LUNES, "E")).peek(line -> {
+                for (int i = 0; i <= MAX_PENDING; i++) {
+                    nueva.onPurchaseSaved(new PurchaseSavedEvent(List.of(purchase(LUNES, "E", item(1, 1, 1.0)))));
+                }
+            }));
+            nueva.build();
+            assertFalse(nueva.isReady());
+
+            when(compraCrudRepository.streamSalesLines()).thenReturn(Stream.<Object[]>of(line(1, 1, LUNES, "E")));
+            nueva.retryBuild();
+            assertTrue(nueva.isReady());
+            assertEquals(1, nueva.size());
+        } finally {
+            nueva.close();
+        }
+    }
+
+    /*
+    * Con la secuencia en bloques una compra confirmada durante la construccion puede tener un id menor
+    * que el ultimo que leyo el cursor. Se agrega si el cursor no la devolvio, y las que si devolvio no
+    * se cuentan dos veces aunque su evento llegue tarde.
+    * */
+    @Test
+    void purchasesCommittedDuringTheBuildAreKeptRegardlessOfTheirId() {
+        SalesSnapshot nueva = new SalesSnapshot(true, 2, MAX_PENDING);
+        ReflectionTestUtils.setField(nueva, "productRepository", ReflectionTestUtils.getField(snapshot, "productRepository"));
+        ReflectionTestUtils.setField(nueva, "compraCrudRepository", compraCrudRepository);
+        ReflectionTestUtils.setField(nueva, "transactionManager", mock(PlatformTransactionManager.class));
+        try {
+            when(compraCrudRepository.streamSalesLines()).thenAnswer(invocation -> Stream.<Object[]>of(
+                    line(1, 1, LUNES, "E"), line(1, 60, LUNES, "E")).peek(line -> {
+                        if ((Integer) line[6] == 60) {
+                            // Otro hilo confirmo la compra 5 despues de abrir el cursor, y el evento
+                            // de la compra 1 (que el cursor ya devolvio) llega tarde
+                            nueva.onPurchaseSaved(new PurchaseSavedEvent(List.of(withId(5, purchase(MARTES, "T", item(2, 3, 9.0))))));
+                            nueva.onPurchaseSaved(new PurchaseSavedEvent(List.of(withId(1, purchase(LUNES, "E", item(1, 1, 1.0))))));
+                        }
+                    }));
+            nueva.build();
+
+            assertTrue(nueva.isReady());
+            assertEquals(3, nueva.size());
+            assertEquals(3, nueva.getTopProducts(MARTES, MARTES, 10).get(0).getQuantity());
+            assertEquals(2, nueva.getPaymentMethodMix(LUNES, LUNES).get(0).getPurchases());
+        } finally {
+            nueva.close();
+        }
+    }
+
+    private static Purchase withId(int purchaseId, Purchase purchase) {
+        purchase.setPurchaseId(purchaseId);
+        return purchase;
+    }
+
+    /*
+    * Misma forma que las filas de CompraCrudRepository.streamSalesLines
+    * */
+    private static Object[] line(int productId, int purchaseId, LocalDate date, String paymentMethod) {
+        return new Object[]{productId, 1, 1.0, date.atTime(12, 0), 1, paymentMethod, purchaseId};
+    }
+
+    private void save(Purchase purchase) {
+        snapshot.onPurchaseSaved(new PurchaseSavedEvent(List.of(purchase)));
+    }
+
+    private Purchase purchase(LocalDate date, String paymentMethod, PurchaseItem... items) {
+        Purchase purchase = new Purchase();
+        purchase.setPurchaseId(nextPurchaseId++);
+        purchase.setDate(date.atTime(12, 0));
+        purchase.setPaymentMethod(paymentMethod);
+        purchase.setItems(List.of(items));
+        return purchase;
+    }
+
+    private static PurchaseItem item(int productId, int quantity, double total) {
+        PurchaseItem item = new PurchaseItem();
+        item.setProductId(productId);
+        item.setQuantity(quantity);
+        item.setTotal(total);
+        item.setActive(true);
+        return item;
+    }
+
+    private static List<Integer> productIds(List<ProductSales> sales) {
+        return sales.stream().map(ProductSales::getProductId).collect(Collectors.toList());
+    }
+}
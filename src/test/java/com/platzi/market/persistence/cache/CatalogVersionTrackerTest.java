@@ -0,0 +1,55 @@
+package com.platzi.market.persistence.cache;
+
+import com.platzi.market.domain.Product;
+import com.platzi.market.domain.event.ProductChangedEvent;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class CatalogVersionTrackerTest {
+
+    private final CatalogVersionTracker tracker = new CatalogVersionTracker(0);
+
+    @Test
+    void stockChangeBumpsProductCategoryAndCatalog() {
+        String product = tracker.getProductVersion(1).getETag();
+        String otherProduct = tracker.getProductVersion(2).getETag();
+        String category = tracker.getCategoryVersion(10).getETag();
+        String otherCategory = tracker.getCategoryVersion(20).getETag();
+        String catalog = tracker.getCatalogVersion().getETag();
+
+        tracker.onProductChanged(ProductChangedEvent.stockChanged(1, 10, 4, 1));
+
+        assertNotEquals(product, tracker.getProductVersion(1).getETag());
+        assertNotEquals(category, tracker.getCategoryVersion(10).getETag());
+        assertNotEquals(catalog, tracker.getCatalogVersion().getETag());
+        assertEquals(otherProduct, tracker.getProductVersion(2).getETag());
+        assertEquals(otherCategory, tracker.getCategoryVersion(20).getETag());
+    }
+
+    @Test
+    void movingAProductBumpsBothCategories() {
+        String previous = tracker.getCategoryVersion(10).getETag();
+        String current = tracker.getCategoryVersion(20).getETag();
+
+        Product product = new Product();
+        product.setProductId(1);
+        product.setCategoryId(20);
+        tracker.onProductChanged(ProductChangedEvent.updated(product, 10, true, 2));
+
+        assertNotEquals(previous, tracker.getCategoryVersion(10).getETag());
+        assertNotEquals(current, tracker.getCategoryVersion(20).getETag());
+    }
+
+    @Test
+    void versionWindowRenewsTheETagWithoutChanges() throws InterruptedException {
+        CatalogVersionTracker porVentana = new CatalogVersionTracker(20);
+        String catalog = porVentana.getCatalogVersion().getETag();
+
+        Thread.sleep(50);
+
+        assertNotEquals(catalog, porVentana.getCatalogVersion().getETag());
+        assertEquals(tracker.getCatalogVersion().getETag(), tracker.getCatalogVersion().getETag());
+    }
+}
@@ -0,0 +1,136 @@
+package com.platzi.market.persistence.cache;
+
+import com.platzi.market.domain.Product;
+import com.platzi.market.domain.PurchaseItem;
+import com.platzi.market.domain.repository.ProductRepository;
+import com.platzi.market.domain.service.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.Optional;
+
+import static com.platzi.market.persistence.cache.ProductCacheListener.PRODUCTS;
+import static com.platzi.market.persistence.cache.ProductCacheListener.PRODUCTS_BY_CATEGORY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+* Caches products y productsByCategory de ProductoRepository frente a escrituras concurrentes.
+* */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+class ProductCacheTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private CatalogVersionTracker versions;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        // Las filas se escriben por JDBC, ninguna cache debe conservar las de otra prueba
+        entityManagerFactory.getCache().evictAll();
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        jdbcTemplate.update("INSERT INTO categorias (id_categoria, descripcion, estado) VALUES (1, 'Lacteos', true)");
+        jdbcTemplate.update("INSERT INTO productos (id_producto, nombre, id_categoria, precio_venta, cantidad_stock, estado) VALUES (1, 'Leche', 1, 20, 100, true)");
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM productos");
+        jdbcTemplate.update("DELETE FROM categorias");
+    }
+
+    /*
+    * Cada tipo de escritura (guardar, descontar stock y eliminar) se ve en la lectura siguiente,
+    * aunque el producto y su categoria ya esten en cache.
+    * */
+    @Test
+    void readsAfterEachKindOfWriteSeeTheNewValue() {
+        assertEquals("Leche", productService.getById(1).orElseThrow().getName());
+        assertEquals("Leche", productService.getByCategory(1).orElseThrow().get(0).getName());
+
+        productService.save(product("Leche entera"));
+        assertEquals("Leche entera", productService.getById(1).orElseThrow().getName());
+        assertEquals("Leche entera", productService.getByCategory(1).orElseThrow().get(0).getName());
+
+        transactionTemplate.executeWithoutResult(status -> productRepository.decrementStock(List.of(item(30))));
+        assertEquals(70, productService.getById(1).orElseThrow().getStock());
+        assertEquals(70, productService.getByCategory(1).orElseThrow().get(0).getStock());
+
+        assertTrue(productService.delete(1));
+        assertTrue(productService.getById(1).isEmpty());
+        assertTrue(productService.getByCategory(1).orElseThrow().isEmpty());
+    }
+
+    /*
+    * Una lectura que no encontro el producto en cache y leyo la fila antes del commit la guarda
+    * despues de la invalidacion y del cambio de version. Quien lee la version nueva no debe recibir
+    * esa fila: se responderia con el ETag nuevo y los 304 siguientes la mantendrian.
+    * */
+    @Test
+    void aLoadStartedBeforeAWriteIsNotServedUnderTheNewVersion() {
+        String llaveProducto = versions.productKey(1);
+        String llaveCategoria = versions.categoryKey(1);
+        String eTag = productService.getProductVersion(1).getETag();
+        Optional<Product> anterior = productService.getById(1);
+        Optional<List<Product>> listaAnterior = productService.getByCategory(1);
+        cacheManager.getCache(PRODUCTS).clear();
+        cacheManager.getCache(PRODUCTS_BY_CATEGORY).clear();
+
+        productService.save(product("Leche deslactosada"));
+        // La lectura lenta guarda lo que leyo antes del commit
+        cacheManager.getCache(PRODUCTS).put(llaveProducto, anterior);
+        cacheManager.getCache(PRODUCTS_BY_CATEGORY).put(llaveCategoria, listaAnterior);
+
+        assertNotEquals(eTag, productService.getProductVersion(1).getETag());
+        assertEquals("Leche deslactosada", productService.getById(1).orElseThrow().getName());
+        assertEquals("Leche deslactosada", productService.getByCategory(1).orElseThrow().get(0).getName());
+    }
+
+    private static PurchaseItem item(int quantity) {
+        PurchaseItem item = new PurchaseItem();
+        item.setProductId(1);
+        item.setQuantity(quantity);
+        item.setTotal(20.0 * quantity);
+        item.setActive(true);
+        return item;
+    }
+
+    private static Product product(String name) {
+        Product product = new Product();
+        product.setProductId(1);
+        product.setName(name);
+        product.setCategoryId(1);
+        product.setPrice(20.0);
+        product.setStock(100);
+        product.setActive(true);
+        return product;
+    }
+}
@@ -0,0 +1,125 @@
+package com.platzi.market.persistence.cache;
+
+import com.platzi.market.domain.PurchaseItem;
+import com.platzi.market.domain.repository.ProductRepository;
+import com.platzi.market.persistence.crud.ProductoCrudRepository;
+import com.platzi.market.persistence.entity.Producto;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+class SecondLevelCacheLockTest {
+
+    @Autowired
+    private ProductoCrudRepository productoCrudRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("INSERT INTO categorias (id_categoria, descripcion, estado) VALUES (1, 'Lacteos', true)");
+        jdbcTemplate.update("INSERT INTO productos (id_producto, nombre, id_categoria, precio_venta, cantidad_stock, estado) VALUES (1, 'Leche', 1, 20, 10, true)");
+
+        SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        sessionFactory.getCache().evictAllRegions();
+        statistics = sessionFactory.getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM productos");
+        jdbcTemplate.update("DELETE FROM categorias");
+    }
+
+    @Test
+    void productIsCachedUntilStockChanges() {
+        assertEquals(10, stock());
+        assertEquals(10, stock());
+        assertEquals(1, statistics.getDomainDataRegionStatistics(Producto.CACHE_REGION).getHitCount());
+
+        decrementStock(3);
+
+        assertEquals(7, stock());
+    }
+
+    @Test
+    void readerStartedBeforeTheUpdateDoesNotCacheTheOldStock() throws Exception {
+        CountDownLatch readerStarted = new CountDownLatch(1);
+        CountDownLatch stockDecremented = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> reader = executor.submit(() -> transactionTemplate.execute(status -> {
+                // la sesion se abre con la transaccion, antes del descuento, y lee despues del commit
+                readerStarted.countDown();
+                await(stockDecremented);
+                return stock();
+            }));
+
+            readerStarted.await();
+            decrementStock(3);
+            stockDecremented.countDown();
+
+            assertEquals(7, reader.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, statistics.getDomainDataRegionStatistics(Producto.CACHE_REGION).getPutCount());
+
+        Thread.sleep(5);
+        assertEquals(7, stock());
+        assertEquals(7, stock());
+        assertEquals(1, statistics.getDomainDataRegionStatistics(Producto.CACHE_REGION).getHitCount());
+    }
+
+    private int stock() {
+        return productoCrudRepository.findById(1).orElseThrow().getCantidadStock();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void decrementStock(int quantity) {
+        PurchaseItem item = new PurchaseItem();
+        item.setProductId(1);
+        item.setQuantity(quantity);
+        transactionTemplate.executeWithoutResult(status -> productRepository.decrementStock(List.of(item)));
+    }
+}
@@ -0,0 +1,123 @@
+package com.platzi.market.persistence.catalog;
+
+import com.platzi.market.domain.Product;
+import com.platzi.market.domain.PurchaseItem;
+import com.platzi.market.domain.dto.CategorySummary;
+import com.platzi.market.domain.repository.ProductRepository;
+import com.platzi.market.domain.service.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+class CategorySnapshotTest {
+
+    @Autowired
+    private CategorySnapshot categorySnapshot;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    void setUp() {
+        // Las filas se reescriben por JDBC, un producto de la prueba anterior seguiria en la cache
+        entityManagerFactory.getCache().evictAll();
+        jdbcTemplate.update("INSERT INTO categorias (id_categoria, descripcion, estado) VALUES (1, 'Lacteos', true)");
+        jdbcTemplate.update("INSERT INTO categorias (id_categoria, descripcion, estado) VALUES (2, 'Panaderia', false)");
+        jdbcTemplate.update("INSERT INTO productos (id_producto, nombre, id_categoria, precio_venta, cantidad_stock, estado) VALUES (1, 'Leche', 1, 20, 10, true)");
+        jdbcTemplate.update("INSERT INTO productos (id_producto, nombre, id_categoria, precio_venta, cantidad_stock, estado) VALUES (2, 'Queso', 1, 50, 10, false)");
+        categorySnapshot.rebuild();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM productos");
+        jdbcTemplate.update("DELETE FROM categorias");
+        categorySnapshot.rebuild();
+    }
+
+    @Test
+    void countsProductsAndActiveProductsPerCategory() {
+        assertEquals(List.of("1|Lacteos|true|2|1", "2|Panaderia|false|0|0"), describir(categorySnapshot.getAll()));
+        assertEquals("1|Lacteos|true|2|1", describir(List.of(categorySnapshot.getSummary(1).orElseThrow())).get(0));
+        assertFalse(categorySnapshot.getSummary(3).isPresent());
+        assertThrows(UnsupportedOperationException.class, () -> categorySnapshot.getAll().clear());
+    }
+
+    @Test
+    void productChangesSwapTheSnapshotAndStockChangesDoNot() {
+        Product pan = new Product();
+        pan.setName("Pan");
+        pan.setCategoryId(2);
+        pan.setPrice(5.0);
+        pan.setStock(10);
+        pan.setActive(true);
+        productService.save(pan);
+
+        List<CategorySummary> antes = categorySnapshot.getAll();
+        assertEquals(List.of("1|Lacteos|true|2|1", "2|Panaderia|false|1|1"), describir(antes));
+
+        PurchaseItem item = new PurchaseItem();
+        item.setProductId(1);
+        item.setQuantity(1);
+        transactionTemplate.executeWithoutResult(status -> productRepository.decrementStock(List.of(item)));
+        assertSame(antes, categorySnapshot.getAll());
+
+        productService.delete(2);
+        assertEquals(List.of("1|Lacteos|true|1|1", "2|Panaderia|false|1|1"), describir(categorySnapshot.getAll()));
+    }
+
+    @Test
+    void updatesAdjustBothCategoriesAndRefreshCorrectsDirectChanges() {
+        Product queso = new Product();
+        queso.setProductId(2);
+        queso.setName("Queso");
+        queso.setCategoryId(2);
+        queso.setPrice(50.0);
+        queso.setStock(10);
+        queso.setActive(true);
+        productService.save(queso);
+
+        assertEquals(List.of("1|Lacteos|true|1|1", "2|Panaderia|false|1|1"), describir(categorySnapshot.getAll()));
+
+        jdbcTemplate.update("INSERT INTO productos (id_producto, nombre, id_categoria, precio_venta, cantidad_stock, estado) VALUES (3, 'Pan', 2, 5, 10, true)");
+        assertEquals(List.of("1|Lacteos|true|1|1", "2|Panaderia|false|1|1"), describir(categorySnapshot.getAll()));
+
+        categorySnapshot.refresh();
+        assertEquals(List.of("1|Lacteos|true|1|1", "2|Panaderia|false|2|2"), describir(categorySnapshot.getAll()));
+    }
+
+    private static List<String> describir(List<CategorySummary> categories) {
+        return categories.stream()
+                .map(category -> category.getCategoryId() + "|" + category.getCategory() + "|" + category.isActive()
+                        + "|" + category.getProducts() + "|" + category.getActiveProducts())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,140 @@
+package com.platzi.market.persistence.routing;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReplicaRoutingDataSourceTest {
+
+    private static final long MAX_LAG = 1000;
+
+    private JdbcTemplate replicaTemplate;
+    private ReplicaRoutingDataSource routing;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    /*
+    * Dos BD en memoria; la tabla origen dice de cual se leyo y cuanto retraso reporta.
+    * */
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource primary = database("primary");
+        DriverManagerDataSource replica = database("replica");
+        replicaTemplate = new JdbcTemplate(replica);
+
+        // El intervalo largo deja las mediciones en manos de cada prueba
+        routing = new ReplicaRoutingDataSource(primary, Map.of("replica-1", replica),
+                "SELECT retraso FROM origen", MAX_LAG, 3_600_000, new SimpleMeterRegistry());
+        routing.checkLag();
+
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        SecurityContextHolder.clearContext();
+        routing.close();
+    }
+
+    @Test
+    void readOnlyTransactionsGoToTheReplica() {
+        assertEquals("replica", readOnly.execute(status -> origin()));
+        assertEquals("primary", readWrite.execute(status -> origin()));
+        assertEquals("primary", origin());
+    }
+
+    @Test
+    void writerReadsFromPrimaryRightAfterCommit() {
+        authenticate("alejandro");
+        readWrite.executeWithoutResult(status -> jdbcTemplate.update("UPDATE origen SET retraso = 0"));
+
+        assertEquals("primary", readOnly.execute(status -> origin()));
+
+        authenticate("maria");
+        assertEquals("replica", readOnly.execute(status -> origin()));
+    }
+
+    @Test
+    void otherTerminalsOfTheSameUserKeepReadingFromTheReplica() {
+        authenticate("alejandro", "caja-1");
+        readWrite.executeWithoutResult(status -> jdbcTemplate.update("UPDATE origen SET retraso = 0"));
+        assertEquals("primary", readOnly.execute(status -> origin()));
+
+        authenticate("alejandro", "caja-2");
+        assertEquals("replica", readOnly.execute(status -> origin()));
+    }
+
+    @Test
+    void rolledBackWritesDoNotPinTheUser() {
+        authenticate("alejandro");
+        readWrite.executeWithoutResult(status -> {
+            jdbcTemplate.update("UPDATE origen SET retraso = 0");
+            status.setRollbackOnly();
+        });
+
+        assertEquals("replica", readOnly.execute(status -> origin()));
+    }
+
+    @Test
+    void primaryReadsSkipTheReplicas() {
+        assertEquals("primary", readOnly.execute(status -> PrimaryReads.get(this::origin)));
+        assertEquals("replica", readOnly.execute(status -> origin()));
+    }
+
+    @Test
+    void laggingOrFailingReplicaFallsBackToPrimary() {
+        replicaTemplate.update("UPDATE origen SET retraso = ?", MAX_LAG + 1);
+        routing.checkLag();
+        assertEquals("primary", readOnly.execute(status -> origin()));
+
+        replicaTemplate.update("UPDATE origen SET retraso = NULL");
+        routing.checkLag();
+        assertEquals("replica", readOnly.execute(status -> origin()));
+
+        replicaTemplate.execute("DROP TABLE origen");
+        routing.checkLag();
+        assertEquals("primary", readOnly.execute(status -> origin()));
+    }
+
+    private String origin() {
+        return jdbcTemplate.queryForObject("SELECT nombre FROM origen", String.class);
+    }
+
+    private static DriverManagerDataSource database(String name) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:routing-" + name + "-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.execute("CREATE TABLE origen (nombre VARCHAR(20), retraso DOUBLE)");
+        template.update("INSERT INTO origen VALUES (?, 0)", name);
+        return dataSource;
+    }
+
+    private static void authenticate(String username) {
+        authenticate(username, null);
+    }
+
+    private static void authenticate(String username, String tokenId) {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(username, tokenId, Collections.emptyList()));
+    }
+}
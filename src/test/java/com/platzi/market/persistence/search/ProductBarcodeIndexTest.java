@@ -0,0 +1,129 @@
+package com.platzi.market.persistence.search;
+
+import com.platzi.market.domain.Product;
+import com.platzi.market.domain.event.ProductChangedEvent;
+import com.platzi.market.domain.repository.ProductRepository;
+import com.platzi.market.persistence.crud.ProductoCrudRepository;
+import com.platzi.market.persistence.entity.Producto;
+import com.platzi.market.persistence.mapper.ProductMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductBarcodeIndexTest {
+
+    private final Map<Integer, Product> products = new HashMap<>();
+
+    private ProductoCrudRepository productoCrudRepository;
+
+    private ProductMapper mapper;
+
+    private ProductBarcodeIndex index;
+
+    @BeforeEach
+    void setUp() {
+        ProductRepository productRepository = mock(ProductRepository.class);
+        when(productRepository.getById(anyInt()))
+                .thenAnswer(invocation -> Optional.ofNullable(products.get(invocation.<Integer>getArgument(0))));
+
+        productoCrudRepository = mock(ProductoCrudRepository.class);
+        when(productoCrudRepository.findFirstByCodigoBarras(anyString())).thenReturn(Optional.empty());
+
+        mapper = mock(ProductMapper.class);
+        index = new ProductBarcodeIndex(60_000, 1000);
+        ReflectionTestUtils.setField(index, "productRepository", productRepository);
+        ReflectionTestUtils.setField(index, "productoCrudRepository", productoCrudRepository);
+        ReflectionTestUtils.setField(index, "mapper", mapper);
+    }
+
+    @Test
+    void findsEveryIndexedBarcodeAcrossResizes() {
+        for (int productId = 1; productId <= 200_000; productId++) {
+            save(productId, "77" + productId);
+        }
+
+        assertEquals(200_000, index.size());
+        for (int productId = 1; productId <= 200_000; productId += 997) {
+            assertEquals(productId, index.getByBarcode("77" + productId).get().getProductId());
+        }
+        verify(productoCrudRepository, never()).findFirstByCodigoBarras(anyString());
+    }
+
+    @Test
+    void unknownBarcodeAsksTheDatabaseOnceAndRemembersTheMiss() {
+        save(1, "7702511000014");
+
+        assertTrue(index.getByBarcode("7702511000021").isEmpty());
+        assertTrue(index.getByBarcode("7702511000021").isEmpty());
+        verify(productoCrudRepository, times(1)).findFirstByCodigoBarras("7702511000021");
+    }
+
+    @Test
+    void indexedLookupNeverAsksTheDatabase() {
+        save(1, "7702511000014");
+
+        assertEquals(1, index.getIndexedByBarcode("7702511000014").get().getProductId());
+        assertTrue(index.getIndexedByBarcode("leche").isEmpty());
+        verify(productoCrudRepository, never()).findFirstByCodigoBarras(anyString());
+    }
+
+    /*
+    * Un producto creado en otro nodo o por SQL no genera un evento en este nodo.
+    * */
+    @Test
+    void barcodeCreatedOutsideThisNodeIsFoundInTheDatabase() {
+        Producto producto = new Producto();
+        Product product = new Product();
+        product.setProductId(2);
+        product.setBarcode("7702511000038");
+        products.put(2, product);
+        when(productoCrudRepository.findFirstByCodigoBarras("7702511000038")).thenReturn(Optional.of(producto));
+        when(mapper.toProduct(producto)).thenReturn(product);
+
+        assertEquals(2, index.getByBarcode("7702511000038").get().getProductId());
+        assertEquals(2, index.getByBarcode("7702511000038").get().getProductId());
+        verify(productoCrudRepository, times(1)).findFirstByCodigoBarras("7702511000038");
+    }
+
+    @Test
+    void localCreationReplacesARememberedMiss() {
+        assertTrue(index.getByBarcode("7702511000045").isEmpty());
+
+        save(3, "7702511000045");
+
+        assertEquals(3, index.getByBarcode("7702511000045").get().getProductId());
+    }
+
+    @Test
+    void staleBarcodeIsDiscarded() {
+        save(1, "7702511000014");
+        save(1, "7702511000099");
+
+        assertTrue(index.getByBarcode("7702511000014").isEmpty());
+        assertEquals(1, index.getByBarcode("7702511000099").get().getProductId());
+        assertEquals(1, index.size());
+    }
+
+    private void save(int productId, String barcode) {
+        Product product = new Product();
+        product.setProductId(productId);
+        product.setName("Producto " + productId);
+        product.setBarcode(barcode);
+        products.put(productId, product);
+        index.onProductChanged(ProductChangedEvent.created(product, 1));
+    }
+}
@@ -0,0 +1,107 @@
+package com.platzi.market.persistence.search;
+
+import com.platzi.market.domain.Product;
+import com.platzi.market.domain.event.ProductChangedEvent;
+import com.platzi.market.domain.repository.ProductBarcodeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProductSearchIndexTest {
+
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        ProductBarcodeRepository barcodes = mock(ProductBarcodeRepository.class);
+        when(barcodes.getIndexedByBarcode(anyString())).thenReturn(Optional.empty());
+        when(barcodes.getIndexedByBarcode("7702511000045")).thenReturn(Optional.of(product(4, "Harina de arroz", "7702511000045")));
+
+        index = new ProductSearchIndex();
+        ReflectionTestUtils.setField(index, "productBarcodeRepository", barcodes);
+        index.onProductChanged(ProductChangedEvent.created(product(1, "Arroz Diana", "7702511000014"), 1));
+        index.onProductChanged(ProductChangedEvent.created(product(2, "Arroz Roa integral", "7702511000021"), 2));
+        index.onProductChanged(ProductChangedEvent.created(product(3, "Café Águila Roja", "7702511000038"), 3));
+        index.onProductChanged(ProductChangedEvent.created(product(4, "Harina de arroz", "7702511000045"), 4));
+    }
+
+    @Test
+    void prefixMatchesRankLeadingAndShorterNamesFirst() {
+        assertEquals(List.of(1, 2, 4), ids(index.search("arr", 10)));
+    }
+
+    @Test
+    void everyWordMustMatchIgnoringCaseAndAccents() {
+        assertEquals(List.of(3), ids(index.search("CAFE agui", 10)));
+        assertEquals(List.of(2), ids(index.search("arroz int", 10)));
+        assertTrue(index.search("arroz cafe", 10).isEmpty());
+    }
+
+    @Test
+    void barcodeMatchComesFirst() {
+        assertEquals(List.of(4), ids(index.search("7702511000045", 10)));
+    }
+
+    @Test
+    void limitKeepsTheBestResults() {
+        assertEquals(List.of(1, 2), ids(index.search("arroz", 2)));
+    }
+
+    @Test
+    void updatesAndDeletesAreApplied() {
+        index.onProductChanged(ProductChangedEvent.updated(product(1, "Lentejas Diana", "7702511000014"), 1, true, 5));
+        index.onProductChanged(ProductChangedEvent.deleted(2, 1, true, 6));
+        index.onProductChanged(ProductChangedEvent.stockChanged(4, 1, 7, 7));
+
+        assertEquals(List.of(4), ids(index.search("arroz", 10)));
+        assertEquals(List.of(1), ids(index.search("lent", 10)));
+        assertEquals(7, index.search("harina", 10).get(0).getStock());
+    }
+
+    /*
+    * Menos de tres letras no abarcan un rango del indice: solo filtran o, si todas las palabras son
+    * cortas, se buscan completas.
+    * */
+    @Test
+    void shortWordsOnlyFilterOrMatchWholeWords() {
+        index.onProductChanged(ProductChangedEvent.created(product(5, "Té Hindú", null), 5));
+
+        assertEquals(List.of(1), ids(index.search("arroz di", 10)));
+        assertEquals(List.of(4), ids(index.search("de", 10)));
+        assertEquals(List.of(5), ids(index.search("te", 10)));
+        assertTrue(index.search("ar", 10).isEmpty());
+    }
+
+    @Test
+    void aProductWithTwoWordsInThePrefixRangeIsReturnedOnce() {
+        index.onProductChanged(ProductChangedEvent.created(product(5, "Arroz arrocero", null), 5));
+
+        assertEquals(List.of(1, 5, 2, 4), ids(index.search("arr", 10)));
+    }
+
+    private static List<Integer> ids(List<Product> products) {
+        return products.stream().map(Product::getProductId).collect(Collectors.toList());
+    }
+
+    private static Product product(int productId, String name, String barcode) {
+        Product product = new Product();
+        product.setProductId(productId);
+        product.setName(name);
+        product.setCategoryId(1);
+        product.setPrice(1000);
+        product.setStock(10);
+        product.setActive(true);
+        product.setBarcode(barcode);
+        return product;
+    }
+}
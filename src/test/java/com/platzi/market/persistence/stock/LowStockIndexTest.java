@@ -0,0 +1,97 @@
+package com.platzi.market.persistence.stock;
+
+import com.platzi.market.domain.Product;
+import com.platzi.market.domain.event.ProductChangedEvent;
+import com.platzi.market.domain.event.StockLevelChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LowStockIndexTest {
+
+    private final List<StockLevelChangedEvent> published = new ArrayList<>();
+
+    private LowStockIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new LowStockIndex();
+        ReflectionTestUtils.setField(index, "trackedBelow", 100);
+        ReflectionTestUtils.setField(index, "ready", true);
+        ReflectionTestUtils.setField(index, "eventPublisher", (ApplicationEventPublisher) event -> published.add((StockLevelChangedEvent) event));
+
+        index.onProductChanged(ProductChangedEvent.created(product(1, 5), 1));
+        index.onProductChanged(ProductChangedEvent.created(product(2, 50), 2));
+        index.onProductChanged(ProductChangedEvent.created(product(3, 500), 3));
+        index.onProductChanged(ProductChangedEvent.created(product(4, 2), 4));
+        published.clear();
+    }
+
+    @Test
+    void answersThresholdsOrderedByStock() {
+        assertEquals(List.of(4, 1), ids(index.getBelow(10)));
+        assertEquals(List.of(4, 1, 2), ids(index.getBelow(100)));
+        assertTrue(index.covers(100));
+        assertFalse(index.covers(101));
+    }
+
+    @Test
+    void stockChangesMoveProductsAndPublishCrossings() {
+        index.onProductChanged(ProductChangedEvent.stockChanged(2, 1, 8, 5));
+        index.onProductChanged(ProductChangedEvent.stockChanged(1, 1, 99, 6));
+        index.onProductChanged(ProductChangedEvent.stockChanged(4, 1, 150, 7));
+
+        assertEquals(List.of(2), ids(index.getBelow(10)));
+        assertEquals(List.of(2, 1), ids(index.getBelow(100)));
+
+        assertEquals(3, published.size());
+        assertTrue(published.get(0).crossedBelow(10));
+        assertTrue(published.get(1).crossedAbove(10));
+        assertTrue(published.get(2).crossedAbove(100));
+    }
+
+    @Test
+    void olderStockChangesArriveLateAndAreIgnored() {
+        index.onProductChanged(ProductChangedEvent.stockChanged(2, 1, 3, 11));
+        index.onProductChanged(ProductChangedEvent.stockChanged(2, 1, 8, 10));
+        index.onProductChanged(ProductChangedEvent.deleted(1, 1, true, 12));
+        index.onProductChanged(ProductChangedEvent.stockChanged(1, 1, 4, 5));
+
+        assertEquals(List.of(4, 2), ids(index.getBelow(100)));
+        assertEquals(3, index.getBelow(100).get(1).getStock());
+        assertEquals(1, published.size());
+    }
+
+    @Test
+    void inactiveAndDeletedProductsAreDropped() {
+        Product inactive = product(1, 5);
+        inactive.setActive(false);
+        index.onProductChanged(ProductChangedEvent.updated(inactive, 1, true, 8));
+        index.onProductChanged(ProductChangedEvent.deleted(4, 1, true, 9));
+
+        assertEquals(List.of(2), ids(index.getBelow(100)));
+    }
+
+    private static List<Integer> ids(List<Product> products) {
+        return products.stream().map(Product::getProductId).collect(Collectors.toList());
+    }
+
+    private static Product product(int productId, int stock) {
+        Product product = new Product();
+        product.setProductId(productId);
+        product.setName("Producto " + productId);
+        product.setCategoryId(1);
+        product.setStock(stock);
+        product.setActive(true);
+        return product;
+    }
+}
@@ -0,0 +1,140 @@
+package com.platzi.market.web.async;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.platzi.market.domain.Product;
+import com.platzi.market.domain.service.ProductService;
+import com.platzi.market.domain.service.PurchaseService;
+import com.platzi.market.web.controller.ProductController;
+import com.platzi.market.web.controller.PurchaseController;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*
+* /products/stream y /purchases/export comparten el Bulkhead de streaming, aqui de un hilo y sin
+* cola: mientras un stream esta en curso el otro recibe 503.
+* */
+class BulkheadRejectionHandlerTest {
+
+    private final ProductService productService = mock(ProductService.class);
+    private final PurchaseService purchaseService = mock(PurchaseService.class);
+    private final Bulkhead streaming = new Bulkhead("streaming", Executors.newSingleThreadExecutor(), 1, 0, false,
+            new SimpleMeterRegistry());
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        ProductController productController = new ProductController();
+        ReflectionTestUtils.setField(productController, "productService", productService);
+        ReflectionTestUtils.setField(productController, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(productController, "streaming", streaming);
+        ReflectionTestUtils.setField(productController, "streamTimeout", 10_000L);
+
+        PurchaseController purchaseController = new PurchaseController();
+        ReflectionTestUtils.setField(purchaseController, "purchaseService", purchaseService);
+        ReflectionTestUtils.setField(purchaseController, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(purchaseController, "streaming", streaming);
+        ReflectionTestUtils.setField(purchaseController, "streamTimeout", 10_000L);
+
+        mockMvc = MockMvcBuilders.standaloneSetup(productController, purchaseController)
+                .setControllerAdvice(new BulkheadRejectionHandler())
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        streaming.shutdown();
+    }
+
+    @Test
+    void aFullBulkheadAnswers503WithRetryAfter() throws Exception {
+        CountDownLatch liberar = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            liberar.await();
+            return null;
+        }).when(productService).streamAll(any());
+
+        MvcResult enCurso = mockMvc.perform(get("/products/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(get("/purchases/export"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+
+        liberar.countDown();
+        mockMvc.perform(asyncDispatch(enCurso))
+                .andExpect(status().isOk());
+        assertEquals("[]", enCurso.getResponse().getContentAsString());
+
+        // El permiso se libero al terminar el stream
+        mockMvc.perform(asyncDispatch(mockMvc.perform(get("/purchases/export")).andReturn()))
+                .andExpect(status().isOk());
+    }
+
+    /*
+    * El cursor se recorre en un hilo del Bulkhead con el usuario de la peticion, ReplicaRoutingDataSource
+    * lo usa para elegir la BD.
+    * */
+    @Test
+    void streamsRunWithTheCallersSecurityContext() throws Exception {
+        AtomicReference<String> usuario = new AtomicReference<>();
+        doAnswer(invocation -> {
+            usuario.set(SecurityContextHolder.getContext().getAuthentication().getName());
+            Consumer<Product> consumer = invocation.getArgument(0);
+            consumer.accept(product(1, "Leche"));
+            consumer.accept(product(2, "Pan"));
+            return null;
+        }).when(productService).streamAll(any());
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("alejandro", "token", new ArrayList<>()));
+
+        MvcResult result = mockMvc.perform(get("/products/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/json"));
+
+        assertEquals("alejandro", usuario.get());
+        JsonNode productos = objectMapper.readTree(result.getResponse().getContentAsString());
+        assertEquals(2, productos.size());
+        assertEquals("Leche", productos.get(0).get("name").asText());
+        assertEquals("Pan", productos.get(1).get("name").asText());
+    }
+
+    private static Product product(int productId, String name) {
+        Product product = new Product();
+        product.setProductId(productId);
+        product.setName(name);
+        return product;
+    }
+}
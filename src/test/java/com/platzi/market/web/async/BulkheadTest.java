@@ -0,0 +1,71 @@
+package com.platzi.market.web.async;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BulkheadTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Bulkhead bulkhead = new Bulkhead("test", Executors.newSingleThreadExecutor(), 1, 1, false, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        bulkhead.shutdown();
+    }
+
+    /*
+    * Con un solo hilo la segunda tarea corre donde corrio la primera, no debe heredar su usuario.
+    * */
+    @Test
+    void tasksRunWithTheCallersSecurityContext() throws Exception {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("alejandro", "token", new ArrayList<>()));
+        assertEquals("alejandro", bulkhead.supply(() -> SecurityContextHolder.getContext().getAuthentication().getName()).get());
+
+        SecurityContextHolder.clearContext();
+        Authentication authentication = bulkhead.supply(() -> SecurityContextHolder.getContext().getAuthentication()).get();
+        assertNull(authentication);
+    }
+
+    @Test
+    void aFullBulkheadRejectsUntilAPermitIsReleased() throws Exception {
+        CountDownLatch liberar = new CountDownLatch(1);
+        CompletableFuture<Integer> enCurso = bulkhead.supply(() -> await(liberar, 1));
+        CompletableFuture<Integer> enCola = bulkhead.supply(() -> await(liberar, 2));
+
+        assertThrows(RejectedExecutionException.class, () -> bulkhead.supply(() -> 3));
+        assertEquals(1, meterRegistry.get("platzi.bulkhead.rejected").tag("name", "test").counter().count());
+        assertEquals(1, meterRegistry.get("platzi.bulkhead.active").tag("name", "test").gauge().value());
+        assertEquals(1, meterRegistry.get("platzi.bulkhead.queued").tag("name", "test").gauge().value());
+
+        liberar.countDown();
+        assertEquals(1, enCurso.get());
+        assertEquals(2, enCola.get());
+        assertEquals(3, bulkhead.supply(() -> 3).get());
+    }
+
+    private static int await(CountDownLatch latch, int value) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return value;
+    }
+}
@@ -0,0 +1,86 @@
+package com.platzi.market.web.security;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SignatureException;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/*
+* Cache de tokens verificados de JWTUtil. getClaims es la verificacion sin cache, el spy cuenta
+* cuantas veces se ejecuta.
+* */
+class JWTUtilTest {
+
+    private final JWTUtil jwtUtil = spy(new JWTUtil());
+
+    @Test
+    void aVerifiedTokenIsParsedOnce() {
+        String token = jwtUtil.generateToken(new User("alejandro", "{noop}platzi", new ArrayList<>()));
+
+        assertEquals("alejandro", jwtUtil.getVerifiedClaims(token).getSubject());
+        assertEquals("alejandro", jwtUtil.getVerifiedClaims(token, jwtUtil.getTokenId(token)).getSubject());
+
+        verify(jwtUtil, times(1)).getClaims(token);
+    }
+
+    @Test
+    void aSignatureFailureIsNotCached() {
+        String token = Jwts.builder().setSubject("alejandro")
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(SignatureAlgorithm.HS256, "0tr4ll4v").compact();
+
+        assertThrows(SignatureException.class, () -> jwtUtil.getVerifiedClaims(token));
+        assertThrows(SignatureException.class, () -> jwtUtil.getVerifiedClaims(token));
+
+        verify(jwtUtil, times(2)).getClaims(token);
+    }
+
+    /*
+    * Se cambia el subject y se conserva la firma del token original, que ya esta en cache.
+    * */
+    @Test
+    void aTamperedTokenIsRejected() {
+        String token = jwtUtil.generateToken(new User("alejandro", "{noop}platzi", new ArrayList<>()));
+        jwtUtil.getVerifiedClaims(token);
+
+        String[] partes = token.split("\\.");
+        String payload = new String(Base64.getUrlDecoder().decode(partes[1]), StandardCharsets.UTF_8)
+                .replace("alejandro", "intruso");
+        String alterado = partes[0] + "." + Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(payload.getBytes(StandardCharsets.UTF_8)) + "." + partes[2];
+
+        assertThrows(SignatureException.class, () -> jwtUtil.getVerifiedClaims(alterado));
+        assertEquals("alejandro", jwtUtil.getVerifiedClaims(token).getSubject());
+    }
+
+    /*
+    * Si la entrada siguiera en cache despues de exp se devolverian sus claims, al expirar junto con
+    * el token se vuelve a verificar y el parser lo rechaza.
+    * */
+    @Test
+    void anEntryExpiresWithItsToken() throws InterruptedException {
+        // exp se guarda en segundos, con 2 s de margen sigue vigente al verificarlo
+        String token = Jwts.builder().setSubject("alejandro")
+                .setExpiration(new Date(System.currentTimeMillis() + 2_000))
+                .signWith(SignatureAlgorithm.HS256, JWTUtil.KEY).compact();
+        Date expiracion = jwtUtil.getVerifiedClaims(token).getExpiration();
+
+        Thread.sleep(expiracion.getTime() - System.currentTimeMillis() + 100);
+
+        assertThrows(ExpiredJwtException.class, () -> jwtUtil.getVerifiedClaims(token));
+        verify(jwtUtil, times(2)).getClaims(token);
+    }
+}
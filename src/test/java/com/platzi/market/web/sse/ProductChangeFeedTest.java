@@ -0,0 +1,213 @@
+package com.platzi.market.web.sse;
+
+import com.platzi.market.domain.Product;
+import com.platzi.market.domain.event.ProductChangedEvent;
+import com.platzi.market.web.controller.ProductController;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import javax.servlet.Filter;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/*
+* Feed de cambios a traves de GET /products/changes, el controlador decide entre since y
+* Last-Event-ID. Con el encabezado X-Stall la respuesta deja de aceptar bytes hasta el final de la
+* prueba, como un cliente que no lee.
+* */
+class ProductChangeFeedTest {
+
+    private static final int BUFFER_SIZE = 4;
+    private static final long WRITE_TIMEOUT_MS = 200;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch liberar = new CountDownLatch(1);
+    private ProductChangeFeed feed;
+    private MockMvc mockMvc;
+    private long base;
+
+    @BeforeEach
+    void setUp() {
+        feed = new ProductChangeFeed(BUFFER_SIZE, 2, 10, 60_000, WRITE_TIMEOUT_MS, meterRegistry);
+        ProductController controller = new ProductController();
+        ReflectionTestUtils.setField(controller, "productChangeFeed", feed);
+
+        Filter atascar = (request, response, chain) -> chain.doFilter(request,
+                ((HttpServletRequest) request).getHeader("X-Stall") != null
+                        ? new StalledResponse((HttpServletResponse) response) : response);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).addFilters(atascar).build();
+        base = feed.getLastSequence();
+    }
+
+    @AfterEach
+    void tearDown() {
+        liberar.countDown();
+        feed.close();
+    }
+
+    @Test
+    void resumesAfterTheSinceParameter() throws Exception {
+        publishStockChanges(3);
+
+        MvcResult result = subscribe(get("/products/changes").param("since", String.valueOf(base + 1)));
+
+        awaitContent(result, "id:" + (base + 3));
+        assertFalse(result.getResponse().getContentAsString().contains("id:" + (base + 1)));
+        assertTrue(result.getResponse().getContentAsString().contains("id:" + (base + 2)));
+    }
+
+    @Test
+    void resumesAfterTheLastEventIdHeader() throws Exception {
+        publishStockChanges(3);
+
+        MvcResult result = subscribe(get("/products/changes").header("Last-Event-ID", base + 2));
+
+        awaitContent(result, "id:" + (base + 3));
+        assertFalse(result.getResponse().getContentAsString().contains("id:" + (base + 2)));
+        assertFalse(result.getResponse().getContentAsString().contains("event:" + ProductChangeFeed.RESET));
+    }
+
+    /*
+    * La secuencia pedida ya no esta en el buffer: reset con la ultima secuencia y a partir de ahi
+    * solo los cambios nuevos.
+    * */
+    @Test
+    void resetsWhenTheBufferOverwroteTheRequestedSequence() throws Exception {
+        publishStockChanges(BUFFER_SIZE + 2);
+        long ultima = base + BUFFER_SIZE + 2;
+
+        MvcResult result = subscribe(get("/products/changes").param("since", String.valueOf(base + 1)));
+        awaitContent(result, "event:" + ProductChangeFeed.RESET);
+        publishStockChanges(1);
+
+        awaitContent(result, "id:" + (ultima + 1));
+        String content = result.getResponse().getContentAsString();
+        assertTrue(content.contains("id:" + ultima + "\nevent:" + ProductChangeFeed.RESET + "\ndata:" + ultima));
+        assertFalse(content.contains("id:" + (base + 2) + "\n"));
+    }
+
+    @Test
+    void categoryChangeIsDeliveredToThePreviousCategory() throws Exception {
+        MvcResult result = subscribe(get("/products/changes").param("categoryId", "1"));
+
+        feed.onProductChanged(ProductChangedEvent.stockChanged(10, 2, 5, 1));
+        feed.onProductChanged(ProductChangedEvent.updated(product(11, 2), 1, true, 1));
+        feed.onProductChanged(ProductChangedEvent.stockChanged(12, 1, 5, 1));
+
+        awaitContent(result, "id:" + (base + 3));
+        String content = result.getResponse().getContentAsString();
+        assertFalse(content.contains("id:" + (base + 1) + "\n"));
+        assertTrue(content.contains("id:" + (base + 2) + "\nevent:updated"));
+    }
+
+    /*
+    * Dos suscriptores dejan de leer con el envio en curso. Ambos se cierran y el que si lee sigue
+    * recibiendo los cambios.
+    * */
+    @Test
+    void stalledSubscribersAreClosedWithoutBlockingTheOthers() throws Exception {
+        subscribe(get("/products/changes").header("X-Stall", "true"));
+        subscribe(get("/products/changes").header("X-Stall", "true"));
+        MvcResult activo = subscribe(get("/products/changes"));
+
+        publishStockChanges(1);
+        awaitContent(activo, "id:" + (base + 1));
+        await(() -> meterRegistry.get("platzi.changes.subscribers").gauge().value() == 1);
+
+        publishStockChanges(1);
+        awaitContent(activo, "id:" + (base + 2));
+    }
+
+    private MvcResult subscribe(MockHttpServletRequestBuilder request) throws Exception {
+        MvcResult result = mockMvc.perform(request).andReturn();
+        assertEquals(200, result.getResponse().getStatus());
+        assertTrue(result.getRequest().isAsyncStarted());
+        return result;
+    }
+
+    private void publishStockChanges(int count) {
+        for (int i = 0; i < count; i++) {
+            feed.onProductChanged(ProductChangedEvent.stockChanged(i + 1, 1, 10, 1));
+        }
+    }
+
+    private static void awaitContent(MvcResult result, String expected) throws InterruptedException {
+        await(() -> {
+            try {
+                return result.getResponse().getContentAsString().contains(expected);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < limite, "Timed out waiting for the feed");
+            Thread.sleep(10);
+        }
+    }
+
+    private static Product product(int productId, int categoryId) {
+        Product product = new Product();
+        product.setProductId(productId);
+        product.setCategoryId(categoryId);
+        product.setName("Producto " + productId);
+        return product;
+    }
+
+    /*
+    * Respuesta de un cliente que no lee: cada escritura espera hasta que termina la prueba.
+    * */
+    private class StalledResponse extends HttpServletResponseWrapper {
+
+        private StalledResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return new ServletOutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    try {
+                        liberar.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+
+                @Override
+                public boolean isReady() {
+                    return false;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener writeListener) {
+                }
+            };
+        }
+    }
+}